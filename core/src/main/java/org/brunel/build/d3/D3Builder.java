@@ -24,8 +24,10 @@ import org.brunel.build.data.DataTransformParameters;
 import org.brunel.build.info.ChartStructure;
 import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataMethod;
 import org.brunel.build.util.ScriptWriter;
 import org.brunel.data.Data;
+import org.brunel.data.Dataset;
 import org.brunel.model.VisItem;
 import org.brunel.model.VisSingle;
 import org.brunel.model.VisTypes.Coordinates;
@@ -69,6 +71,7 @@ public class D3Builder extends AbstractBuilder {
     private D3ScaleBuilder scalesBuilder;       // The scales for the current chart
     private D3Interaction interaction;          // Builder for interactions
     private D3ElementBuilder[] elementBuilders; // Builder for each element
+    private List<Dataset> tables;               // The data tables passed to the built visualization
 
     private D3Builder(BuilderOptions options) {
         super(options);
@@ -188,10 +191,18 @@ public class D3Builder extends AbstractBuilder {
         addElementGroups(elementBuilder, "element" + structure.elementID());
 
         // Data transforms
-        int datasetIndex = structure.getBaseDatasetIndex();
         VisSingle vis = structure.vis;
-        D3DataBuilder dataBuilder = new D3DataBuilder(vis, out, structure.data, datasetIndex);
-        dataBuilder.writeDataManipulation(createResultFields(vis));
+        Map<String, Integer> resultFields = createResultFields(vis);
+        Dataset builtTable = options.includeData == DataMethod.minimal
+                ? D3DataBuilder.makeBuiltTable(structure, resultFields.keySet()) : null;
+        D3DataBuilder dataBuilder;
+        if (builtTable == null) {
+            dataBuilder = new D3DataBuilder(vis, out, structure.data, tableIndex(structure.original), false);
+        } else {
+            // Send the data as built here, so the browser does not need to transform it again
+            dataBuilder = new D3DataBuilder(vis, out, structure.data, tableIndex(builtTable), true);
+        }
+        dataBuilder.writeDataManipulation(resultFields);
 
         scalesBuilder.writeAestheticScales(vis);
         scalesBuilder.writeLegends(vis);
@@ -228,6 +239,12 @@ public class D3Builder extends AbstractBuilder {
         this.visHeight = height;
         this.out = new ScriptWriter(options);
 
+        // For minimal data, tables are added as elements are defined; otherwise they are the original data sets
+        if (options.includeData == DataMethod.minimal)
+            tables = new ArrayList<>();
+        else
+            tables = new ArrayList<>(Arrays.asList(main.getDataSets()));
+
         // Write the class definition function (and flag to use strict mode)
         out.add("function ", options.className, "(visId) {").ln().indentMore();
         out.add("\"use strict\";").comment("Strict Mode");
@@ -329,7 +346,7 @@ public class D3Builder extends AbstractBuilder {
         out.indentLess().onNewLine().add("}").ln();
 
         // Create the initial raw data table
-        D3DataBuilder.writeTables(main, out, options);
+        D3DataBuilder.writeTables(main, tables, out, options);
 
         // Call the function on the data
         if (options.generateBuildCode) {
@@ -340,7 +357,7 @@ public class D3Builder extends AbstractBuilder {
             //This must be done prior to building the visualization so defaults can be set.
             controls.writeEventHandler(out, "v");
 
-            int length = main.getDataSets().length;
+            int length = tables.size();
 
             int enterAnimateTime = enterAnimate(main, length);
             if (enterAnimateTime > 0) {
@@ -396,6 +413,14 @@ public class D3Builder extends AbstractBuilder {
                 .add("labels = BrunelD3.undoTransform(elementGroup.append('g').attr('class', 'labels'), elementGroup)").endStatement();
     }
 
+    // The index of the table, adding it if it has not been used yet
+    private int tableIndex(Dataset data) {
+        for (int i = 0; i < tables.size(); i++)
+            if (tables.get(i) == data) return i;
+        tables.add(data);
+        return tables.size() - 1;
+    }
+
     /*
         Builds a mapping from the fields we will use in the built data object to an indexing 0,1,2,3, ...
      */
@@ -19,13 +19,16 @@ package org.brunel.build.d3;
 import org.brunel.action.Param;
 import org.brunel.build.d3.D3Util.DateBuilder;
 import org.brunel.build.data.DataTransformParameters;
+import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataEncoding;
 import org.brunel.build.util.BuilderOptions.DataMethod;
 import org.brunel.build.util.ScriptWriter;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.data.io.Serialize;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.util.DateFormat;
 import org.brunel.data.util.Range;
@@ -39,6 +42,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -52,34 +56,40 @@ import java.util.Map.Entry;
  */
 public class D3DataBuilder {
 
-    public static void writeTables(VisItem main, ScriptWriter out, BuilderOptions options) {
+    /**
+     * Write the data tables. A table that is one of the visualization's data sets has the fields required by the
+     * data method; any other table holds data that was built on the server for an element (see makeBuiltTable)
+     * and is written in full, with its labels, so the browser can use it as it is
+     *
+     * @param main    visualization being built
+     * @param tables  tables to write, in the order they are passed to the built visualization
+     * @param out     target to write to
+     * @param options builder options, which define the data method
+     */
+    public static void writeTables(VisItem main, List<Dataset> tables, ScriptWriter out, BuilderOptions options) {
         if (options.includeData == DataMethod.none) return;
-        if (options.includeData == DataMethod.minimal) {
-            throw new UnsupportedOperationException("Cannot make minimal data yet");
-        }
 
         out.titleComment("Data Tables");
 
-        NumberFormat format = new DecimalFormat();
-        format.setGroupingUsed(false);
-        format.setMinimumFractionDigits(0);
-        format.setMaximumFractionDigits(8);
-
-        Dataset[] datasets = main.getDataSets();
-        for (int d = 0; d < datasets.length; d++) {
-            Dataset data = datasets[d];
+        List<Dataset> datasets = Arrays.asList(main.getDataSets());
+        for (int d = 0; d < tables.size(); d++) {
+            Dataset data = tables.get(d);
+            boolean built = !datasets.contains(data);
             Field[] fields;
 
-            if (options.includeData == DataMethod.columns) {
+            if (built || options.includeData == DataMethod.full) {
+                // All the fields
+                fields = data.fields;
+            } else {
                 // Only the fields needed by the vis items
                 LinkedHashSet<Field> fieldsAsSet = new LinkedHashSet<>();
                 addUsedFields(main, data, fieldsAsSet);
                 fields = fieldsAsSet.toArray(new Field[fieldsAsSet.size()]);
-            } else {
-                // All the fields
-                fields = data.fields;
             }
 
+            // Special fields are created by the browser for original data
+            if (!built) fields = withoutSyntheticFields(fields);
+
             if (fields.length == 0) {
                 // A Chart that doesn't actually use the data ... just meta values
                 fields = new Field[]{Fields.makeConstantField("_dummy_", "Dummy", 1.0, data.rowCount())};
@@ -90,16 +100,23 @@ public class D3DataBuilder {
 
             out.onNewLine().add(" names: [");
             for (int i = 0; i < fields.length; i++) {
-                if (fields[i].isSynthetic()) continue;
-                String name = fields[i].name;
                 if (i > 0) out.add(", ");
-                out.add("'").add(name).add("'");
+                out.add("'").add(fields[i].name).add("'");
             }
             out.add("], ");
 
+            if (built) {
+                out.onNewLine().add(" labels: [");
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) out.add(", ");
+                    out.add(out.quote(fields[i].label));
+                }
+                out.add("], ");
+                writeSummaries(fields, out);
+            }
+
             out.onNewLine().add(" options: [");
             for (int i = 0; i < fields.length; i++) {
-                if (fields[i].isSynthetic()) continue;
                 String name;
                 if (fields[i].isDate())
                     name = "date";
@@ -114,22 +131,98 @@ public class D3DataBuilder {
             }
             out.add("], ");
 
-            out.onNewLine().add(" rows: [");
-
-            for (int r = 0; r < data.rowCount(); r++) {
-                if (r > 0) out.add(",");
-                String rowText = makeRowText(fields, r, format);
-                if (out.currentColumn() + rowText.length() > 99)
-                    out.onNewLine();
-                else if (r > 0)
-                    out.add(" ");
-                out.add(rowText);
+            if (options.dataEncoding == DataEncoding.binary && canSerialize(fields)) {
+                // The browser deserializes this in place of reading the rows
+                out.onNewLine().add(" data: '").add(encode(fields, built)).add("'");
+            } else {
+                out.onNewLine().add(" rows: [");
+
+                RowWriter rows = new RowWriter(fields);
+                for (int r = 0; r < data.rowCount(); r++) {
+                    if (r > 0) out.add(",");
+                    CharSequence rowText = rows.make(r);
+                    if (out.currentColumn() + rowText.length() > 99)
+                        out.onNewLine();
+                    else if (r > 0)
+                        out.add(" ");
+                    out.add(rowText);
+                }
+                out.add("]");
             }
-            out.add("]");
             out.indentLess().onNewLine().add("}").endStatement();
         }
     }
 
+    /*
+     * The summary used to make each field, such as 'percent', which changes how values are formatted.
+     * Built data is not summarized again by the browser, so it needs to be told. Written only if there are any
+     */
+    private static void writeSummaries(Field[] fields, ScriptWriter out) {
+        boolean any = false;
+        for (Field f : fields) if (f.property("summary") != null) any = true;
+        if (!any) return;
+        out.onNewLine().add(" summaries: [");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.add(", ");
+            String summary = fields[i].strProperty("summary");
+            out.add(summary == null ? "null" : out.quote(summary));
+        }
+        out.add("], ");
+    }
+
+    private static boolean canSerialize(Field[] fields) {
+        for (Field f : fields) if (!Serialize.canSerialize(f)) return false;
+        return true;
+    }
+
+    /*
+     * Serialize the fields as base64 text. Labels are only sent for built tables; for the original data
+     * the browser uses the names, just as it does when reading rows
+     */
+    private static String encode(Field[] fields, boolean withLabels) {
+        if (!withLabels) {
+            Field[] unlabeled = new Field[fields.length];
+            for (int i = 0; i < fields.length; i++) unlabeled[i] = fields[i].rename(fields[i].name, null);
+            fields = unlabeled;
+        }
+        return Base64.getEncoder().encodeToString(Serialize.serializeFields(fields));
+    }
+
+    /**
+     * Reduce the data built on the server for an element to the fields the element uses, so it can be sent
+     * in place of the original data. The row and selection fields are not sent; the browser makes new ones.
+     *
+     * @param structure the element, whose built data is to be sent
+     * @param needed    names of the fields the element uses
+     * @return data to send, or null if the element needs the original rows or has values a table cannot hold
+     */
+    public static Dataset makeBuiltTable(ElementStructure structure, Collection<String> needed) {
+        VisSingle vis = structure.vis;
+
+        // Selections and interactive filters act on the original rows, as do facets for nested charts
+        if (vis.tInteraction.containsKey(Interaction.select) || !vis.fFilter.isEmpty()) return null;
+        if (structure.chart.outer != null || structure.chart.innerChartIndex != null) return null;
+
+        List<Field> fields = new ArrayList<>();
+        for (String name : needed) {
+            if (name.equals("#row")) continue;
+            if (name.equals("#selection")) return null;                     // Shows or filters by selection
+            Field field = structure.data.field(name);
+            if (field == null) continue;
+            if (field.isDate() && field.property("dateFormat") == null) return null;
+            for (int r = 0; r < field.rowCount(); r++)
+                if (field.value(r) instanceof Range) return null;           // Bins cannot be read back in
+            fields.add(field);
+        }
+        return structure.data.replaceFields(fields.toArray(new Field[fields.size()]));
+    }
+
+    private static Field[] withoutSyntheticFields(Field[] fields) {
+        List<Field> result = new ArrayList<>();
+        for (Field f : fields) if (!f.isSynthetic()) result.add(f);
+        return result.size() == fields.length ? fields : result.toArray(new Field[result.size()]);
+    }
+
     private static void addUsedFields(VisItem item, Dataset data, Collection<Field> fields) {
         if (item.children() == null) {
             VisSingle vis = (VisSingle) item;                           // No children => VisSingle
@@ -145,45 +238,93 @@ public class D3DataBuilder {
         }
     }
 
-    // If the row contains any nulls, return null for the whole row
-    private static String makeRowText(Field[] fields, int r, NumberFormat format) {
-        StringBuilder row = new StringBuilder();
-        DateBuilder dateBuilder = new DateBuilder();
-        row.append("[");
-        for (int i = 0; i < fields.length; i++) {
-            Field field = fields[i];
-            if (field.name.startsWith("#")) continue;           // Skip special fields
-            if (i > 0) row.append(", ");
-            Object value = field.value(r);
-            if (value == null) {
-                row.append("null");
-            } else if (value instanceof Range) {
-                row.append(Data.quote(value.toString()));
-            } else if (field.isDate()) {
-                Date date = Data.asDate(value);
-                if (date == null) row.append("null");
-                else row.append(dateBuilder.make(date, (DateFormat) field.property("dateFormat"), false));
-            } else if (field.isNumeric()) {
-                Double d = Data.asNumeric(value);
-                if (d == null) row.append("null");
-                else row.append(format.format(d));
-            } else
-                row.append(Data.quote(value.toString()));
+    /*
+     * Writes the text for rows of data. Field types are found once, and the buffers are reused for every row,
+     * so the text returned by make() is only valid until it is next called
+     */
+    private static class RowWriter {
+        private static final int DATE = 1, NUMBER = 2, TEXT = 3;
+
+        private final Field[] fields;
+        private final int[] types;
+        private final DateFormat[] dateFormats;
+        private final StringBuilder row = new StringBuilder();
+        private final DateBuilder dateBuilder = new DateBuilder();
+        private final NumberFormat format = new DecimalFormat();       // For numbers we cannot write directly
+
+        RowWriter(Field[] fields) {
+            this.fields = fields;
+            types = new int[fields.length];
+            dateFormats = new DateFormat[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (field.isDate()) {
+                    types[i] = DATE;
+                    dateFormats[i] = (DateFormat) field.property("dateFormat");
+                } else {
+                    types[i] = field.isNumeric() ? NUMBER : TEXT;
+                }
+            }
+            format.setGroupingUsed(false);
+            format.setMinimumFractionDigits(0);
+            format.setMaximumFractionDigits(8);
+        }
+
+        CharSequence make(int r) {
+            row.setLength(0);
+            row.append("[");
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) row.append(", ");
+                Object value = fields[i].value(r);
+                if (value == null) {
+                    row.append("null");
+                } else if (value instanceof Range) {
+                    row.append(Data.quote(value.toString()));
+                } else if (types[i] == DATE) {
+                    Date date = Data.asDate(value);
+                    if (date == null) row.append("null");
+                    else dateBuilder.append(row, date, dateFormats[i]);
+                } else if (types[i] == NUMBER) {
+                    Double d = Data.asNumeric(value);
+                    if (d == null) row.append("null");
+                    else appendNumber(d);
+                } else
+                    row.append(Data.quote(value.toString()));
+            }
+            row.append("]");
+            return row;
+        }
+
+        /*
+         * Writes the same text as the decimal format (at most 8 decimal places, no grouping).
+         * Whole numbers, and numbers whose shortest representation needs no more places, are written directly
+         */
+        private void appendNumber(double d) {
+            if (d == Math.rint(d) && Math.abs(d) < 1e15 && (d != 0 || 1 / d > 0)) {
+                row.append((long) d);
+                return;
+            }
+            String s = Double.toString(d);
+            int dot = s.indexOf('.');
+            if (d != 0 && dot >= 0 && s.indexOf('E') < 0 && s.length() - dot <= 9)
+                row.append(s);
+            else
+                row.append(format.format(d));
         }
-        row.append("]");
-        return row.toString();
     }
 
     private final VisSingle vis;
     private final ScriptWriter out;
     private final Dataset data;
     private final int datasetIndex;
+    private final boolean builtData;                    // True if the data set has been built on the server
 
-    public D3DataBuilder(VisSingle vis, ScriptWriter out, Dataset data, int index) {
+    public D3DataBuilder(VisSingle vis, ScriptWriter out, Dataset data, int index, boolean builtData) {
         this.vis = vis;
         this.out = out;
         this.data = data;
         datasetIndex = index;
+        this.builtData = builtData;
     }
 
     public void writeDataManipulation(Map<String, Integer> requiredFields) {
@@ -198,9 +339,30 @@ public class D3DataBuilder {
         DataTransformParameters params = (DataTransformParameters) data.property("parameters");
         D3Util.addTiming("Data Start", out);
         out.add("original = datasets[" + datasetIndex + "]").endStatement();
-        out.add("if (filterRows) original = original.retainRows(filterRows)").endStatement();
+        if (!builtData) out.add("if (filterRows) original = original.retainRows(filterRows)").endStatement();
         out.add("processed = pre(original,", datasetIndex, ")");
         out.mark();
+
+        // Data built on the server has had these applied already
+        if (!builtData) writeTransforms(params);
+
+        if (vis.tDiagram == Diagram.network && vis.fY.size() > 1) {
+            // We are using the 'Y' values to generate a set of identifier
+            // We need to ensure the values are set in the summary, as well as any aesthetics
+            String command = "#values=#values";
+            for (String s : vis.aestheticFields()) if (!s.equals("#values")) command += ";" + s + "=" + s;
+            writeTransform("summarize", command);
+        }
+
+        if (!builtData) writeTransform("sortRows", params.sortRowsCommand);
+
+        out.endStatement();
+        out.add("processed = post(processed,", datasetIndex, ")").endStatement();
+
+        D3Util.addTiming("Data End", out);
+    }
+
+    private void writeTransforms(DataTransformParameters params) {
         writeTransform("addConstants", params.constantsCommand);
 
         // Check for selection filtering
@@ -228,21 +390,6 @@ public class D3DataBuilder {
         writeTransform("sort", params.sortCommand);
 
         writeTransform("stack", params.stackCommand);               // Stack must come after all else
-
-        if (vis.tDiagram == Diagram.network && vis.fY.size() > 1) {
-            // We are using the 'Y' values to generate a set of identifier
-            // We need to ensure the values are set in the summary, as well as any aesthetics
-            String command = "#values=#values";
-            for (String s : vis.aestheticFields()) if (!s.equals("#values")) command += ";" + s + "=" + s;
-            writeTransform("summarize", command);
-        }
-
-        writeTransform("sortRows", params.sortRowsCommand);
-
-        out.endStatement();
-        out.add("processed = post(processed,", datasetIndex, ")").endStatement();
-
-        D3Util.addTiming("Data End", out);
     }
 
     private void writeHookup(Map<String, Integer> fieldsToIndex) {
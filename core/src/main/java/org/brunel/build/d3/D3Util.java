@@ -63,19 +63,37 @@ public class D3Util {
         private final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 
         public String make(Date d, DateFormat dateFormat, boolean wrappedWithMake) {
+            StringBuilder b = new StringBuilder();
+            if (wrappedWithMake) b.append("new Date(");
+            append(b, d, dateFormat);
+            if (wrappedWithMake) b.append(")");
+            return b.toString();
+        }
+
+        /**
+         * Append the quoted text for a date
+         *
+         * @param b          target to append to
+         * @param d          date to write
+         * @param dateFormat format, which determines whether the time is needed
+         */
+        public void append(StringBuilder b, Date d, DateFormat dateFormat) {
             calendar.setTime(d);
-            String text;
-            if (dateFormat.ordinal() >= DateFormat.YearMonthDay.ordinal()) {
-                // YYYY-MM-DD
-                text = String.format("'%d-%02d-%02d'",
-                        calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
-            } else {
-                text = String.format("'%d-%02d-%02dT%02d:%02d:%02d'",
-                        calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
-                        calendar.get(Calendar.HOUR), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND)
-                );
+            // YYYY-MM-DD
+            b.append('\'').append(calendar.get(Calendar.YEAR));
+            appendTwoDigits(b.append('-'), calendar.get(Calendar.MONTH) + 1);
+            appendTwoDigits(b.append('-'), calendar.get(Calendar.DAY_OF_MONTH));
+            if (dateFormat.ordinal() < DateFormat.YearMonthDay.ordinal()) {
+                appendTwoDigits(b.append('T'), calendar.get(Calendar.HOUR));
+                appendTwoDigits(b.append(':'), calendar.get(Calendar.MINUTE));
+                appendTwoDigits(b.append(':'), calendar.get(Calendar.SECOND));
             }
-            return wrappedWithMake ? "new Date(" + text + ")" : text;
+            b.append('\'');
+        }
+
+        private static void appendTwoDigits(StringBuilder b, int v) {
+            if (v < 10) b.append('0');
+            b.append(v);
         }
 
     }
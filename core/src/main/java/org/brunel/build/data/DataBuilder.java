@@ -37,6 +37,10 @@ import java.util.Set;
  */
 public class DataBuilder {
 
+    // Derived data is kept so charts built again (at another size, say) skip the work.
+    // Its budget is set by the system property "brunel.cache.derived" (bytes); zero turns it off, and derived is null
+    private static final DerivedDataCache derived = makeDerivedCache();
+
     private final DataModifier modifier;
     private final VisSingle vis;
 
@@ -84,15 +88,16 @@ public class DataBuilder {
         if (modifier != null) params = modifier.modifyParameters(params, vis);
 
         Dataset data = vis.getDataset();                                                // The data to use
-        data = data.addConstants(params.constantsCommand);                              // add constant fields
-        data = data.each(params.eachCommand);                                           // divide up fields into parts
-        data = data.filter(params.filterCommand);                                       // filter data
-        data = data.transform(params.transformCommand);                                 // bin, rank, ... on data
-        data = data.summarize(params.summaryCommand);                                   // summarize data
-        data = data.series(params.seriesCommand);                                       // convert series
-        data = data.sort(params.sortCommand);                                           // sort data
-        data = data.sortRows(params.sortRowsCommand);                                   // sort rows only
-        data = data.stack(params.stackCommand);                                         // stack data
+        data = derive(data, "addConstants", params.constantsCommand);                   // add constant fields
+        data = derive(data, "each", params.eachCommand);                                // divide up fields into parts
+        data = derive(data, "filter", params.filterCommand);                            // filter data
+        data = derive(data, "transform", params.transformCommand);                      // bin, rank, ... on data
+        data = derive(data, "summarize", params.summaryCommand);                        // summarize data
+        data = derive(data, "series", params.seriesCommand);                            // convert series
+        data = derive(data, "sort", params.sortCommand);                                // sort data
+        data = derive(data, "sortRows", params.sortRowsCommand);                        // sort rows only
+        data = derive(data, "stack", params.stackCommand);                              // stack data
+        data = DerivedDataCache.copy(data);                                             // Not shared with other builds
         data.set("parameters", params);                                                 // Params used to build this
         return data;
     }
@@ -107,6 +112,15 @@ public class DataBuilder {
         return new DataBuilder(vis.makeCanonical()).build();
     }
 
+    private static Dataset derive(Dataset data, String stage, String command) {
+        return derived == null ? DerivedDataCache.apply(data, stage, command) : derived.derive(data, stage, command);
+    }
+
+    private static DerivedDataCache makeDerivedCache() {
+        long budget = Long.getLong("brunel.cache.derived", 256L * 1024 * 1024);
+        return budget > 0 ? new DerivedDataCache(budget) : null;
+    }
+
     private int getParameterIntValue(Param param, int defaultValue) {
         if (param == null) return defaultValue;
         if (param.isField()) {
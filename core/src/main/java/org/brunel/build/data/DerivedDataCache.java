@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.SharedField;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the data sets produced by each stage of data building, keyed by the input data set instance,
+ * the stage and its command. Since cached data sets are themselves the inputs to later stages, building the
+ * same chart again reuses every stage, and a chart that differs only in a later stage (such as its sort)
+ * reuses the stages before it. Inputs are held weakly; results are held, least recently used first out,
+ * up to a budget of Dataset.expectedSize() bytes. Results whose input has been collected can never be used
+ * again, so they are dropped at the next access.
+ * Fields calculate their statistics lazily and store them as properties, so a cached field, which builds running
+ * at the same time may share, must never be changed. Each stage therefore works on a copy of its input's fields,
+ * and builds should use copy() before they read or change a result.
+ */
+public class DerivedDataCache {
+
+    private final long budget;
+    private final Map<Key, Dataset> map = new LinkedHashMap<>(16, 0.75f, true);       // Access order
+    private final ReferenceQueue<Dataset> collected = new ReferenceQueue<>();          // Keys with no input
+    private long size;
+    private long hits, misses;
+
+    /**
+     * Create a cache
+     *
+     * @param budget bytes of derived data to keep
+     */
+    public DerivedDataCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Apply a stage of data building, or return the result of having done so before
+     *
+     * @param data    input data
+     * @param stage   one of the Dataset methods: addConstants, each, filter, transform, summarize, series,
+     *                sort, sortRows or stack
+     * @param command command for that stage
+     * @return resulting data set
+     */
+    public Dataset derive(Dataset data, String stage, String command) {
+        Key key = new Key(data, stage, command, collected);
+        synchronized (this) {
+            purge();
+            Dataset result = map.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+
+        // Build without holding the lock; if another thread builds the same thing, the later one is kept
+        Dataset input = copy(data);
+        Dataset result = apply(input, stage, command);
+        if (result == input) return data;           // Stages with nothing to do return their input
+        store(key, result);
+        return result;
+    }
+
+    /**
+     * Copy a data set so the copy's fields can be used without affecting anyone else's.
+     * The values are shared; only the fields and their properties are copied. Until a copied field is changed,
+     * its statistics are calculated by the field it copies, so they are calculated once however often it is copied
+     *
+     * @param data data set to copy
+     * @return a copy with new fields
+     */
+    public static Dataset copy(Dataset data) {
+        Field[] fields = new Field[data.fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new SharedField(data.fields[i]);
+        }
+        return data.replaceFields(fields);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    private synchronized void store(Key key, Dataset result) {
+        purge();
+        Dataset previous = map.put(key, result);
+        if (previous != null) size -= previous.expectedSize();
+        size += result.expectedSize();
+        Iterator<Dataset> it = map.values().iterator();
+        while (size > budget && it.hasNext()) {
+            size -= it.next().expectedSize();
+            it.remove();
+        }
+    }
+
+    /**
+     * The number of results held
+     *
+     * @return result count
+     */
+    public synchronized int size() {
+        purge();
+        return map.size();
+    }
+
+    // Must be called holding the lock; removes results whose input data set has been collected
+    private void purge() {
+        Reference<? extends Dataset> ref;
+        while ((ref = collected.poll()) != null) {
+            Dataset result = map.remove(ref);
+            if (result != null) size -= result.expectedSize();
+        }
+    }
+
+    /**
+     * Apply a stage of data building without using any cache
+     *
+     * @param data    input data
+     * @param stage   one of the stages accepted by derive()
+     * @param command command for that stage
+     * @return resulting data set
+     */
+    public static Dataset apply(Dataset data, String stage, String command) {
+        switch (stage) {
+            case "addConstants":
+                return data.addConstants(command);
+            case "each":
+                return data.each(command);
+            case "filter":
+                return data.filter(command);
+            case "transform":
+                return data.transform(command);
+            case "summarize":
+                return data.summarize(command);
+            case "series":
+                return data.series(command);
+            case "sort":
+                return data.sort(command);
+            case "sortRows":
+                return data.sortRows(command);
+            case "stack":
+                return data.stack(command);
+            default:
+                throw new IllegalArgumentException("Unknown data building stage: " + stage);
+        }
+    }
+
+    /*
+     * Matches the same data set instance (not an equal one) with the same stage and command.
+     * The key is itself the weak reference, so once the data set has been collected it is queued for removal
+     * (and matches nothing but itself until then)
+     */
+    private static class Key extends WeakReference<Dataset> {
+        private final String stage;
+        private final String command;
+        private final int hash;
+
+        Key(Dataset data, String stage, String command, ReferenceQueue<Dataset> queue) {
+            super(data, queue);
+            this.stage = stage;
+            this.command = command;
+            this.hash = (System.identityHashCode(data) * 31 + stage.hashCode()) * 31 + command.hashCode();
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            Dataset d = get();
+            return d != null && d == other.get() && stage.equals(other.stage) && command.equals(other.command);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class BuilderOptions {
     public String dataName = "table%d";                         // Pattern for the data table ID. %d is the index.
     public String className = "BrunelVis";                      // Name of the base function
     public DataMethod includeData = DataMethod.columns;         // What level of data to include
+    public DataEncoding dataEncoding = DataEncoding.rows;       // How data tables are written
     public boolean generateBuildCode = true;                    // if true, Add javascript to build the chart initially
     public boolean readableJavascript = true;                   // Readable or shorter
     public String locJavaScript = "https://brunelvis.org/js";   // The location of the javascript libraries
@@ -44,6 +45,8 @@ public class BuilderOptions {
                 options.locJavaScript = args[i+1];
             if (arg.equals("-m") || arg.equals("-maps"))
                 options.locMaps = args[i+1];
+            if (arg.equals("-e") || arg.equals("-encoding"))
+                options.dataEncoding = DataEncoding.valueOf(args[i+1].toLowerCase());
         }
         return options;
     }
@@ -60,6 +63,7 @@ public class BuilderOptions {
     		else if (keyVal[0].trim().equalsIgnoreCase("locMaps")) options.locMaps = keyVal[1].trim();
     		else if (keyVal[0].trim().equalsIgnoreCase("locD3")) options.locD3 = keyVal[1].trim();
     		else if (keyVal[0].trim().equalsIgnoreCase("locTopoJson")) options.locTopoJson = keyVal[1].trim();
+    		else if (keyVal[0].trim().equalsIgnoreCase("dataEncoding")) options.dataEncoding = DataEncoding.valueOf(keyVal[1].trim().toLowerCase());
     	}
 
     	return options;
@@ -75,4 +79,13 @@ public class BuilderOptions {
         none, full, columns, minimal
     }
 
+    /**
+     * rows - a javascript array of values for each row
+     * binary - the serialized table (a dictionary and codes for each field) as base64 text.
+     *          Tables with values that cannot be serialized are written as rows
+     */
+    public enum DataEncoding {
+        rows, binary
+    }
+
 }
@@ -18,18 +18,32 @@ package org.brunel.build.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 
 public class ContentReader {
     public static String readContentFromUrl(URI uri) throws IOException {
+        return readContent(openUrl(uri));
+    }
+
+    /**
+     * Open a stream to read the content at a URL
+     *
+     * @param uri location to read
+     * @return stream of the content
+     * @throws IOException if the connection fails
+     */
+    public static InputStream openUrl(URI uri) throws IOException {
         //TODO:  Centrally handle security
     	try {
     		//Setting User-Agent avoids receiving an http 403 error.
     	    HttpURLConnection httpcon = (HttpURLConnection) uri.toURL().openConnection();
     	    httpcon.addRequestProperty("User-Agent", "Mozilla/4.0");
 
-    	    return readContent(httpcon.getInputStream());
+    	    return httpcon.getInputStream();
     	}
     	catch(IllegalArgumentException ex) {
     		throw new IllegalArgumentException("Could not read data from: " + uri,ex.getCause());
@@ -37,13 +51,14 @@ public class ContentReader {
     }
 
     public static String readContent(InputStream is) throws IOException {
-        // Use StringBuilder to read the data in large chunks
+        // Decode as we go, so multi-byte characters are not split between chunks
         StringBuilder builder = new StringBuilder();
-        byte[] data = new byte[20480];
+        Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+        char[] data = new char[20480];
 
         int c;
-        while ((c = is.read(data, 0, data.length)) > 0)
-            builder.append(new String(data, 0, c));
+        while ((c = reader.read(data, 0, data.length)) > 0)
+            builder.append(data, 0, c);
 
         return builder.toString();
     }
@@ -18,11 +18,18 @@ package org.brunel.build.util;
 
 import org.brunel.data.Dataset;
 import org.brunel.data.io.CSV;
+import org.brunel.data.io.CSVReader;
 import org.brunel.util.GeneratedData;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Brunel's access to Datasets via a cache.  The key must be unique.  If the key is an URL it will
@@ -31,17 +38,23 @@ import java.net.URI;
 public class DataCache {
 
     public static final String SAMPLE_DATA_LOCATION = "http://brunel.mybluemix.net/sample_data/";
-    // Local cache is needed because Brunel needs identical Datasets to be the same instance
-    private static final DatasetCache localCache = new SimpleCache();
-    private static DatasetCache userCache;
+    // Local cache is needed because Brunel needs identical Datasets to be the same instance.
+    // Its budgets are set by the system properties "brunel.cache.memory" and "brunel.cache.disk" (bytes), and
+    // "brunel.cache.dir" (where to write files; a temporary directory by default). Data evicted from memory goes
+    // to disk, so uploaded data (which cannot be read again) survives; setting the disk budget to 0 discards it.
+    // Files in a directory set this way are kept on exit, and read back when the service restarts
+    private static final DatasetCache localCache = makeLocalCache();
+    private static volatile DatasetCache userCache;
+    // Loads under way, so concurrent requests for the same key share one load
+    private static final ConcurrentHashMap<String, FutureTask<Dataset>> loading = new ConcurrentHashMap<>();
 
     /**
      * Specify an alternative cache implementation for storing Datasets by key.
      * This should called once before any use of caching.
      *
-     * @param cache the alternate cache to use
+     * @param cache the alternate cache to use; it is called from many threads at once, so must be thread-safe
      */
-    public static synchronized void useCache(DatasetCache cache) {
+    public static void useCache(DatasetCache cache) {
         userCache = cache;
     }
 
@@ -51,10 +64,11 @@ public class DataCache {
      * @param dataKey unique identifier for data
      * @param data    the data to cache
      */
-    public static synchronized void store(String dataKey, Dataset data) {
+    public static void store(String dataKey, Dataset data) {
         localCache.store(dataKey, data);
-        if (userCache != null) {
-            userCache.store(dataKey, data);
+        DatasetCache user = userCache;
+        if (user != null) {
+            user.store(dataKey, data);
         }
     }
 
@@ -64,23 +78,36 @@ public class DataCache {
      * @param dataKey the location to read from
      * @return the built data set
      */
-    public static synchronized Dataset get(String dataKey) throws IOException {
+    public static Dataset get(String dataKey) throws IOException {
         return get(dataKey, null);
     }
 
+    /**
+     * Return the data the local cache holds for a key, without reading it if it is not there
+     *
+     * @param dataKey the location of the data
+     * @return the cached data set, or null if the local cache does not hold it
+     */
+    public static Dataset peek(String dataKey) {
+        return dataKey == null ? null : localCache.retrieve(dataKey);
+    }
+
     /**
      * This method will return the value in the cache if it exists, and if not, it will read the data.
-     * If the input stream is defined it will be used, otherwise the datakey is assumed to be a URL
+     * If the input stream is defined it will be used, otherwise the datakey is assumed to be a URL.
+     * Cached data is returned without locking; if the data must be loaded, concurrent calls for the same key
+     * wait for a single load, while loads for different keys run in parallel. Calls that pass a stream or
+     * ask for a refresh always do their own load.
      *
      * @param dataKey the location to read from.  This may be a URL or a UUID for uploaded data.
      * @param is      a stream to read from -- may be null.
      * @return the built data set
      * @throws IOException can happen if the key is not a URL and the content for the key is no longer in the cache
      */
-    public static synchronized Dataset get(String dataKey, InputStream is) throws IOException {
+    public static Dataset get(String dataKey, InputStream is) throws IOException {
         if (dataKey == null) return null;
 
-        boolean useCache = true;                                    // Unless we ask to refresh, use it!
+        boolean refresh = false;                                    // Unless we ask to refresh, use the cache
 
         URI uri = makeURI(dataKey);
         if (dataKey.startsWith("generate:")) {
@@ -98,27 +125,91 @@ public class DataCache {
                 uri = makeURI(SAMPLE_DATA_LOCATION + uri.getSchemeSpecificPart());
             else if (uri.getScheme().equals("refresh")) {
                 uri = makeURI(uri.toString().replace("refresh", "http"));
-                useCache = false;
+                refresh = true;
             }
         }
 
-        Dataset dataset = useCache ? localCache.retrieve(dataKey) : null;
+        Dataset dataset = refresh ? null : localCache.retrieve(dataKey);
         if (dataset != null) return dataset;
 
-        // Not found in local cache check if in user supplied cache.
-        // If so, stick it back in the local cache
-        if (userCache != null && useCache) {
-            dataset = userCache.retrieve(dataKey);
-            if (dataset != null) localCache.store(dataKey, dataset);
+        // Join a load already under way, or start one. A caller with its own stream, or asking for fresh data,
+        // must have its own load, so does not join another or let others join it
+        FutureTask<Dataset> task = new FutureTask<>(new Loader(dataKey, uri, is, refresh));
+        boolean shared = is == null && !refresh;
+        FutureTask<Dataset> existing = shared ? loading.putIfAbsent(dataKey, task) : null;
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                if (shared) loading.remove(dataKey, task);
+            }
+            existing = task;
         }
-        if (dataset != null) return dataset;
 
-        // Actually read the data
-        String content = is == null ? ContentReader.readContentFromUrl(uri) : ContentReader.readContent(is);
-        dataset = Dataset.make(CSV.read(content));
-        localCache.store(dataKey, dataset);
-        if (userCache != null) userCache.store(dataKey, dataset);
-        return dataset;
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + dataKey);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /*
+     * Loads data that was not in the local cache, from the user cache or by reading it
+     */
+    private static class Loader implements Callable<Dataset> {
+        private final String dataKey;
+        private final URI uri;
+        private final InputStream is;
+        private final boolean refresh;
+
+        Loader(String dataKey, URI uri, InputStream is, boolean refresh) {
+            this.dataKey = dataKey;
+            this.uri = uri;
+            this.is = is;
+            this.refresh = refresh;
+        }
+
+        public Dataset call() throws IOException {
+            DatasetCache user = userCache;
+            if (!refresh) {
+                // A previous load may have finished since we looked
+                Dataset dataset = localCache.retrieve(dataKey);
+                if (dataset != null) return dataset;
+
+                // Not found in local cache check if in user supplied cache.
+                // If so, stick it back in the local cache
+                dataset = user == null ? null : user.retrieve(dataKey);
+                if (dataset != null) {
+                    localCache.store(dataKey, dataset);
+                    return dataset;
+                }
+            }
+
+            // Actually read the data, streaming it straight into columns
+            Dataset dataset;
+            InputStream content = is == null ? ContentReader.openUrl(uri) : is;
+            try {
+                dataset = CSVReader.readDataset(content);
+            } finally {
+                if (is == null) content.close();
+            }
+            localCache.store(dataKey, dataset);
+            if (user != null) user.store(dataKey, dataset);
+            return dataset;
+        }
+    }
+
+    private static TieredCache makeLocalCache() {
+        String dir = System.getProperty("brunel.cache.dir");
+        return new TieredCache(Long.getLong("brunel.cache.memory", 512L * 1024 * 1024),
+                Long.getLong("brunel.cache.disk", 2048L * 1024 * 1024), dir == null ? null : new File(dir));
     }
 
     /* Returns null for invalid URIs */
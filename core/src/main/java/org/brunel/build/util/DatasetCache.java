@@ -21,6 +21,8 @@ import org.brunel.data.Dataset;
 /**
  * Interface defining a caching mechanism to cache Dataset instances by a key name. Implementations
  * can be set using DataCache.useCache().
+ * Implementations must be thread-safe: DataCache calls retrieve() and store() from many threads at once,
+ * including for the same key, and does not serialize the calls.
  *
  * @author drope
  */
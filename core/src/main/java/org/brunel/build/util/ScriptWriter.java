@@ -18,33 +18,46 @@ package org.brunel.build.util;
 
 import org.brunel.data.Data;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * A class to make it easier to output Javascript
+ * A class to make it easier to output Javascript.
+ * Text is written to an Appendable; by default a StringBuilder whose text is returned by content(),
+ * but any Writer can be used to stream output instead. The column is tracked as text is written.
  */
 public class ScriptWriter {
 
     private static final Set<Character> NO_SPACE_BEFORE = new HashSet<>(Arrays.asList(':', ',', ';', '(', ')', ']'));
     private static final String INDENT = "  ";
     private final int lineMaxLength;
-    private final PrintWriter out;
-    private final StringWriter base;
+    private static final String NEW_LINE = System.lineSeparator();
+    private final Appendable out;
     public final BuilderOptions options;
+    private int column;                                 // Characters written since the last new line
     private int consecutiveNewLines;
     private int indentLevel;
     private boolean changed;
 
     public ScriptWriter(BuilderOptions options) {
+        this(options, new StringBuilder());
+    }
+
+    /**
+     * Create a writer that sends its output to the given sink
+     *
+     * @param options options for building
+     * @param out     where to write text
+     */
+    public ScriptWriter(BuilderOptions options, Appendable out) {
         this.options = options;
+        this.out = out;
         lineMaxLength = options.readableJavascript ? 100 : 400;
-        base = new StringWriter();
-        out = new PrintWriter(base);
         consecutiveNewLines = 1;
     }
 
@@ -63,13 +76,15 @@ public class ScriptWriter {
     public ScriptWriter add(Object... items) {
         // Add indentation if needed
         if (options.readableJavascript && consecutiveNewLines > 0)
-            for (int i = 0; i < indentLevel; i++) out.print(INDENT);
+            for (int i = 0; i < indentLevel; i++) write(INDENT);
 
         // Add items
         for (int i = 0; i < items.length; i++) {
             Object item = items[i];
-            String s;
-            if (item == null) {
+            CharSequence s;
+            if (item instanceof CharSequence) {
+                s = (CharSequence) item;                // Written as is, so a buffer can be passed without copying
+            } else if (item == null) {
                 s = "null";
             } else if (item instanceof Object[]) {
                 s = Data.join((Object[]) item);
@@ -80,8 +95,8 @@ public class ScriptWriter {
             } else {
                 s = Data.format(item, false);
             }
-            if (i > 0 && !NO_SPACE_BEFORE.contains(s.charAt(0))) out.print(" ");
-            out.print(s);
+            if (i > 0 && !NO_SPACE_BEFORE.contains(s.charAt(0))) write(" ");
+            write(s);
         }
         consecutiveNewLines = 0;
         changed = true;
@@ -100,7 +115,7 @@ public class ScriptWriter {
 
     public ScriptWriter ln() {
         consecutiveNewLines++;
-        out.println();
+        write(NEW_LINE);
         changed = true;
         return this;
     }
@@ -108,7 +123,7 @@ public class ScriptWriter {
     public ScriptWriter addQuoted(Object... items) {
         indentMore().indentMore();
         for (int i = 0; i < items.length; i++) {
-            if (i > 0) out.print(options.readableJavascript ? ", " : ",");
+            if (i > 0) write(options.readableJavascript ? ", " : ",");
             if (currentColumn() > 77) ln();
             add(quote(items[i]));
         }
@@ -117,12 +132,7 @@ public class ScriptWriter {
     }
 
     public int currentColumn() {
-        base.flush();
-        StringBuffer b = base.getBuffer();
-        int end = b.length() - 1;
-        int eol = b.lastIndexOf("\n");
-        if (eol < 0) eol = 0;
-        return end - eol;
+        return column;
     }
 
     public String quote(Object item) {
@@ -133,7 +143,7 @@ public class ScriptWriter {
         indentMore().indentMore();
         boolean first = true;
         for (Object o : items) {
-            if (!first) out.print(", ");
+            if (!first) write(", ");
             if (currentColumn() > lineMaxLength - 4) ln();
             add(quote(o));
             first = false;
@@ -167,15 +177,27 @@ public class ScriptWriter {
         return this;
     }
 
+    /**
+     * Finish writing
+     *
+     * @return the text written, if it was written to the default sink; otherwise the sink is flushed and null returned
+     */
     public String content() {
-        out.close();
-        return base.toString();
+        if (out instanceof StringBuilder) return out.toString();
+        if (out instanceof Flushable) {
+            try {
+                ((Flushable) out).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return null;
     }
 
     public ScriptWriter continueOnNextLine(String... before) {
-        for (String s : before) out.print(s);
+        for (String s : before) write(s);
         ln();
-        if (options.readableJavascript) out.print(INDENT);
+        if (options.readableJavascript) write(INDENT);
         return this;
     }
 
@@ -200,4 +222,17 @@ public class ScriptWriter {
         if (options.readableJavascript) while (consecutiveNewLines < 2) ln();
         else if (consecutiveNewLines == 0) ln();
     }
+
+    /* Write text to the sink, tracking the column */
+    private void write(CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int n = text.length();
+        int eol = n - 1;
+        while (eol >= 0 && text.charAt(eol) != '\n') eol--;
+        column = eol < 0 ? column + n : n - 1 - eol;
+    }
 }
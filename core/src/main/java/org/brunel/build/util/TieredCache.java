@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.ColumnarFile;
+import org.brunel.data.io.Serialize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A two tier cache. Data sets are held in memory, least recently used first out, up to a budget of
+ * Dataset.expectedSize() bytes. Data sets evicted from memory are written to files in a local directory,
+ * which has its own budget in bytes; retrieving one of those reads it back into the memory tier.
+ * A disk budget of zero turns the disk tier off. Files use the columnar format when the data allows (so reading
+ * back maps the file rather than copying it) and the serialized format otherwise. Files in a temporary directory are
+ * deleted when the JVM exits. Files in a directory we are given are kept, with an index of their keys, and a cache
+ * made later on the same directory starts with them in its disk tier, so a restarted service does not start cold.
+ * Retrieving a data set held in memory takes no lock; recency is tracked with a counter stamped on each entry,
+ * and the least recently used entry is found by a scan when something must be evicted.
+ * Files are written and read without holding the lock, so a slow disk does not hold up other users of the cache.
+ */
+public class TieredCache implements DatasetCache {
+
+    private static final String INDEX = "cache.index";     // Lists the files in a directory we were given
+
+    private final long memoryBudget;                        // Bytes allowed for the memory tier
+    private final long diskBudget;                          // Bytes allowed for the disk tier
+    private File directory;                                 // Where we spill data; created when first needed
+    private boolean createdDirectory;                       // True if we created it, so should delete it
+    private final boolean persistent;                       // True if we were given the directory, so keep files
+    private final Object indexLock = new Object();          // Held while writing the index, so writes are in order
+
+    // Memory entries are read without locking; all changes to either tier are made holding this object's lock
+    private final ConcurrentHashMap<String, Entry> memory = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> pending = new ConcurrentHashMap<>();    // Evicted, being written
+    private final Map<String, Spilled> disk = new LinkedHashMap<>(16, 0.75f, true);   // Access order
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private long memoryUse, diskUse;
+    private long diskHits, misses, memoryEvictions, diskEvictions;
+    private int fileCount;
+    private Thread cleanup;                                 // Deletes our files on exit; added when first needed
+
+    /**
+     * Create a cache that spills to a new temporary directory
+     *
+     * @param memoryBudget bytes of data to hold in memory
+     * @param diskBudget   bytes of data to hold on disk; zero means data evicted from memory is discarded
+     */
+    public TieredCache(long memoryBudget, long diskBudget) {
+        this(memoryBudget, diskBudget, null);
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param memoryBudget bytes of data to hold in memory
+     * @param diskBudget   bytes of data to hold on disk; zero means data evicted from memory is discarded
+     * @param directory    directory for files, or null to create a temporary one when first needed.
+     *                     Files in a given directory are kept, and read into the disk tier by the next cache using it
+     */
+    public TieredCache(long memoryBudget, long diskBudget, File directory) {
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        this.directory = directory;
+        this.persistent = directory != null;
+        if (persistent && diskBudget > 0) readIndex();
+    }
+
+    @Override
+    public Dataset retrieve(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            entry.lastUsed = clock.incrementAndGet();
+            memoryHits.incrementAndGet();
+            return entry.dataset;
+        }
+        return retrieveFromDisk(key);
+    }
+
+    private Dataset retrieveFromDisk(String key) {
+        Spilled spilled = null;
+        Entry waiting;
+        List<Map.Entry<String, Entry>> evicted;
+        synchronized (this) {
+            // Another thread may have promoted it while we waited for the lock
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                entry.lastUsed = clock.incrementAndGet();
+                memoryHits.incrementAndGet();
+                return entry.dataset;
+            }
+            // It may have been evicted but not yet written
+            waiting = pending.remove(key);
+            if (waiting != null) {
+                memoryHits.incrementAndGet();
+                evicted = addToMemory(key, waiting);
+            } else {
+                evicted = null;
+                spilled = disk.get(key);
+                if (spilled == null) {
+                    misses++;
+                    return null;
+                }
+            }
+        }
+        if (waiting != null) {
+            spill(evicted);
+            return waiting.dataset;
+        }
+
+        Dataset dataset = readFile(spilled.file);
+        Entry read = dataset == null ? null : new Entry(dataset);      // Sized before we take the lock
+
+        synchronized (this) {
+            // Data stored or promoted while we were reading wins, so everyone sees the same instance
+            Entry entry = memory.get(key);
+            if (entry != null) return entry.dataset;
+            if (dataset == null) {
+                if (disk.get(key) == spilled) removeFile(key);    // Unreadable, so no use keeping it
+                misses++;
+                return null;
+            }
+            // Promote back into memory; the file is kept, so evicting it again costs nothing
+            diskHits++;
+            evicted = addToMemory(key, read);
+        }
+        spill(evicted);
+        return dataset;
+    }
+
+    @Override
+    public void store(String key, Dataset dataset) {
+        Entry entry = new Entry(dataset);                       // Sized before we take the lock
+        List<Map.Entry<String, Entry>> evicted;
+        boolean removed;
+        synchronized (this) {
+            pending.remove(key);                                // Not yet written, and now out of date
+            removed = disk.containsKey(key);
+            if (removed) removeFile(key);                       // The file holds the old data
+            evicted = addToMemory(key, entry);
+        }
+        if (removed && evicted.isEmpty()) writeIndex();         // Otherwise spill() writes it
+        spill(evicted);
+    }
+
+    public long memoryHits() {
+        return memoryHits.get();
+    }
+
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * The number of data sets moved out of memory, whether or not they were then written to disk
+     *
+     * @return count of evictions
+     */
+    public synchronized long memoryEvictions() {
+        return memoryEvictions;
+    }
+
+    /**
+     * The number of files deleted to keep within the disk budget
+     *
+     * @return count of evictions
+     */
+    public synchronized long diskEvictions() {
+        return diskEvictions;
+    }
+
+    public synchronized long memoryUse() {
+        return memoryUse;
+    }
+
+    public synchronized long diskUse() {
+        return diskUse;
+    }
+
+    /**
+     * Delete all files written by this cache, and the directory if the cache created it.
+     * This is done automatically when the JVM exits if the cache made its own directory
+     */
+    public synchronized void deleteFiles() {
+        for (Spilled spilled : disk.values()) spilled.file.delete();
+        disk.clear();
+        diskUse = 0;
+        if (directory != null) new File(directory, INDEX).delete();
+        if (createdDirectory && directory != null) {
+            directory.delete();
+            directory = null;
+            createdDirectory = false;
+        }
+    }
+
+    // Must be called holding the lock; returns the evicted entries that need writing to disk
+    private List<Map.Entry<String, Entry>> addToMemory(String key, Entry entry) {
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<>();
+        entry.lastUsed = clock.incrementAndGet();
+        Entry previous = memory.put(key, entry);
+        if (previous != null) memoryUse -= previous.size;
+        memoryUse += entry.size;
+
+        // Evict least recently used entries, but always keep the one just added
+        while (memoryUse > memoryBudget && memory.size() > 1) {
+            String eldest = null;
+            long oldest = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : memory.entrySet()) {
+                if (e.getValue() != entry && e.getValue().lastUsed < oldest) {
+                    eldest = e.getKey();
+                    oldest = e.getValue().lastUsed;
+                }
+            }
+            Entry removed = memory.remove(eldest);
+            memoryUse -= removed.size;
+            memoryEvictions++;
+            if (diskBudget > 0 && !disk.containsKey(eldest)) {
+                pending.put(eldest, removed);
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest, removed));
+            }
+        }
+        return evicted;
+    }
+
+    // Called without the lock; writes evicted data sets and adds them to the disk tier
+    private void spill(List<Map.Entry<String, Entry>> evicted) {
+        if (evicted.isEmpty()) return;
+        for (Map.Entry<String, Entry> e : evicted) {
+            String key = e.getKey();
+            Entry entry = e.getValue();
+            Dataset dataset = entry.dataset;
+            if (pending.get(key) != entry) continue;            // Already promoted or replaced
+
+            boolean columnar = ColumnarFile.canWrite(dataset);
+            File file;
+            Spilled spilled;
+            try {
+                file = newFile(columnar ? ".columns" : ".ser");
+                if (columnar)
+                    ColumnarFile.write(dataset, file);
+                else
+                    Files.write(file.toPath(), Serialize.serializeDataset(dataset));
+                spilled = new Spilled(file);
+            } catch (IOException ex) {
+                // Cannot write to disk, so the data set is simply dropped, as if the disk tier were full
+                pending.remove(key, entry);
+                continue;
+            }
+
+            synchronized (this) {
+                if (!pending.remove(key, entry)) {
+                    file.delete();                              // Promoted or replaced while we wrote it
+                    continue;
+                }
+                disk.put(key, spilled);
+                diskUse += spilled.size;
+                Iterator<Map.Entry<String, Spilled>> it = disk.entrySet().iterator();
+                while (diskUse > diskBudget && !disk.isEmpty()) {
+                    Spilled eldest = it.next().getValue();
+                    it.remove();
+                    diskUse -= eldest.size;
+                    eldest.file.delete();
+                    diskEvictions++;
+                }
+            }
+        }
+        writeIndex();
+    }
+
+    // Makes the directory and the clean up hook when first needed; files in a directory we were given are kept
+    private synchronized File newFile(String suffix) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("brunel-cache").toFile();
+            createdDirectory = true;
+        }
+        if (cleanup == null && !persistent) {
+            cleanup = new Thread(new Runnable() {
+                public void run() {
+                    deleteFiles();
+                }
+            }, "brunel-cache-cleanup");
+            Runtime.getRuntime().addShutdownHook(cleanup);
+        }
+        File file;
+        do {
+            file = new File(directory, "data" + (fileCount++) + suffix);
+        } while (file.exists());                                // Kept from an earlier run
+        return file;
+    }
+
+    /*
+     * Called without the lock; writes the keys and file names of the disk tier, least recently used first,
+     * to a new file which then replaces the index, so the index is always complete
+     */
+    private void writeIndex() {
+        if (!persistent) return;
+        synchronized (indexLock) {
+            List<Map.Entry<String, Spilled>> entries;
+            synchronized (this) {
+                entries = new ArrayList<>(disk.entrySet());
+            }
+            File index = new File(directory, INDEX);
+            if (entries.isEmpty()) {
+                index.delete();
+                return;
+            }
+            File written = new File(directory, INDEX + ".new");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(written)))) {
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Spilled> e : entries) {
+                    byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeUTF(e.getValue().file.getName());
+                }
+            } catch (IOException ex) {
+                // The files are still used while we run; only a restart is affected
+                written.delete();
+                return;
+            }
+            try {
+                Files.move(written.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                written.delete();
+            }
+        }
+    }
+
+    // Called when the cache is made; adds the files listed in the index to the disk tier, dropping any that are missing
+    private void readIndex() {
+        File index = new File(directory, INDEX);
+        if (!index.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                File file = new File(directory, in.readUTF());
+                if (!file.exists()) continue;
+                Spilled spilled = new Spilled(file);
+                Spilled previous = disk.put(new String(key, StandardCharsets.UTF_8), spilled);
+                if (previous != null) diskUse -= previous.size;
+                diskUse += spilled.size;
+            }
+        } catch (IOException | RuntimeException ex) {
+            // A damaged index means we start cold; whatever was read before the damage is kept
+        }
+
+        // The budget may be smaller than it was
+        Iterator<Spilled> it = disk.values().iterator();
+        while (diskUse > diskBudget && it.hasNext()) {
+            Spilled eldest = it.next();
+            it.remove();
+            diskUse -= eldest.size;
+            eldest.file.delete();
+            diskEvictions++;
+        }
+    }
+
+    private void removeFile(String key) {
+        Spilled spilled = disk.remove(key);
+        diskUse -= spilled.size;
+        spilled.file.delete();
+    }
+
+    private static Dataset readFile(File file) {
+        try {
+            if (file.getName().endsWith(".columns")) return ColumnarFile.read(file);
+            return (Dataset) Serialize.deserialize(Files.readAllBytes(file.toPath()));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /* A data set in memory, with its size (measured when made, outside the lock) and a stamp for when it was last used */
+    private static class Entry {
+        final Dataset dataset;
+        final long size;
+        volatile long lastUsed;
+
+        Entry(Dataset dataset) {
+            this.dataset = dataset;
+            this.size = dataset.expectedSize();
+        }
+    }
+
+    /* A file on disk, with its size when written */
+    private static class Spilled {
+        final File file;
+        final long size;
+
+        Spilled(File file) {
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+}
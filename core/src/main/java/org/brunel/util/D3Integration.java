@@ -25,12 +25,21 @@ import org.brunel.build.d3.D3Builder;
 import org.brunel.build.util.BuilderOptions;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
+import org.brunel.data.Field;
 import org.brunel.data.io.CSV;
+import org.brunel.data.io.CSVReader;
+import org.brunel.data.util.DateParser;
+import org.brunel.data.values.DateColumnProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.DoubleColumnProvider;
 import org.brunel.model.VisException;
 import org.brunel.model.VisItem;
 
 import com.google.gson.Gson;
 
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
 /**
  * Brunel integration methods provided for services and other languages.  Only primitives are used for language integration methods
  *
@@ -41,6 +50,10 @@ public class D3Integration {
 
 	private static final Gson gson = new Gson();
 
+	// Recently built outputs, so identical requests (such as a dashboard refreshing a chart) are not built again.
+	// Its budget is set by the system property "brunel.cache.output" (bytes); zero turns it off, and outputs is null
+	private static final OutputCache outputs = makeOutputCache();
+
 	/**
 	 * Create and return the Brunel results as a String containing the Brunel JSON.
 	 * @param data the data as a CSV String
@@ -63,6 +76,74 @@ public class D3Integration {
 	    	}
     }
 
+	/**
+	 * Create and return the Brunel results as a String containing the Brunel JSON, for data passed as typed columns.
+	 * See makeDataset for how the columns are described.
+	 * @param names the column names
+	 * @param types the type of each column
+	 * @param columns the data for each column
+	 * @param codes the codes for each string column (null for other columns)
+	 * @param brunelSrc the brunel syntax
+	 * @param width the desired width for the visualization
+	 * @param height the desired height for the visualization
+	 * @param visId an identifier used in the SVG tag that will contain the visualization
+	 * @param controlsId an identifier used in the HTML tag that will contain the interactive controls (may be null)
+	 * @return a String that is JSON containing the Brunel JS, CSS and interactive control metadata.
+	 */
+
+	//Note:   This method is called from other languages.
+	//Do not modify this method signature without checking all language integrations.
+    public static String createBrunelJSONFromColumns(String[] names, String[] types, Object[] columns, Object[] codes,
+                                                     String brunelSrc, int width, int height, String visId, String controlsId) {
+			try {
+				Dataset dataset = makeDataset(names, types, columns, codes);
+				D3Builder builder = makeD3(dataset, brunelSrc, width, height, makeOptions(visId, controlsId));
+				return gson.toJson(makeResult(builder));
+			}
+			catch (Exception ex) {
+	    		throw new RuntimeException(buildExceptionMessage(ex,ex.getMessage(), ".  "));
+	    	}
+    }
+
+    /**
+     * Create a dataset from typed columns, such as those of a data frame, without converting them to text.
+     * The type of each column defines what is passed for it:
+     * "numeric" -- a double[] of values, with NaN for missing values;
+     * "date" -- a long[] of milliseconds since the epoch, with Long.MIN_VALUE for missing values;
+     * "string" -- a String[] dictionary of values, and an int[] of codes into it, negative for missing values.
+     * Names become identifiers, with the original text used for labels, as CSV headers do.
+     * The types are used as given, so no automatic conversion is done.
+     * @param names the column names
+     * @param types the type of each column
+     * @param columns the data for each column, as described above
+     * @param codes the codes for each string column (null for other columns)
+     * @return the dataset
+     */
+	//Note:   This method is called from other languages.
+	//Do not modify this method signature without checking all language integrations.
+    public static Dataset makeDataset(String[] names, String[] types, Object[] columns, Object[] codes) {
+    	Field[] fields = new Field[names.length];
+    	for (int i = 0; i < fields.length; i++) {
+    		String name = CSV.identifier(names[i]), label = CSV.readable(names[i]);
+    		if (types[i].equals("numeric")) {
+    			fields[i] = new Field(name, label, DoubleColumnProvider.fromValues((double[]) columns[i]));
+    			fields[i].setNumeric();
+    		} else if (types[i].equals("date")) {
+    			// Copied, as the provider zeroes missing times and the caller may pass the same arrays again
+    			long[] times = ((long[]) columns[i]).clone();
+    			fields[i] = new Field(name, label, DateColumnProvider.fromTimes(times, DateParser.MISSING));
+    			fields[i].setNumeric();
+    			fields[i].set("date", true);
+    		} else if (types[i].equals("string")) {
+    			Object[] dictionary = (Object[]) columns[i];
+    			fields[i] = new Field(name, label, DictionaryProvider.fromDictionary(dictionary, (int[]) codes[i]));
+    		} else {
+    			throw new IllegalArgumentException("Unknown column type '" + types[i] + "' for column " + names[i]);
+    		}
+    	}
+    	return Dataset.make(fields, false);
+    }
+
     /**
      * Store a dataset in the cache with the given key.  The key can then be used in Brunel data() statements to reference that data.
      * @param dataKey a unique key name for the data
@@ -126,8 +207,117 @@ public class D3Integration {
 	 */
 
     public static BrunelD3Result createBrunelResult(String data, String brunelSrc, int width,  int height, String visId, String controlsId) {
+    			return createBrunelResult(data, brunelSrc, width, height, makeOptions(visId, controlsId));
+    }
+
+	/**
+	 * Create and return the Brunel results using the given builder options.
+	 * @param data the data as a CSV String
+	 * @param brunelSrc the brunel syntax
+	 * @param width the desired width for the visualization
+	 * @param height the desired height for the visualization
+	 * @param options options for the builder, including the identifiers and the data encoding
+	 * @return a Gson serializable object containing the Brunel JS, CSS and interactive control metadata.
+	 */
+    public static BrunelD3Result createBrunelResult(String data, String brunelSrc, int width,  int height, BuilderOptions options) {
     			Dataset dataset = makeBrunelData(data);
-				D3Builder builder = makeD3(dataset, brunelSrc, width, height, visId, controlsId);
+				return makeResult(makeD3(dataset, brunelSrc, width, height, options));
+    }
+
+	/**
+	 * Create the Brunel results, or return them from the output cache if they were built before from the same
+	 * inputs and the same instances of any data read from the data cache.
+	 * @param data the data as a CSV String
+	 * @param brunelSrc the brunel syntax
+	 * @param width the desired width for the visualization
+	 * @param height the desired height for the visualization
+	 * @param options options for the builder, including the identifiers and the data encoding
+	 * @return the results, with an entity tag for their content
+	 */
+    @SuppressWarnings("unchecked")
+    public static OutputCache.Output<BrunelD3Result> createCachedResult(String data, String brunelSrc, int width, int height, BuilderOptions options) {
+    	OutputCache.Key key = makeOutputKey(brunelSrc, null, "result", data, brunelSrc, width, height, describe(options));
+    	OutputCache.Output<BrunelD3Result> output = key == null ? null : (OutputCache.Output<BrunelD3Result>) outputs.get(key);
+    	if (output == null) {
+    		BrunelD3Result result = createBrunelResult(data, brunelSrc, width, height, options);
+    		output = new OutputCache.Output<>(result, gson.toJson(result));
+    		if (key != null) outputs.put(key, output);
+    	}
+    	return output;
+    }
+
+	/**
+	 * Create a full HTML page for the Brunel, or return it from the output cache if it was built before from the
+	 * same inputs and the same data instances.
+	 * @param data the data to use (may be null if the Brunel contains a data() statement)
+	 * @param brunelSrc the brunel syntax
+	 * @param width the desired width for the visualization
+	 * @param height the desired height for the visualization
+	 * @param options options for the builder
+	 * @param footer text to show beneath the visualization (may be null)
+	 * @param titles titles to show above the visualization
+	 * @return the page, with an entity tag for its content
+	 */
+    @SuppressWarnings("unchecked")
+    public static OutputCache.Output<String> createCachedHtml(Dataset data, String brunelSrc, int width, int height,
+                                                              BuilderOptions options, String footer, String... titles) {
+    	OutputCache.Key key = makeOutputKey(brunelSrc, data, "html", brunelSrc, width, height, describe(options),
+    			footer, Arrays.toString(titles));
+    	OutputCache.Output<String> output = key == null ? null : (OutputCache.Output<String>) outputs.get(key);
+    	if (output == null) {
+    		String html = WebDisplay.writeHtml(makeD3(data, brunelSrc, width, height, options), width, height, footer, titles);
+    		output = new OutputCache.Output<>(html, html);
+    		if (key != null) outputs.put(key, output);
+    	}
+    	return output;
+    }
+
+    //Key for output built from the inputs, the given data and the data the Brunel reads from the cache.
+    //The key only looks in the cache, so never reads data; the build does that. Returns null when the output
+    //should not be cached: caching is off, the Brunel cannot be parsed (so the build will report the problem),
+    //it asks for data to be refreshed, or its data is not yet in the cache
+    private static OutputCache.Key makeOutputKey(String brunelSrc, Dataset data, Object... inputs) {
+    	if (outputs == null) return null;
+    	Param[] params;
+    	try {
+    		params = ActionUtil.dataParameters(Action.parse(brunelSrc));
+    	} catch (IllegalStateException | IllegalArgumentException e) {
+    		return null;
+    	}
+    	Dataset[] datasets = new Dataset[params.length + 1];
+    	datasets[0] = data;
+    	for (int i = 0; i < params.length; i++) {
+    		String dataKey = params[i].asString();
+    		if (dataKey.startsWith("refresh:")) return null;
+    		// Generated and raw data are defined by the key text, which is part of the Brunel digested in the key
+    		if (dataKey.startsWith("generate:") || dataKey.startsWith("raw:")) continue;
+    		datasets[i + 1] = DataCache.peek(dataKey);
+    		if (datasets[i + 1] == null) return null;
+    	}
+    	return new OutputCache.Key(datasets, inputs);
+    }
+
+    private static OutputCache makeOutputCache() {
+    	long budget = Long.getLong("brunel.cache.output", 64L * 1024 * 1024);
+    	return budget > 0 ? new OutputCache(budget) : null;
+    }
+
+    //All the option values, since any of them may change the output
+    private static String describe(BuilderOptions options) {
+    	StringBuilder b = new StringBuilder();
+    	for (java.lang.reflect.Field f : BuilderOptions.class.getFields()) {
+    		if (Modifier.isStatic(f.getModifiers())) continue;
+    		try {
+    			b.append(f.getName()).append('=').append(f.get(options)).append(';');
+    		} catch (IllegalAccessException e) {
+    			throw new IllegalStateException(e);
+    		}
+    	}
+    	return b.toString();
+    }
+
+    //Collect the results from a builder
+    private static BrunelD3Result makeResult(D3Builder builder) {
 				BrunelD3Result result = new BrunelD3Result();
 				result.css = builder.getStyleOverrides();
 				result.js = builder.getVisualization().toString();
@@ -157,10 +347,12 @@ public class D3Integration {
 
 	//Creates a D3Builder to produce the d3 output
     public static D3Builder makeD3(Dataset data, String actionText, int width, int height, String visId, String controlsId) {
+    	return makeD3(data, actionText, width, height, makeOptions(visId, controlsId));
+    }
+
+    //Creates a D3Builder to produce the d3 output using the given options
+    public static D3Builder makeD3(Dataset data, String actionText, int width, int height, BuilderOptions options) {
     	try {
-            BuilderOptions options = new BuilderOptions();
-            options.visIdentifier = visId;
-            options.controlsIdentifier = controlsId;
             D3Builder builder = D3Builder.make(options);
             VisItem item = makeVisItem(data, actionText);
             builder.build(item, width, height);
@@ -171,11 +363,19 @@ public class D3Integration {
         }
     }
 
+    //Create the builder options for the given identifiers
+    public static BuilderOptions makeOptions(String visId, String controlsId) {
+        BuilderOptions options = new BuilderOptions();
+        options.visIdentifier = visId;
+        options.controlsIdentifier = controlsId;
+        return options;
+    }
+
     //Create a Dataset instance given CSV
     private static Dataset makeBrunelData(String data) {
     	if (data == null || data.isEmpty()) return null;
     	try {
-            return  Dataset.make(CSV.read(data));
+            return CSVReader.readDataset(data);
     	 } catch (Exception e) {
              throw new IllegalArgumentException("Could not create data as CSV from content", e);
          }
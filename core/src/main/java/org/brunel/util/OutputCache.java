@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.util;
+
+import org.brunel.data.Dataset;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers built outputs (such as the JS, CSS and controls for a chart), keyed by a digest of the text inputs
+ * that produced them and the data set instances they were built from. Since cached data sets are replaced,
+ * not modified, a change to the data gives a new instance and so a new key. Data sets are held weakly; outputs are
+ * held, least recently used first out, up to a budget in bytes. Outputs built from a data set that has been
+ * collected can never be used again, so they are dropped at the next access. Each output carries an entity tag
+ * that is a digest of its content, so identical output has the same tag however many times it is built.
+ */
+public class OutputCache {
+
+    private final long budget;
+    private final Map<Key, Output<?>> map = new LinkedHashMap<>(16, 0.75f, true);     // Access order
+    private final ReferenceQueue<Dataset> collected = new ReferenceQueue<>();          // Keys with missing data
+    private long size;
+    private long hits, misses;
+
+    /**
+     * Create a cache
+     *
+     * @param budget bytes of output to keep
+     */
+    public OutputCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Find a previously stored output
+     *
+     * @param key the key it was stored with
+     * @return the output, or null if it is not present
+     */
+    public synchronized Output<?> get(Key key) {
+        purge();
+        Output<?> output = map.get(key);
+        if (output == null) misses++;
+        else hits++;
+        return output;
+    }
+
+    /**
+     * Store an output, evicting the least recently used outputs to stay within the budget
+     *
+     * @param key    the key for the inputs that built it
+     * @param output the output
+     */
+    public synchronized void put(Key key, Output<?> output) {
+        purge();
+        Key stored = key.register(collected);
+        if (stored == null) return;                     // Its data has gone, so it could never be found
+        Output<?> previous = map.put(stored, output);
+        if (previous != null) size -= previous.size;
+        size += output.size;
+        Iterator<Output<?>> it = map.values().iterator();
+        while (size > budget && it.hasNext()) {
+            size -= it.next().size;
+            it.remove();
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    /**
+     * The number of outputs held
+     *
+     * @return output count
+     */
+    public synchronized int size() {
+        purge();
+        return map.size();
+    }
+
+    // Must be called holding the lock; removes outputs built from a data set that has been collected
+    private void purge() {
+        Reference<? extends Dataset> ref;
+        while ((ref = collected.poll()) != null) {
+            Output<?> output = map.remove(((DataRef) ref).key);
+            if (output != null) size -= output.size;
+        }
+    }
+
+    /**
+     * Hex SHA-256 digest of some text items. Each item is preceded by its length, so the boundaries between them
+     * are part of the digest; null items are distinguished from empty ones
+     *
+     * @param items the items to digest; these are converted to text with String.valueOf
+     * @return the digest
+     */
+    public static String digest(Object... items) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);         // Every JVM must provide SHA-256
+        }
+        for (Object item : items) {
+            String text = item == null ? "" : String.valueOf(item);
+            md.update(((item == null ? -1 : text.length()) + ":").getBytes(StandardCharsets.UTF_8));
+            md.update(text.getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder b = new StringBuilder();
+        for (byte v : md.digest()) b.append(Character.forDigit((v >> 4) & 0xF, 16)).append(Character.forDigit(v & 0xF, 16));
+        return b.toString();
+    }
+
+    /**
+     * A built output with a tag identifying its content
+     *
+     * @param <T> the type of the output
+     */
+    public static class Output<T> {
+        public final T value;
+        public final String etag;                       // Quoted, as used in the HTTP ETag header
+        private final long size;
+
+        /**
+         * Create an output
+         *
+         * @param value   the output
+         * @param content the output as text; this defines the tag and estimated size
+         */
+        public Output(T value, String content) {
+            this.value = value;
+            this.etag = "\"" + digest(content) + "\"";
+            this.size = 64 + 2L * content.length();
+        }
+
+        /**
+         * Whether a request header shows the client already has this output
+         *
+         * @param ifNoneMatch value of the If-None-Match header (may be null)
+         * @return true if the tag, or "*", is listed
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches the same text inputs built with the same data set instances (not equal ones).
+     * Once any of the data sets has been collected the key matches nothing but itself
+     */
+    public static class Key {
+        private final String digest;
+        private final DataRef[] data;                       // Null where no data set was used
+        private final int hash;
+
+        /**
+         * Create a key
+         *
+         * @param data   the data sets used to build the output (may contain nulls)
+         * @param inputs everything else that defines the output, as in digest()
+         */
+        public Key(Dataset[] data, Object... inputs) {
+            this.digest = digest(inputs);
+            this.data = new DataRef[data.length];
+            int h = digest.hashCode();
+            for (int i = 0; i < data.length; i++) {
+                this.data[i] = data[i] == null ? null : new DataRef(data[i], null, this);
+                h = h * 31 + System.identityHashCode(data[i]);
+            }
+            this.hash = h;
+        }
+
+        private Key(Key base) {
+            this.digest = base.digest;
+            this.data = new DataRef[base.data.length];
+            this.hash = base.hash;
+        }
+
+        /*
+         * A copy whose references are queued when their data set is collected, so the cache can remove it.
+         * Returns null if any of the data sets has already been collected
+         */
+        private Key register(ReferenceQueue<Dataset> queue) {
+            Key copy = new Key(this);
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == null) continue;
+                Dataset d = data[i].get();
+                if (d == null) return null;
+                copy.data[i] = new DataRef(d, queue, copy);
+            }
+            return copy;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            if (!digest.equals(other.digest) || data.length != other.data.length) return false;
+            for (int i = 0; i < data.length; i++) {
+                DataRef a = data[i], b = other.data[i];
+                if (a == null || b == null) {
+                    if (a != b) return false;
+                } else {
+                    Object d = a.get();
+                    if (d == null || d != b.get()) return false;
+                }
+            }
+            return true;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // A weak reference to a data set that knows the key it belongs to
+    private static class DataRef extends WeakReference<Dataset> {
+        private final Key key;
+
+        DataRef(Dataset data, ReferenceQueue<Dataset> queue, Key key) {
+            super(data, queue);
+            this.key = key;
+        }
+    }
+}
@@ -66,19 +66,28 @@ var BrunelD3 = (function () {
     // Create a dataset from rows. Each object has three parts - names, types, rows
     // The types are 'string', 'date' or 'numeric'
     function makeDataset(data) {
-        var col, field, i, opt, fields = [];
-        for (i = 0; i < data.names.length; i++) {
-            col = data.rows.map(function (x) {
-                return x[i]
-            });                               // Extract i'th item
-            field = new BrunelData.Field(data.names[i], null, new BrunelData.values_ColumnProvider(col));
-            opt = data.options ? data.options[i] : "string";                                // Apply type options
-            if (opt == 'numeric') field = BrunelData.Data.toNumeric(field);
-            if (opt == 'date') field = BrunelData.Data.toDate(field);
-            if (opt == 'list') field = BrunelData.Data.toList(field);
-            fields.push(field);
+        var col, field, i, opt, fields = [], result;
+        if (data.data) {
+            result = BrunelData.io_Serialize.deserializeBase64(data.data);               // Serialized binary table
+        } else {
+            for (i = 0; i < data.names.length; i++) {
+                col = data.rows.map(function (x) {
+                    return x[i]
+                });                               // Extract i'th item
+                field = new BrunelData.Field(data.names[i], data.labels ? data.labels[i] : null,
+                    new BrunelData.values_ColumnProvider(col));
+                opt = data.options ? data.options[i] : "string";                            // Apply type options
+                if (opt == 'numeric') field = BrunelData.Data.toNumeric(field);
+                if (opt == 'date') field = BrunelData.Data.toDate(field);
+                if (opt == 'list') field = BrunelData.Data.toList(field);
+                fields.push(field);
+            }
+            result = BrunelData.Dataset.make(fields, false);
         }
-        return BrunelData.Dataset.make(fields, false);
+        // Data built on the server says how it was summarized, which affects formatting
+        if (data.summaries) for (i = 0; i < data.names.length; i++)
+            if (data.summaries[i]) result.field(data.names[i]).set('summary', data.summaries[i]);
+        return result;
     }
 
     // Add a color legend
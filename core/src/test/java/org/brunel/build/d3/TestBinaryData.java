@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.d3;
+
+import org.brunel.action.Action;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataEncoding;
+import org.brunel.build.util.BuilderOptions.DataMethod;
+import org.brunel.data.Dataset;
+import org.brunel.data.io.Serialize;
+import org.brunel.model.VisItem;
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class TestBinaryData {
+
+    private static final String DATA = "data('raw:a,b;x,1;x,2;y,3;y,4;z,5') ";
+
+    @Test
+    public void testOriginalDataIsSerialized() throws Exception {
+        String js = build(DATA + "point x(a) y(b)", DataMethod.columns);
+        assertTrue(js.contains("names: ['a', 'b']"));
+        assertFalse(js.contains("rows: ["));
+
+        Dataset data = table(js);
+        assertEquals(5, data.rowCount());
+        assertEquals("a", data.field("a").label);              // As when rows are read, labels are the names
+        assertTrue(data.field("b").isNumeric());
+        assertEquals(3.0, data.field("b").numProperty("mean"), 1e-9);
+        assertEquals("y", data.field("a").value(2));
+    }
+
+    @Test
+    public void testBuiltDataIsSerialized() throws Exception {
+        String js = build(DATA + "bar x(a) y(b) sum(b)", DataMethod.minimal);
+        assertTrue(js.contains("labels: ['A', 'Sum(B)']"));
+
+        Dataset data = table(js);
+        assertEquals(3, data.rowCount());
+        assertEquals("Sum(B)", data.field("b").label);
+        assertEquals(7.0, data.field("b").max(), 1e-9);
+    }
+
+    @Test
+    public void testRowsAreTheDefault() throws Exception {
+        VisItem item = Action.parse(DATA + "point x(a) y(b)").apply();
+        D3Builder builder = D3Builder.make(new BuilderOptions());
+        builder.build(item, 400, 300);
+        assertTrue(builder.getVisualization().contains("rows: [['x', 1], ['x', 2], ['y', 3], ['y', 4], ['z', 5]]"));
+    }
+
+    private Dataset table(String js) {
+        Matcher matcher = Pattern.compile(" data: '([A-Za-z0-9+/=]*)'").matcher(js);
+        assertTrue(matcher.find());
+        return (Dataset) Serialize.deserializeBase64(matcher.group(1));
+    }
+
+    private String build(String command, DataMethod method) throws Exception {
+        VisItem item = Action.parse(command).apply();
+        BuilderOptions options = new BuilderOptions();
+        options.includeData = method;
+        options.dataEncoding = DataEncoding.binary;
+        D3Builder builder = D3Builder.make(options);
+        builder.build(item, 400, 300);
+        return builder.getVisualization();
+    }
+}
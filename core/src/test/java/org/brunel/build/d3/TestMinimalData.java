@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.d3;
+
+import org.brunel.action.Action;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataMethod;
+import org.brunel.model.VisItem;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Tests for sending the data built on the server, rather than the original rows
+ */
+public class TestMinimalData {
+
+    private static final String DATA = "data('raw:a,b;x,1;x,2;y,3;y,4;z,5') ";
+
+    @Test
+    public void testSummarizedDataIsSent() throws Exception {
+        String js = build(DATA + "bar x(a) y(b) sum(b)");
+
+        // Only the three summarized rows are sent, and the browser does not summarize again
+        assertTrue(js.contains("names: ['a', 'b']"));
+        assertTrue(js.contains("labels: ['A', 'Sum(B)']"));
+        assertTrue(js.contains("rows: [['x', 3], ['y', 7], ['z', 5]]"));
+        assertFalse(js.contains(".summarize("));
+        assertFalse(js.contains("original.retainRows(filterRows)"));
+    }
+
+    @Test
+    public void testSummariesAreSent() throws Exception {
+        // The browser needs to know a field is a percentage to format it
+        String js = build(DATA + "bar x(a) y(b) percent(b)");
+        assertTrue(js.contains("summaries: [null, 'percent']"));
+        assertFalse(build(DATA + "bar x(a) y(b)").contains("summaries:"));
+    }
+
+    @Test
+    public void testCountIsSent() throws Exception {
+        String js = build(DATA + "bar x(a) y(#count)");
+        assertTrue(js.contains("names: ['a', '#count']"));
+        assertTrue(js.contains("rows: [['x', 2], ['y', 2], ['z', 1]]"));
+    }
+
+    @Test
+    public void testSelectionUsesOriginalRows() throws Exception {
+        String js = build(DATA + "bar x(a) y(b) sum(b) interaction(select)");
+        assertTrue(js.contains("rows: [['x', 1], ['x', 2], ['y', 3], ['y', 4], ['z', 5]]"));
+        assertTrue(js.contains(".summarize("));
+    }
+
+    @Test
+    public void testBinnedDataUsesOriginalRows() throws Exception {
+        String js = build(DATA + "bar x(b) bin(b) y(#count)");
+        assertTrue(js.contains(".transform("));
+    }
+
+    @Test
+    public void testEachElementHasItsTable() throws Exception {
+        String js = build(DATA + "bar x(a) y(b) sum(b) + line x(a) y(b) mean(b)");
+        assertTrue(js.contains("var table1 ="));
+        assertTrue(js.contains("var table2 ="));
+        assertTrue(js.contains("v.build(table1, table2)"));
+        assertTrue(js.contains("original = datasets[1]"));
+    }
+
+    private String build(String command) throws Exception {
+        VisItem item = Action.parse(command).apply();
+        BuilderOptions options = new BuilderOptions();
+        options.includeData = DataMethod.minimal;
+        D3Builder builder = D3Builder.make(options);
+        builder.build(item, 400, 300);
+        return builder.getVisualization();
+    }
+}
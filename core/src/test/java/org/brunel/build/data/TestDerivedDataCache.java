@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+
+/**
+ * Tests the reuse of derived data
+ */
+public class TestDerivedDataCache {
+
+    private static final String CSV_TEXT = "a,b,c\nx,1,3\ny,2,4\nx,5,6\nz,3,1";
+
+    @Test
+    public void testStagesAreReused() {
+        DerivedDataCache cache = new DerivedDataCache(Long.MAX_VALUE);
+        Dataset data = Dataset.make(CSV.read(CSV_TEXT));
+
+        Dataset summarized = cache.derive(data, "summarize", "b=b:sum; a=a");
+        Dataset sorted = cache.derive(summarized, "sort", "b:descending");
+        assertEquals(2, cache.misses());
+
+        // The same stages again are found; a different sort reuses the summary
+        assertSame(summarized, cache.derive(data, "summarize", "b=b:sum; a=a"));
+        assertSame(sorted, cache.derive(summarized, "sort", "b:descending"));
+        assertNotSame(sorted, cache.derive(summarized, "sort", "b:ascending"));
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+
+        // An equal data set that is a different instance is not matched
+        Dataset other = Dataset.make(CSV.read(CSV_TEXT));
+        assertNotSame(summarized, cache.derive(other, "summarize", "b=b:sum; a=a"));
+    }
+
+    @Test
+    public void testBudget() {
+        Dataset data = Dataset.make(CSV.read(CSV_TEXT));
+        Dataset filtered = data.filter("b in 1, 3");
+        DerivedDataCache cache = new DerivedDataCache(filtered.expectedSize());
+
+        Dataset a = cache.derive(data, "filter", "b in 1, 3");
+        cache.derive(data, "filter", "b in 1, 4");          // The first result is evicted to make room
+        assertNotSame(a, cache.derive(data, "filter", "b in 1, 3"));
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    public void testCollectedInputsAreDropped() throws Exception {
+        DerivedDataCache cache = new DerivedDataCache(Long.MAX_VALUE);
+        cache.derive(Dataset.make(CSV.read(CSV_TEXT)), "filter", "b in 1, 3");
+        assertEquals(1, cache.size());
+
+        // The input is no longer referenced, so once it is collected its result goes
+        for (int i = 0; i < 100 && cache.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCachedFieldsAreNotChanged() {
+        DerivedDataCache cache = new DerivedDataCache(Long.MAX_VALUE);
+        Dataset data = Dataset.make(CSV.read(CSV_TEXT));
+        assertSame(data, cache.derive(data, "filter", ""));         // Nothing to do gives the input back
+
+        // Building on a result, or changing a copy of it, leaves the cached fields as they were
+        Dataset summarized = cache.derive(data, "summarize", "b=b:sum; a=a");
+        Field b = summarized.field("b");
+        cache.derive(summarized, "sort", "b:descending");
+        Dataset copy = DerivedDataCache.copy(summarized);
+        assertNotSame(b, copy.field("b"));
+        copy.field("b").set("mark", true);
+        assertEquals(b.value(0), copy.field("b").value(0));
+        assertNull(b.property("mark"));
+        assertSame(b, cache.derive(data, "summarize", "b=b:sum; a=a").field("b"));
+    }
+
+    @Test
+    public void testCopiesShareData() {
+        DerivedDataCache cache = new DerivedDataCache(Long.MAX_VALUE);
+        Dataset data = Dataset.make(CSV.read(CSV_TEXT));
+
+        // Each build copies the cached result, but its rows are copied and its statistics calculated only once
+        Dataset first = DerivedDataCache.copy(cache.derive(data, "filter", "b in 1, 3"));
+        Dataset second = DerivedDataCache.copy(cache.derive(data, "filter", "b in 1, 3"));
+        assertEquals(1, cache.hits());
+        assertSame(first.field("a").dictionary(), second.field("a").dictionary());
+        assertSame(first.field("a").categories(), second.field("a").categories());
+        assertEquals("x, y, z", Data.join(second.field("a").categories()));
+
+        // A copy that has been changed calculates its own
+        Field c = DerivedDataCache.copy(cache.derive(data, "filter", "b in 1, 3")).field("c");
+        c.set("mark", true);
+        assertNotSame(first.field("c").categories(), c.categories());
+        assertEquals(Data.join(first.field("c").categories()), Data.join(c.categories()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStage() {
+        new DerivedDataCache(100).derive(Dataset.make(CSV.read(CSV_TEXT)), "explode", "a");
+    }
+}
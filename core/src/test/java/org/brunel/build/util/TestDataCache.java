@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+/**
+ * Tests for concurrent loading through the data cache
+ */
+public class TestDataCache {
+
+    @Test
+    public void testConcurrentLoads() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+
+        // A server whose content is not sent until we release it
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                byte[] content = "a,b\n1,2\n3,4".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+                exchange.close();
+            }
+        });
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // This load blocks until we release it
+            Future<Dataset> first = executor.submit(load(url, null));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // A different key loads while the first is still blocked
+            Dataset other = executor.submit(load("test:other", stream("x\n1"))).get(10, TimeUnit.SECONDS);
+            assertEquals(1, other.rowCount());
+
+            // The same key waits for the first load rather than starting another
+            Future<Dataset> second = executor.submit(load(url, null));
+            Thread.sleep(100);
+            assertFalse(second.isDone());
+
+            // ... unless it has its own stream, which is read rather than ignored
+            Dataset own = executor.submit(load(url, stream("a,b\n5,6"))).get(10, TimeUnit.SECONDS);
+            assertEquals(1, own.rowCount());
+            assertFalse(second.isDone());
+
+            release.countDown();
+            Dataset a = first.get(10, TimeUnit.SECONDS);
+            assertEquals(2, a.rowCount());
+            assertSame(a, second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, requests.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testFailedLoadIsNotShared() throws Exception {
+        try {
+            DataCache.get("test:failing", new InputStream() {
+                public int read() throws IOException {
+                    throw new IOException("broken");
+                }
+            });
+            fail("Expected an error");
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertEquals(1, DataCache.get("test:failing", stream("a\n1")).rowCount());
+    }
+
+    @Test
+    public void testPeekDoesNotLoad() throws Exception {
+        assertNull(DataCache.peek("test:peek"));
+        assertNull(DataCache.peek("test:peek"));
+        Dataset data = DataCache.get("test:peek", stream("a\n1"));
+        assertSame(data, DataCache.peek("test:peek"));
+    }
+
+    private static Callable<Dataset> load(final String key, final InputStream is) {
+        return new Callable<Dataset>() {
+            public Dataset call() throws Exception {
+                return DataCache.get(key, is);
+            }
+        };
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
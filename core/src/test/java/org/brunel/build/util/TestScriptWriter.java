@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+
+/**
+ * Tests for writing script text
+ */
+public class TestScriptWriter {
+
+    @Test
+    public void testColumnTracking() {
+        BuilderOptions options = new BuilderOptions();
+        options.readableJavascript = false;
+        ScriptWriter out = new ScriptWriter(options);
+        assertEquals(0, out.currentColumn());
+        out.add("var", "a", "= 1");
+        assertEquals(9, out.currentColumn());
+        out.endStatement();
+        assertEquals(0, out.currentColumn());
+        out.add(new StringBuilder("[1, 2]")).add(",", 3.5);
+        assertEquals(11, out.currentColumn());          // "[1, 2], 3.5"
+        out.continueOnNextLine("x");
+        assertEquals(0, out.currentColumn());
+    }
+
+    @Test
+    public void testWriterSink() {
+        BuilderOptions options = new BuilderOptions();
+        options.readableJavascript = false;
+        StringWriter sink = new StringWriter();
+        ScriptWriter out = new ScriptWriter(options, sink);
+        out.add("f(", 1, ")").endStatement();
+        assertNull(out.content());
+        assertEquals("f( 1);" + System.lineSeparator(), sink.toString());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+
+/**
+ * Tests for the memory and disk tiers of the cache
+ */
+public class TestTieredCache {
+
+    @Test
+    public void testMemoryHits() {
+        TieredCache cache = new TieredCache(Long.MAX_VALUE, 0);
+        Dataset a = make(1);
+        cache.store("a", a);
+        assertSame(a, cache.retrieve("a"));
+        assertNull(cache.retrieve("b"));
+        assertEquals(1, cache.memoryHits());
+        assertEquals(1, cache.misses());
+        assertEquals(a.expectedSize(), cache.memoryUse());
+    }
+
+    @Test
+    public void testSpillAndPromote() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        Dataset a = make(1), b = make(2), c = make(3);
+        TieredCache cache = new TieredCache(a.expectedSize() + b.expectedSize(), Long.MAX_VALUE, dir);
+        cache.store("a", a);
+        cache.store("b", b);
+        cache.retrieve("a");                                // So b is now the least recently used
+        cache.store("c", c);
+        assertEquals(1, cache.memoryEvictions());
+        assertEquals(1, dataFiles(dir));
+
+        // b comes back from disk with the same content
+        Dataset back = cache.retrieve("b");
+        assertEquals(dump(b), dump(back));
+        assertEquals(1, cache.diskHits());
+        assertSame(back, cache.retrieve("b"));
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testMemoryUseAfterPromote() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        Dataset a = make(1), b = make(2);
+        TieredCache cache = new TieredCache(a.expectedSize(), Long.MAX_VALUE, dir);
+        cache.store("a", a);
+        cache.store("b", b);                                // a goes to disk
+        assertEquals(dump(a), dump(cache.retrieve("a")));   // and comes back, sending b to disk
+        assertEquals(dump(b), dump(cache.retrieve("b")));
+
+        // Each entry is removed with the size it was added with, so nothing is left over
+        cache.store("a", a);
+        cache.store("b", b);
+        assertEquals(b.expectedSize(), cache.memoryUse());
+        cache.deleteFiles();
+        dir.delete();
+    }
+
+    @Test
+    public void testReplaceRemovesFile() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        TieredCache cache = new TieredCache(1, Long.MAX_VALUE, dir);
+        cache.store("a", make(1));
+        cache.store("b", make(2));                          // a is written to disk
+        Dataset replacement = make(3);
+        cache.store("a", replacement);                      // a's file is deleted; b is written to disk
+        assertEquals(1, dataFiles(dir));
+        assertSame(replacement, cache.retrieve("a"));
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testUploadedDataSurvivesEviction() throws Exception {
+        // Uploaded data has no URL to read it again from, so it must come back from disk
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        Dataset a = Dataset.make(CSV.read("x,y\n1,a\n2,a b\n3,c"));
+        TieredCache cache = new TieredCache(1, Long.MAX_VALUE, dir);
+        cache.store("upload", a);
+        cache.store("other", make(5));
+        assertEquals(dump(a), dump(cache.retrieve("upload")));
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        Dataset a = make(1), b = make(2), c = make(3);
+        TieredCache cache = new TieredCache(a.expectedSize(), Long.MAX_VALUE, dir);
+        cache.store("a", a);
+        cache.store("b", b);                                // a is written to disk
+        cache.store("c", c);                                // and then b
+        assertEquals(2, dataFiles(dir));
+
+        // A new cache on the same directory starts with what was on disk, but not what was only in memory
+        TieredCache restarted = new TieredCache(Long.MAX_VALUE, Long.MAX_VALUE, dir);
+        assertEquals(cache.diskUse(), restarted.diskUse());
+        assertEquals(dump(a), dump(restarted.retrieve("a")));
+        assertEquals(dump(b), dump(restarted.retrieve("b")));
+        assertNull(restarted.retrieve("c"));
+        assertEquals(2, restarted.diskHits());
+
+        // New files do not overwrite the ones already there, and a smaller budget drops the oldest
+        restarted.store("d", make(4));
+        restarted.store("a", make(5));                      // a's file is deleted
+        TieredCache smaller = new TieredCache(Long.MAX_VALUE, 1, dir);
+        assertEquals(0, smaller.diskUse());
+        assertEquals(1, smaller.diskEvictions());
+        assertEquals(0, dataFiles(dir));
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testDiskBudget() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        TieredCache cache = new TieredCache(1, 1, dir);
+        cache.store("a", make(1));
+        cache.store("b", make(2));
+        cache.store("c", make(3));
+        assertEquals(2, cache.memoryEvictions());
+        assertEquals(2, cache.diskEvictions());
+        assertEquals(0, cache.diskUse());
+        assertNull(cache.retrieve("a"));
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    @Test
+    public void testDeleteFiles() throws Exception {
+        File dir = Files.createTempDirectory("brunel-test").toFile();
+        TieredCache cache = new TieredCache(1, Long.MAX_VALUE, dir);
+        cache.store("a", make(1));
+        cache.store("b", make(2));
+        assertEquals(1, dataFiles(dir));
+        cache.deleteFiles();
+        assertEquals(0, dir.listFiles().length);            // A directory we were given is kept
+        assertEquals(0, cache.diskUse());
+        assertNull(cache.retrieve("a"));
+        dir.delete();
+    }
+
+    private static Dataset make(int seed) {
+        Object[] values = new Object[100];
+        Object[] names = new Object[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (double) (i * seed);
+            names[i] = "n" + (i % 7);
+        }
+        Field a = Fields.makeColumnField("a", "A", values);
+        a.setNumeric();
+        return Dataset.make(new Field[]{a, Fields.makeColumnField("b", "B", names)}, false);
+    }
+
+    // Counts the files holding data, leaving out the index
+    private static int dataFiles(File dir) {
+        int n = 0;
+        for (File f : dir.listFiles()) if (!f.getName().startsWith("cache.index")) n++;
+        return n;
+    }
+
+    private static String dump(Dataset d) {
+        StringBuilder b = new StringBuilder();
+        for (int r = 0; r < d.rowCount(); r++)
+            for (Field f : d.fields) b.append(f.valueFormatted(r)).append('|');
+        return b.toString();
+    }
+}
@@ -18,8 +18,12 @@ package org.brunel.util;
 
 import static org.junit.Assert.*;
 
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
 import org.junit.Test;
 
+import java.util.Date;
+
 public class D3IntegrationTest {
 
 	private static final String csv = "A,B,C\n1,2,3\n3,4,5";
@@ -32,6 +36,87 @@ public class D3IntegrationTest {
 		assertNotNull(json);
 	}
 	
+	@Test
+	public void testColumns() {
+		String[] names = {"Sales Total", "When", "Region"};
+		String[] types = {"numeric", "date", "string"};
+		Object[] columns = {new double[]{1.5, Double.NaN, 4}, new long[]{86400000L, Long.MIN_VALUE, 0},
+				new String[]{"East", "West"}};
+		Object[] codes = {null, null, new int[]{1, 0, -1}};
+
+		Dataset data = D3Integration.makeDataset(names, types, columns, codes);
+		assertEquals(3, data.rowCount());
+
+		Field sales = data.field("Sales_Total");
+		assertEquals("Sales Total", sales.label);
+		assertTrue(sales.isNumeric());
+		assertEquals(2, sales.valid());
+		assertEquals(4.0, sales.max(), 1e-9);
+
+		Field when = data.field("When");
+		assertTrue(when.isDate());
+		assertEquals(new Date(86400000L), when.value(0));
+		assertNull(when.value(1));
+
+		Field region = data.field("Region");
+		assertFalse(region.isNumeric());
+		assertEquals("West", region.value(0));
+		assertEquals("East", region.value(1));
+		assertNull(region.value(2));
+
+		String json = D3Integration.createBrunelJSONFromColumns(names, types, columns, codes,
+				"bar x(Region) y(Sales_Total)", 100, 100, "visid", null);
+		assertTrue(json.contains("visid"));
+
+		// The arrays are not changed, so they can be used again
+		Field again = D3Integration.makeDataset(names, types, columns, codes).field("When");
+		assertEquals(2, again.valid());
+		assertNull(again.value(1));
+		assertEquals(Long.MIN_VALUE, ((long[]) columns[1])[1]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownColumnType() {
+		D3Integration.makeDataset(new String[]{"a"}, new String[]{"complex"}, new Object[]{new double[1]}, new Object[1]);
+	}
+
+	@Test
+	public void testCachedResult() {
+		D3Integration.cacheData("cachedOutput", csv);
+		String action = "data('cachedOutput') x(A) y(B)";
+		OutputCache.Output<BrunelD3Result> a = D3Integration.createCachedResult(null, action, 100, 100, D3Integration.makeOptions("visid", null));
+		OutputCache.Output<BrunelD3Result> b = D3Integration.createCachedResult(null, action, 100, 100, D3Integration.makeOptions("visid", null));
+		assertSame(a, b);
+		assertTrue(a.matches(a.etag));
+
+		// Other options give different output
+		OutputCache.Output<BrunelD3Result> c = D3Integration.createCachedResult(null, action, 100, 100, D3Integration.makeOptions("other", null));
+		assertNotSame(a, c);
+		assertNotEquals(a.etag, c.etag);
+
+		// New data under the same key is built again; identical data gives an identical tag
+		D3Integration.cacheData("cachedOutput", csv);
+		OutputCache.Output<BrunelD3Result> d = D3Integration.createCachedResult(null, action, 100, 100, D3Integration.makeOptions("visid", null));
+		assertNotSame(a, d);
+		assertEquals(a.etag, d.etag);
+		D3Integration.cacheData("cachedOutput", "A,B,C\n1,2,3\n3,7,5");
+		assertNotEquals(a.etag, D3Integration.createCachedResult(null, action, 100, 100, D3Integration.makeOptions("visid", null)).etag);
+
+		// Raw data is defined by the Brunel text, so it is not needed in the cache
+		String raw = "data('raw:A,B;1,2;3,4') x(A) y(B)";
+		OutputCache.Output<BrunelD3Result> e = D3Integration.createCachedResult(null, raw, 100, 100, D3Integration.makeOptions("visid", null));
+		assertSame(e, D3Integration.createCachedResult(null, raw, 100, 100, D3Integration.makeOptions("visid", null)));
+	}
+
+	@Test
+	public void testCachedHtml() {
+		Dataset data = Dataset.make(org.brunel.data.io.CSV.read(csv));
+		OutputCache.Output<String> a = D3Integration.createCachedHtml(data, "x(A) y(B)", 100, 100, D3Integration.makeOptions("visualization", "controls"), "", "title", "");
+		assertSame(a, D3Integration.createCachedHtml(data, "x(A) y(B)", 100, 100, D3Integration.makeOptions("visualization", "controls"), "", "title", ""));
+		assertNotSame(a, D3Integration.createCachedHtml(data, "x(A) y(B)", 100, 100, D3Integration.makeOptions("visualization", "controls"), "", "other", ""));
+		assertTrue(a.value.contains("<html"));
+	}
+
 	@Test
 	public void testDatanames() {
 		String brunel = "data('a') x(x) | data('b') x(x) y(y) + data('c') bubble | data('a') bar";
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCacheTest {
+
+    private final Dataset data = Dataset.make(CSV.read("a,b\nx,1\ny,2"));
+
+    @Test
+    public void testKeys() {
+        OutputCache cache = new OutputCache(Long.MAX_VALUE);
+        OutputCache.Output<String> output = new OutputCache.Output<>("js", "js");
+        cache.put(new OutputCache.Key(new Dataset[]{data}, "bar", 100), output);
+
+        assertSame(output, cache.get(new OutputCache.Key(new Dataset[]{data}, "bar", 100)));
+        assertNull(cache.get(new OutputCache.Key(new Dataset[]{data}, "bar", 200)));
+        assertNull(cache.get(new OutputCache.Key(new Dataset[]{null}, "bar", 100)));
+
+        // An equal data set that is a different instance is not matched
+        Dataset other = Dataset.make(CSV.read("a,b\nx,1\ny,2"));
+        assertNull(cache.get(new OutputCache.Key(new Dataset[]{other}, "bar", 100)));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testCollectedDataIsDropped() throws Exception {
+        OutputCache cache = new OutputCache(Long.MAX_VALUE);
+        cache.put(new OutputCache.Key(new Dataset[]{Dataset.make(CSV.read("a\n1"))}, "bar"), new OutputCache.Output<>("js", "js"));
+        cache.put(new OutputCache.Key(new Dataset[]{data}, "bar"), new OutputCache.Output<>("js", "js"));
+        assertEquals(2, cache.size());
+
+        // The first data set is no longer referenced, so once it is collected its output goes
+        for (int i = 0; i < 100 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDigestBoundaries() {
+        assertNotEquals(OutputCache.digest("ab", "c"), OutputCache.digest("a", "bc"));
+        assertNotEquals(OutputCache.digest((Object) null), OutputCache.digest(""));
+        assertEquals(64, OutputCache.digest("a").length());
+    }
+
+    @Test
+    public void testBudget() {
+        OutputCache.Output<String> a = new OutputCache.Output<>("a", "aaaa");
+        OutputCache.Output<String> b = new OutputCache.Output<>("b", "bbbb");
+        OutputCache cache = new OutputCache(100);           // Room for one of them
+        cache.put(new OutputCache.Key(new Dataset[0], "a"), a);
+        cache.put(new OutputCache.Key(new Dataset[0], "b"), b);
+        assertNull(cache.get(new OutputCache.Key(new Dataset[0], "a")));
+        assertSame(b, cache.get(new OutputCache.Key(new Dataset[0], "b")));
+    }
+
+    @Test
+    public void testEntityTags() {
+        OutputCache.Output<String> a = new OutputCache.Output<>("a", "content");
+        assertEquals(a.etag, new OutputCache.Output<>("b", "content").etag);
+        assertTrue(a.etag.startsWith("\"") && a.etag.endsWith("\""));
+        assertTrue(a.matches(a.etag));
+        assertTrue(a.matches("\"other\", W/" + a.etag));
+        assertTrue(a.matches("*"));
+        assertFalse(a.matches("\"other\""));
+        assertFalse(a.matches(null));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.util;
+
+import org.brunel.data.values.ColumnProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.Provider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares MapInt with the HashMap it replaced, for counting values and for looking up category order.
+ * The HashMap methods do exactly what MapInt used to do. Run with 'gradle jmh'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapIntBenchmark {
+
+    private static final int ROWS = 1000000;
+
+    @Param({"10", "1000", "100000"})
+    public int distinct;
+
+    private Object[] column;                        // Categories, sharing the same string instances
+    private Object[] categories;
+    private Provider objects;
+    private DictionaryProvider dictionary;
+    private MapInt categoryOrder;
+    private Map<Object, Integer> categoryMap;
+
+    @Setup
+    public void setUp() {
+        categories = new Object[distinct];
+        for (int i = 0; i < distinct; i++) categories[i] = "category " + i;
+        Random random = new Random(42);
+        column = new Object[ROWS];
+        for (int i = 0; i < ROWS; i++) column[i] = categories[random.nextInt(distinct)];
+
+        objects = new ColumnProvider(column);
+        dictionary = DictionaryProvider.make(column, distinct);
+        categoryOrder = new MapInt().index(categories);
+        categoryMap = new HashMap<>();
+        for (Object o : categories) if (!categoryMap.containsKey(o)) categoryMap.put(o, categoryMap.size());
+    }
+
+    @Benchmark
+    public int countHashMap() {
+        Map<Object, Integer> map = new HashMap<>();
+        for (Object o : column) {
+            Integer v = map.get(o);
+            map.put(o, v == null ? 1 : v + 1);
+        }
+        return map.size();
+    }
+
+    @Benchmark
+    public int countMapInt() {
+        MapInt map = new MapInt();
+        for (Object o : column) map.increment(o);
+        return map.size();
+    }
+
+    @Benchmark
+    public int countAllColumn() {
+        return new MapInt().countAll(objects).size();
+    }
+
+    @Benchmark
+    public int countAllDictionary() {
+        return new MapInt().countAll(dictionary).size();
+    }
+
+    @Benchmark
+    public long orderHashMap() {
+        long total = 0;
+        for (Object o : column) {
+            Integer v = categoryMap.get(o);
+            total += v == null ? 0 : v;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long orderMapInt() {
+        long total = 0;
+        for (Object o : column) total += categoryOrder.get(o);
+        return total;
+    }
+}
@@ -16,12 +16,14 @@
 
 package org.brunel.data;
 
+import org.brunel.data.util.DateParser;
 import org.brunel.data.util.Dates;
 import org.brunel.data.util.ItemsList;
+import org.brunel.data.util.NumericFormats;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.DateColumnProvider;
 import org.brunel.translator.JSTranslation;
 
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -33,37 +35,7 @@ import java.util.Map;
 
 public class Data {
 
-    @JSTranslation(ignore = true)
     public static final double MILLIS_PER_DAY = 86400000.0;
-    @JSTranslation(ignore = true)
-    private static final DecimalFormat bigIntegerFormat = new DecimalFormat("0,000");
-    @JSTranslation(ignore = true)
-    private static final DecimalFormat integerFormat = new DecimalFormat("0");
-    @JSTranslation(ignore = true)
-    private static final DecimalFormat[] numericFormatGrouped = new DecimalFormat[]{
-            new DecimalFormat("#,###"),
-            new DecimalFormat("#,###.#"),
-            new DecimalFormat("#,###.##"),
-            new DecimalFormat("#,###.###"),
-            new DecimalFormat("#,###.####"),
-            new DecimalFormat("#,###.#####"),
-            new DecimalFormat("#,###.######"),
-            new DecimalFormat("#,###.#######"),
-    };
-    @JSTranslation(ignore = true)
-    private static final DecimalFormat[] numericFormat = new DecimalFormat[]{
-            new DecimalFormat("#"),
-            new DecimalFormat("#.#"),
-            new DecimalFormat("#.##"),
-            new DecimalFormat("#.###"),
-            new DecimalFormat("#.####"),
-            new DecimalFormat("#.#####"),
-            new DecimalFormat("#.######"),
-            new DecimalFormat("#.#######"),
-    };
-    @JSTranslation(ignore = true)
-    private static final DecimalFormat scientificFormat = new DecimalFormat("0.0##E0");
-
     public static int indexOf(double v, Double[] d) {
         // Find the index of the highest value less than or equal to 'v' in the sorted array 'd'
         // We use binary search and return -1 if the lowest value is still too high
@@ -115,13 +87,14 @@ public class Data {
     })
     public static String formatNumeric(double d, boolean useGrouping) {
         if (d == 0) return "0";
+        NumericFormats f = NumericFormats.get();
         if (Math.abs(d) <= 1e-6 || Math.abs(d) >= 1e8)
-            return scientificFormat.format(d).replace('E', 'e');
+            return f.scientificFormat.format(d).replace('E', 'e');
         else if (Math.abs((d - Math.round(d)) / d) < 1e-9)
-            return Math.abs(d) >= 1e4 && useGrouping ? bigIntegerFormat.format(d) : integerFormat.format(d);
+            return Math.abs(d) >= 1e4 && useGrouping ? f.bigIntegerFormat.format(d) : f.integerFormat.format(d);
         else {
             int place = 7 - Math.min(7, Math.max(0, (int) Math.floor(Math.log10(d))));
-            return (useGrouping ? numericFormatGrouped : numericFormat)[place].format(d);
+            return (useGrouping ? f.numericFormatGrouped : f.numericFormat)[place].format(d);
         }
     }
 
@@ -216,36 +189,48 @@ public class Data {
 
     public static Field toDate(Field f, String method) {
         if (f.isDate()) return f;
-        Date[] data = new Date[f.rowCount()];
-        boolean changed = false;
-        for (int i = 0; i < data.length; i++) {
-            Object o = f.value(i);
-            if ("year".equals(method)) {
-                // Must be numeric and is equal to years
-                Double v = asNumeric(o);
-                if (v != null) data[i] = asDate(Data.format(v, false) + "-01-01");
-            } else if ("excel".equals(method)) {
-                // Must be numeric and is equal to the number of days since 1900.
-                // We use the number of days since 1970, so we need to subtract the difference
-                Double v = asNumeric(o);
-                if (v != null) data[i] = asDate(v - 24107);
-            } else
-                data[i] = asDate(o);
-            if (!changed) changed = Data.compare(o, data[i]) != 0;
+        Field result;
+        if ("year".equals(method) || "excel".equals(method)) {
+            Date[] data = new Date[f.rowCount()];
+            for (int i = 0; i < data.length; i++) {
+                Double v = asNumeric(f.value(i));
+                if (v == null) continue;
+                if ("year".equals(method)) {
+                    // Must be numeric and is equal to years
+                    data[i] = asDate(Data.format(v, false) + "-01-01");
+                } else {
+                    // Must be numeric and is equal to the number of days since 1900.
+                    // We use the number of days since 1970, so we need to subtract the difference
+                    data[i] = asDate(v - 24107);
+                }
+            }
+            result = Fields.makeColumnField(f.name, f.label, data);
+        } else {
+            result = parseDates(f);
         }
-        Field result = Fields.makeColumnField(f.name, f.label, data);
         result.set("date", true);
         result.setNumeric();
         return result;
     }
 
+    // In Java one date format is chosen for the whole column, and the dates are stored as times
+    @JSTranslation(js = {
+            "var data = $.Array(f.rowCount(), null);",
+            "for (var i = 0; i < data.length; i++) data[i] = $$CLASS$$.asDate(f.value(i));",
+            "return V.Fields.makeColumnField(f.name, f.label, data);"
+    })
+    private static Field parseDates(Field f) {
+        long[] times = DateParser.forColumn(f).parseColumn(f);
+        return new Field(f.name, f.label, DateColumnProvider.fromTimes(times, DateParser.MISSING));
+    }
+
     // JavaScript date parsing uses LOCAL time zone for non ISO-8601 dates,
     // But UTC for ISO-6801 dates, so we need to undo that by detecting the ISO format 'T'
     @JSTranslation(js = {
             "if (c==null) return null;",
             "if (c.getTime) return c;",
             "if (typeof c == 'string') {d = $.parseDate(c); return d == null || isNaN(d.getTime()) ? null : d };",
-            "if (!isNaN(c)) return new Date(c*86400000);",
+            "if (!isNaN(c)) return new Date(Math.round(c*86400000));",
             "return null;"
     })
     public static Date asDate(Object c) {
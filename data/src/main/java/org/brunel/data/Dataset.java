@@ -30,6 +30,7 @@ import org.brunel.data.modify.Transform;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
+import org.brunel.data.values.RowSelection;
 import org.brunel.translator.JSTranslation;
 
 import java.io.ByteArrayOutputStream;
@@ -54,22 +55,26 @@ public class Dataset extends Informative implements Serializable {
 
     /*
    * Make a data set from raw fields; we will add a "#count" and "#row" field.
-   * By default we will automatically convert fields to their best unit
+   * By default we will automatically convert fields to their best unit.
+   * A "#count" field passed in (as when the data has already been summarized) is kept instead
    */
     public static Dataset make(Field[] fields, Boolean autoConvert) {
         fields = ensureUniqueNames(fields);
-        Field[] augmented = new Field[fields.length + 3];
-        for (int i = 0; i < fields.length; i++)
-            augmented[i] = Boolean.FALSE.equals(autoConvert) ? fields[i] : Auto.convert(fields[i]);
+        List<Field> augmented = new ArrayList<>();
+        boolean hasCount = false;
+        for (Field f : fields) {
+            augmented.add(Boolean.FALSE.equals(autoConvert) ? f : Auto.convert(f));
+            if (f.name.equals("#count")) hasCount = true;
+        }
         int len = fields.length == 0 ? 0 : fields[0].rowCount();
-        augmented[fields.length] = Fields.makeConstantField("#count", "Count", 1.0, len);
-        augmented[fields.length + 1] = Fields.makeIndexingField("#row", "Row", len);
+        if (!hasCount) augmented.add(Fields.makeConstantField("#count", "Count", 1.0, len));
+        augmented.add(Fields.makeIndexingField("#row", "Row", len));
 
         // The selection data
         Field selection = Fields.makeConstantField("#selection", "Selection", "\u2717", len);
 
-        augmented[fields.length + 2] = selection;
-        return new Dataset(augmented);
+        augmented.add(selection);
+        return new Dataset(augmented.toArray(new Field[augmented.size()]));
     }
 
     private static Field[] ensureUniqueNames(Field[] fields) {
@@ -103,9 +108,10 @@ public class Dataset extends Informative implements Serializable {
     }
 
     public Dataset retainRows(int[] keep) {
+        RowSelection selection = new RowSelection(keep);
         Field[] results = new Field[fields.length];
         for (int i = 0; i < results.length; i++)
-            results[i] = Fields.permute(fields[i], keep, false);
+            results[i] = Fields.select(fields[i], selection, false);
         return replaceFields(results);
     }
 
@@ -24,7 +24,10 @@ import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.MapInt;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.PrimitiveColumnProvider;
 import org.brunel.data.values.Provider;
+import org.brunel.data.values.SelectionProvider;
 
 public class Field extends Informative implements Comparable<Field> {
 
@@ -36,6 +39,7 @@ public class Field extends Informative implements Comparable<Field> {
     Provider provider;                          // Provides values for the field (not final as it may need conversion)
 
     private boolean calculatedNominal, calculatedNumeric, calculatedDate;   // True when we calculate these
+    private boolean calculatedQuantiles, calculatedGranularity;             // (numeric stats that need ordering)
     private MapInt categoryOrder;                                           // order of the categories
 
     public Field(String name, String label, Provider provider) {
@@ -53,6 +57,8 @@ public class Field extends Informative implements Comparable<Field> {
                 // Ensure that the base field has everything calculated because we cannot calculate lazily later
                 base.makeNominalStats();
                 base.makeNumericStats();
+                base.makeQuantileStats();
+                base.makeGranularityStats();
                 base.makeDateStats();
             }
             copyAllProperties(base);
@@ -70,7 +76,7 @@ public class Field extends Informative implements Comparable<Field> {
      */
     public void setValue(Object o, int index) {
         // We may have to convert a provider from a constant provider
-        provider = provider.setValue(o, index);
+        provider = resolved().setValue(o, index);
     }
 
     public int compareRows(int a, int b) {
@@ -79,7 +85,7 @@ public class Field extends Informative implements Comparable<Field> {
             categoryOrder = new MapInt();
             if (preferCategorical())  categoryOrder.index(categories());
         }
-        return provider.compareRows(a, b, categoryOrder);
+        return resolved().compareRows(a, b, categoryOrder);
     }
 
     public long expectedSize() {
@@ -89,19 +95,27 @@ public class Field extends Informative implements Comparable<Field> {
     public Object property(String key) {
         Object o = super.property(key);
         if (o == null) {
+            // Each kind of statistic is only calculated when one of its keys is needed
             if (!calculatedNominal && NominalStats.creates(key)) {
-                makeNominalStats();
+                // The counts alone may be estimated without the full pass
+                if (provider == null || !NominalStats.createsCount(key) || !NominalStats.populateCounts(this))
+                    makeNominalStats();
                 o = super.property(key);
             }
             if (!calculatedNumeric && NumericStats.creates(key)) {
-                if (!calculatedNominal) makeNominalStats();
                 makeNumericStats();
                 o = super.property(key);
             }
+            if (!calculatedQuantiles && NumericStats.createsQuantile(key)) {
+                makeQuantileStats();
+                o = super.property(key);
+            }
+            if (!calculatedGranularity && NumericStats.createsGranularity(key)) {
+                makeGranularityStats();
+                o = super.property(key);
+            }
             if (!calculatedDate && DateStats.creates(key)) {
                 if (isDate()) {
-                    if (!calculatedNominal) makeNominalStats();
-                    if (!calculatedNumeric) makeNumericStats();
                     makeDateStats();
                     o = super.property(key);
                 } else {
@@ -119,6 +133,7 @@ public class Field extends Informative implements Comparable<Field> {
     }
 
     private void makeDateStats() {
+        // Date statistics use the other statistics, which are calculated as they are needed
         if (isNumeric()) DateStats.populate(this);
         calculatedDate = true;
     }
@@ -144,6 +159,16 @@ public class Field extends Informative implements Comparable<Field> {
         calculatedNumeric = true;
     }
 
+    private void makeQuantileStats() {
+        if (provider != null) NumericStats.populateQuantiles(this);
+        calculatedQuantiles = true;
+    }
+
+    private void makeGranularityStats() {
+        if (provider != null) NumericStats.populateGranularity(this);
+        calculatedGranularity = true;
+    }
+
     private void makeNominalStats() {
         if (provider != null) NominalStats.populate(this);
         calculatedNominal = true;
@@ -210,12 +235,71 @@ public class Field extends Informative implements Comparable<Field> {
         return (Integer) property("valid");
     }
 
+    /**
+     * Count how often each non-null value occurs
+     *
+     * @return map from each value to its count
+     */
+    public MapInt countValues() {
+        return new MapInt().countAll(resolved());
+    }
+
     public Object value(int index) {
-        return provider.value(index);
+        return resolved().value(index);
+    }
+
+    /*
+     * A field selected lazily from another is copied the first time its data is needed.
+     * If two threads do this at once, both copies hold the same data, so either can be kept
+     */
+    private Provider resolved() {
+        if (provider instanceof SelectionProvider) provider = ((SelectionProvider) provider).materialize();
+        return provider;
+    }
+
+    /**
+     * Make sure the field's data is in its final form. A field selected lazily from another copies its rows the
+     * first time they are used; calling this first means threads that then read the field share one copy
+     */
+    public void ensureResolved() {
+        resolved();
+    }
+
+    /**
+     * Returns true if the data is stored in primitive form, so numericValue() does not need to box values
+     *
+     * @return true if values are stored as primitives
+     */
+    public boolean hasPrimitiveData() {
+        return resolved() instanceof PrimitiveColumnProvider;
+    }
+
+    /**
+     * Returns the dictionary storing this field's data, if it is stored that way
+     *
+     * @return dictionary provider, or null if the data is stored some other way
+     */
+    public DictionaryProvider dictionary() {
+        Provider p = resolved();
+        return p instanceof DictionaryProvider ? (DictionaryProvider) p : null;
+    }
+
+    /**
+     * The value at the given row as a number, as given by Data.asNumeric()
+     *
+     * @param index row to access
+     * @return numeric value, or NaN if the value is missing or not numeric
+     */
+    public double numericValue(int index) {
+        Provider p = resolved();
+        if (p instanceof PrimitiveColumnProvider)
+            return ((PrimitiveColumnProvider) p).numericValue(index);
+        Double d = Data.asNumeric(p.value(index));
+        return d == null ? Double.NaN : d;
     }
 
     public String valueFormatted(int index) {
-        return format(provider.value(index));
+        return format(resolved().value(index));
     }
 
     public String format(Object v) {
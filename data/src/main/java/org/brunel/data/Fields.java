@@ -18,8 +18,10 @@ package org.brunel.data;
 
 import org.brunel.data.values.ColumnProvider;
 import org.brunel.data.values.ConstantProvider;
-import org.brunel.data.values.ReorderedProvider;
+import org.brunel.data.values.Provider;
 import org.brunel.data.values.RowProvider;
+import org.brunel.data.values.RowSelection;
+import org.brunel.data.values.SelectionProvider;
 
 /**
  * Utilities for manipulating fields
@@ -56,7 +58,8 @@ public class Fields {
     }
 
     /**
-     * Define a field for a column of data
+     * Define a field for a column of data.
+     * Columns of numbers or dates are stored in primitive form
      *
      * @param name  field name
      * @param label user-readable label for the field
@@ -64,7 +67,7 @@ public class Fields {
      * @return constructed field
      */
     public static Field makeColumnField(String name, String label, Object[] data) {
-        return new Field(name, label, new ColumnProvider(data));
+        return new Field(name, label, ColumnProvider.make(data));
     }
 
     /**
@@ -76,14 +79,35 @@ public class Fields {
      * @return constructed field
      */
     public static Field permute(Field field, int[] order, boolean onlyOrderChanged) {
+        return select(field, new RowSelection(order), onlyOrderChanged);
+    }
+
+    /**
+     * Create a new field that selects rows from the original field. No data is copied until the new field is read,
+     * and selecting from a field that has not been read composes the selections, so fields that are never read
+     * cost only their share of the selections. Fields changed by the same operation should use the same selection.
+     *
+     * @param field            field to select from
+     * @param rows             the rows to use
+     * @param onlyOrderChanged true if this is a true permutation (no duplicates or any left out)
+     * @return constructed field
+     */
+    public static Field select(Field field, RowSelection rows, boolean onlyOrderChanged) {
         if (field.provider instanceof ConstantProvider) {
             // No ned for hard work here -- a permuted constant is still a constant
             if (onlyOrderChanged) return field;
-            else return makeConstantField(field.name, field.label, field.value(0), order.length);
+            else return makeConstantField(field.name, field.label, field.value(0), rows.rows.length);
+        }
+        Provider provider;
+        if (field.provider instanceof SelectionProvider) {
+            SelectionProvider unread = (SelectionProvider) field.provider;
+            provider = new SelectionProvider(unread.sourceProvider(), unread.rowSelection().compose(rows));
+        } else {
+            provider = new SelectionProvider(field.provider, rows);
         }
         if (onlyOrderChanged)
-            return new Field(field.name, field.label, new ReorderedProvider(field.provider, order), field);
-        Field f = new Field(field.name, field.label, new ReorderedProvider(field.provider, order));
+            return new Field(field.name, field.label, provider, field);
+        Field f = new Field(field.name, field.label, provider);
         copyBaseProperties(field, f);
         return f;
     }
@@ -95,7 +119,7 @@ public class Fields {
      */
     public static void copyBaseProperties(Field source, Field target) {
         target.copyProperties(source, "numeric", "binned", "summary", "transform",
-                "list", "listCategories", "date", "categoriesOrdered", "dateUnit", "dateFormat");
+                "list", "listCategories", "date", "categoriesOrdered", "dateUnit", "dateFormat", "approximate");
 
         // Only copy the categories if the order is important
         if (source.isProperty("categoriesOrdered"))
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data;
+
+import org.brunel.data.stats.DateStats;
+import org.brunel.data.stats.NominalStats;
+import org.brunel.data.stats.NumericStats;
+import org.brunel.data.util.Informative;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * A copy of a field that may be shared between threads, such as one held in a cache.
+ * The copy can be changed freely, but until it is, its statistics are calculated by the shared field (holding
+ * its lock) and so are only ever calculated once. The shared field must not be changed in any other way
+ */
+@JSTranslation(ignore = true)
+public class SharedField extends Field {
+
+    private Field original;                     // Calculates our statistics; null once we have been changed
+
+    public SharedField(Field original) {
+        super(original.name, original.label, original.provider);
+        synchronized (original) {
+            copyAllProperties(original);
+        }
+        // A copy that has not been changed has the same statistics as the field it copies
+        if (original instanceof SharedField && ((SharedField) original).original != null)
+            original = ((SharedField) original).original;
+        this.original = original;
+    }
+
+    public Object property(String key) {
+        Object o = info.get(key);
+        if (o != null || original == null || !isStatistic(key)) return super.property(key);
+        synchronized (original) {
+            o = original.property(key);
+        }
+        if (o != null) info.put(key, o);
+        return o;
+    }
+
+    public void set(String key, Object value) {
+        if (!isStatistic(key)) original = null;
+        super.set(key, value);
+    }
+
+    public void copyAllProperties(Informative other) {
+        original = null;
+        super.copyAllProperties(other);
+    }
+
+    public void setValue(Object o, int index) {
+        original = null;
+        super.setValue(o, index);
+    }
+
+    private static boolean isStatistic(String key) {
+        return NominalStats.creates(key) || NumericStats.creates(key) || NumericStats.createsQuantile(key)
+                || NumericStats.createsGranularity(key) || DateStats.creates(key);
+    }
+}
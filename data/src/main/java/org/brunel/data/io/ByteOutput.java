@@ -79,11 +79,29 @@ class ByteOutput {
         return this;
     }
 
+    @JSTranslation(js = {
+            "if (isNaN(value)) return this.addString('NaN');",
+            "var s = V.Data.formatNumeric(value, false);",
+            "this.addString(Number(s) == value ? s : String(value));"
+    })
     private void addDouble(Number value) {
-        if (Double.isNaN(value.doubleValue()))
+        double d = value.doubleValue();
+        if (Double.isNaN(d)) {
             addString("NaN");
-        else
-            addString(Data.formatNumeric(value.doubleValue(), false));
+            return;
+        }
+        // Use the short format when it reads back exactly; otherwise (e.g. dates with times) keep every digit
+        String s = Data.formatNumeric(d, false);
+        addString(readsBackAs(s, d) ? s : Double.toString(d));
+    }
+
+    @JSTranslation(ignore = true)
+    private static boolean readsBackAs(String s, double d) {
+        try {
+            return Double.parseDouble(s) == d;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
     public void addDate(Date date) {
@@ -111,7 +111,7 @@ public class CSV {
 
     }
 
-    private static char findSeparator(String data) {
+    static char findSeparator(String data) {
         char[] potential = new char[]{',', '\t', '|', ';'};
         char best = ',';
         int score = -100000;
@@ -140,7 +140,7 @@ public class CSV {
         return best;
     }
 
-    private static String saveMemory(String s, Map<String, String> common, boolean wasQuoted) {
+    static String saveMemory(String s, Map<String, String> common, boolean wasQuoted) {
         if (s == null) return null;
         if (!wasQuoted) s = s.trim();
 
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.auto.Auto;
+import org.brunel.data.util.Parallel;
+import org.brunel.translator.JSTranslation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads CSV data from a stream, giving the same results as CSV.read() on the decoded text.
+ * Bytes are decoded as UTF-8 once, as they arrive, and cells are written straight into their columns,
+ * so neither the whole text nor a table of rows is held in memory.
+ * Fields are then built (and for data sets, converted to their best types) in parallel, using the Parallel pool.
+ */
+@JSTranslation(ignore = true)
+public class CSVReader {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final int SEPARATOR_SAMPLE = 5000;       // Characters used to guess the separator
+
+    public static Field[] read(InputStream in) throws IOException {
+        return makeFields(new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8)).parse(), false);
+    }
+
+    public static Field[] read(ReadableByteChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Read a data set, converting columns to their best type as Dataset.make() does
+     *
+     * @param in stream of UTF-8 encoded CSV
+     * @return the data set
+     * @throws IOException if the stream cannot be read
+     */
+    public static Dataset readDataset(InputStream in) throws IOException {
+        return readDataset(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    public static Dataset readDataset(ReadableByteChannel channel) throws IOException {
+        return readDataset(Channels.newInputStream(channel));
+    }
+
+    public static Dataset readDataset(String text) {
+        try {
+            return readDataset(new StringReader(text));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected failure reading from a string", e);
+        }
+    }
+
+    private static Dataset readDataset(Reader reader) throws IOException {
+        Field[] fields = makeFields(new CSVReader(reader).parse(), true);
+        return Dataset.make(fields, false);                 // Already converted
+    }
+
+    /* Create fields from the columns, splitting the columns between parallel tasks when there is enough data */
+    private static Field[] makeFields(final String[][] columns, final boolean convert) {
+        final Field[] fields = new Field[columns.length];
+        int cells = columns.length == 0 ? 0 : columns.length * (columns[0].length - 1);
+        int parts = Math.min(columns.length, Parallel.partitions(cells));
+        Parallel.forEachRange(parts, columns.length, new Parallel.RangeTask() {
+            public void run(int part, int start, int end) {
+                for (int i = start; i < end; i++) {
+                    String[] column = columns[i];
+                    String name = column[0] == null ? "" : column[0];
+                    Object[] data = Arrays.copyOfRange(column, 1, column.length, Object[].class);
+                    Field field = Fields.makeColumnField(CSV.identifier(name), CSV.readable(name), data);
+                    fields[i] = convert ? Auto.convert(field) : field;
+                }
+            }
+        });
+        return fields;
+    }
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position, limit;                            // Current position and end of valid data in the buffer
+    private final Map<String, String> common = new HashMap<>();
+
+    private String[][] columns;                             // Header and values for each column
+    private int rowCount;                                   // Rows stored in the columns, including the header
+    private int lineSize;                                   // Cells seen so far on the current line
+
+    private CSVReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /*
+     * The same state machine as CSV.parse(), reading characters from the stream.
+     * Returns columns, each with the header as its first item
+     */
+    private String[][] parse() throws IOException {
+        // Guess the separator from the start of the data
+        boolean more = true;
+        while (more && limit < SEPARATOR_SAMPLE) more = fill();
+        char separator = CSV.findSeparator(new String(buffer, 0, Math.min(SEPARATOR_SAMPLE, limit)));
+
+        StringBuilder building = new StringBuilder();
+        boolean isBuilding = false;                         // False when CSV.parse would have building == null
+        char last = ' ';
+        boolean inQuote = false, wasQuoted = false;
+
+        while (true) {
+            int next = read();
+            // Ensure the last character in the file is an additional return
+            char c = next < 0 ? '\n' : (char) next;
+            if (inQuote) {
+                if (c == '\"') {
+                    if (next >= 0 && peek() == '\"') {
+                        // A double quote is treated as a single quote
+                        building.append('\"');
+                        read();
+                    } else
+                        inQuote = false;
+                } else
+                    // Simply add whatever it is
+                    building.append(c);
+            } else if (c == '\n' || c == '\r') {
+                // Ignore the second of a \n\r
+                if (last != '\r' || c != '\n') {
+                    if (lineSize == 0 && (!isBuilding || building.toString().trim().length() == 0)) {
+                        // An empty line means the end of parsing
+                        break;
+                    }
+                    addCell(isBuilding ? building.toString() : null, wasQuoted);
+                    endLine();
+                    building.setLength(0);
+                    isBuilding = false;
+                    wasQuoted = false;
+                }
+            } else if (c == '\"') {
+                inQuote = true;
+                wasQuoted = true;
+                isBuilding = true;
+            } else {
+                if (c == separator) {
+                    addCell(isBuilding ? building.toString() : null, wasQuoted);
+                    building.setLength(0);
+                    isBuilding = false;
+                    wasQuoted = false;
+                } else {
+                    isBuilding = true;
+                    building.append(c);
+                }
+            }
+            if (next < 0) break;
+            last = c;
+        }
+
+        if (columns == null) throw new IllegalArgumentException("No CSV data found");
+        for (int i = 0; i < columns.length; i++) columns[i] = Arrays.copyOf(columns[i], rowCount);
+        return columns;
+    }
+
+    private void addCell(String text, boolean wasQuoted) {
+        String value = CSV.saveMemory(text, common, wasQuoted);
+        if (rowCount == 0) {
+            // Still reading the header, so we do not know the column count yet
+            if (columns == null) columns = new String[16][];
+            else if (lineSize == columns.length) columns = Arrays.copyOf(columns, lineSize * 2);
+            columns[lineSize] = new String[16];
+        } else if (lineSize >= columns.length) {
+            // Too many cells; keep counting so the error reports the right number
+            lineSize++;
+            return;
+        } else if (rowCount == columns[lineSize].length) {
+            columns[lineSize] = Arrays.copyOf(columns[lineSize], rowCount * 2);
+        }
+        columns[lineSize++][rowCount] = value;
+    }
+
+    private void endLine() {
+        if (rowCount == 0) {
+            // The header defines the columns
+            columns = Arrays.copyOf(columns, lineSize);
+        } else if (lineSize != columns.length) {
+            throw new IllegalArgumentException("Line " + (rowCount + 1) + " had " + lineSize + " entries; expected "
+                    + columns.length);
+        }
+        rowCount++;
+        lineSize = 0;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position];
+    }
+
+    /* Read more data into the buffer, keeping unread data; returns false at the end of the stream */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) return true;
+        int n = reader.read(buffer, limit, buffer.length - limit);
+        if (n < 0) return false;
+        limit += n;
+        return true;
+    }
+}
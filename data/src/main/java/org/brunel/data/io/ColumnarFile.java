@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.MappedColumnProvider;
+import org.brunel.data.values.MappedDictionaryProvider;
+import org.brunel.data.values.Provider;
+import org.brunel.translator.JSTranslation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stores a data set in a columnar file that can be memory-mapped to read it back.
+ * A header gives, for each field, its name, label, type and the statistics already calculated for it.
+ * Each field then has a dictionary block of values and a fixed-width index block of codes into it,
+ * aligned on eight byte boundaries. Numeric fields with many distinct values store one value per row
+ * and no index. Reading maps the blocks and wraps them in providers, so no row data is copied;
+ * only string dictionaries are decoded onto the heap.
+ *
+ * Fields must contain only strings, only numbers, or only dates; canWrite() checks this.
+ * Special fields (#count, #row and #selection) are not stored, but are recreated on reading.
+ */
+@JSTranslation(ignore = true)
+public class ColumnarFile {
+
+    private static final int MAGIC = 0x42524E43;             // "BRNC"
+    private static final int VERSION = 1;                    // Must be incremented if the format changes
+
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte DATE = 3;
+
+    private static final byte BOOLEAN_PROPERTY = 1;
+    private static final byte INTEGER_PROPERTY = 2;
+    private static final byte DOUBLE_PROPERTY = 3;
+
+    // Statistics stored for numeric and date fields, so they need not be calculated again
+    private static final String[] NOMINAL_STATS = {"n", "valid", "unique"};
+    private static final String[] NUMERIC_STATS = {"validNumeric", "mean", "stddev", "variance", "skew",
+            "kurtosis", "min", "max", "median", "q1", "q3", "granularity"};
+
+    /**
+     * Returns true if the data set can be stored in this format
+     *
+     * @param data data set to check
+     * @return true if every field can be stored
+     */
+    public static boolean canWrite(Dataset data) {
+        for (Field f : data.fields)
+            if (!f.isSynthetic() && typeOf(f) == 0) return false;
+        return true;
+    }
+
+    /**
+     * Write a data set to a file
+     *
+     * @param data data set to write
+     * @param file target file, which is replaced if it exists
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if a field cannot be stored in this format
+     */
+    public static void write(Dataset data, File file) throws IOException {
+        List<Column> columns = new ArrayList<>();
+        for (Field f : data.fields)
+            if (!f.isSynthetic()) columns.add(new Column(f));
+
+        // Build the header, laying out the blocks relative to the start of the data
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        writeString(header, data.name());
+        header.writeInt(columns.size());
+        header.writeInt(data.rowCount());
+        long offset = 0;
+        for (Column c : columns) {
+            c.writeHeader(header, offset);
+            offset += c.dictionaryLength() + c.indexLength();
+        }
+        header.flush();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            pad(out, 12 + headerBytes.size());
+            for (Column c : columns) c.writeBlocks(out);
+        }
+    }
+
+    /**
+     * Read a data set by mapping a file written by write()
+     *
+     * @param file file to read
+     * @return data set whose fields read from the mapped file
+     * @throws IOException if the file cannot be read or is not in this format
+     */
+    public static Dataset read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer start = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(12, channel.size()));
+            if (start.limit() < 12 || start.getInt() != MAGIC)
+                throw new IOException("Not a columnar data file: " + file);
+            int version = start.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported columnar data file version " + version + ": " + file);
+            int headerLength = start.getInt();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 12, headerLength);
+            long dataStart = align(12 + headerLength);
+
+            String name = readString(header);
+            Field[] fields = new Field[header.getInt()];
+            int rowCount = header.getInt();
+            for (int i = 0; i < fields.length; i++)
+                fields[i] = readField(header, channel, dataStart, rowCount);
+
+            Dataset result = Dataset.make(fields, false);
+            if (name != null) result.set("name", name);
+            return result;
+        }
+    }
+
+    private static Field readField(ByteBuffer header, FileChannel channel, long dataStart, int rowCount) throws IOException {
+        String name = readString(header);
+        String label = readString(header);
+        byte type = header.get();
+
+        // Properties
+        int propertyCount = header.getInt();
+        String[] keys = new String[propertyCount];
+        Object[] values = new Object[propertyCount];
+        for (int i = 0; i < propertyCount; i++) {
+            keys[i] = readString(header);
+            byte kind = header.get();
+            if (kind == BOOLEAN_PROPERTY) values[i] = header.get() != 0;
+            else if (kind == INTEGER_PROPERTY) values[i] = header.getInt();
+            else if (kind == DOUBLE_PROPERTY) values[i] = header.getDouble();
+            else throw new IOException("Unknown property kind " + kind);
+        }
+
+        // Block layout
+        int width = header.get();
+        int dictionarySize = header.getInt();
+        long offset = dataStart + header.getLong();
+        long dictionaryLength = header.getLong();
+        long indexLength = header.getLong();
+
+        ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, offset, dictionaryLength);
+        ByteBuffer index = width == 0 ? null
+                : channel.map(FileChannel.MapMode.READ_ONLY, offset + dictionaryLength, indexLength);
+
+        Provider provider;
+        if (type == STRING) {
+            provider = new MappedDictionaryProvider(readDictionary(dictionary, dictionarySize), index, width, rowCount);
+        } else if (type == NUMBER || type == DATE) {
+            dictionary.limit(8 * dictionarySize);
+            provider = new MappedColumnProvider(dictionary.slice(), index, width, rowCount, type == DATE);
+        } else {
+            throw new IOException("Unknown column type " + type);
+        }
+
+        Field field = new Field(name, label, provider);
+        for (int i = 0; i < propertyCount; i++) field.set(keys[i], values[i]);
+        return field;
+    }
+
+    /* Strings are stored as a table of offsets followed by the UTF-8 bytes */
+    private static Object[] readDictionary(ByteBuffer buffer, int size) {
+        Object[] values = new Object[size];
+        int base = 4 * (size + 1);
+        byte[] bytes = new byte[0];
+        for (int i = 0; i < size; i++) {
+            int a = buffer.getInt(4 * i), b = buffer.getInt(4 * i + 4);
+            if (bytes.length < b - a) bytes = new byte[b - a];
+            buffer.position(base + a);
+            buffer.get(bytes, 0, b - a);
+            values[i] = new String(bytes, 0, b - a, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    /* Returns the type to store a field as, or zero if it cannot be stored */
+    private static byte typeOf(Field f) {
+        boolean strings = true, numbers = true, dates = true;
+        int n = f.rowCount();
+        for (int i = 0; i < n; i++) {
+            Object o = f.value(i);
+            if (o == null) continue;
+            if (!(o instanceof String)) strings = false;
+            if (!(o instanceof Number)) numbers = false;
+            if (!(o instanceof Date)) dates = false;
+        }
+        if (f.isDate() && dates) return DATE;
+        if (f.isNumeric() && numbers) return NUMBER;
+        if (strings) return STRING;
+        return 0;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int len = buffer.getInt();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out, long written) throws IOException {
+        for (long i = written; i < align(written); i++) out.writeByte(0);
+    }
+
+    /*
+     * A field prepared for writing
+     */
+    private static class Column {
+        private final Field field;
+        private final byte type;
+        private final DictionaryProvider dictionary;        // Null when numbers are stored one per row
+        private final byte[][] strings;                     // Encoded dictionary for string columns
+        private final int width;                            // Bytes per code, or zero for no index
+
+        Column(Field field) {
+            this.field = field;
+            this.type = typeOf(field);
+            if (type == 0)
+                throw new IllegalArgumentException("Field '" + field.name + "' has values that cannot be stored");
+
+            int n = field.rowCount();
+            DictionaryProvider d = field.dictionary();
+            if (d == null) {
+                Object[] column = new Object[n];
+                for (int i = 0; i < n; i++) column[i] = field.value(i);
+                // Numbers with many distinct values are smaller stored directly
+                d = DictionaryProvider.make(column, type == STRING ? Integer.MAX_VALUE : n >> 1);
+            }
+            this.dictionary = d;
+
+            if (d == null) {
+                width = 0;
+                strings = null;
+            } else {
+                // Same thresholds as DictionaryProvider, leaving room for the missing code
+                int k = d.dictionarySize();
+                width = k < 256 ? 1 : (k < 256 * 256 ? 2 : 4);
+                if (type == STRING) {
+                    strings = new byte[k][];
+                    for (int i = 0; i < k; i++)
+                        strings[i] = ((String) d.dictionaryValue(i)).getBytes(StandardCharsets.UTF_8);
+                } else {
+                    strings = null;
+                }
+            }
+        }
+
+        long dictionaryLength() {
+            if (dictionary == null) return 8L * field.rowCount();
+            if (type != STRING) return 8L * dictionary.dictionarySize();
+            long total = 4L * (strings.length + 1);
+            for (byte[] s : strings) total += s.length;
+            return align(total);
+        }
+
+        long indexLength() {
+            return align((long) width * field.rowCount());
+        }
+
+        void writeHeader(DataOutputStream out, long offset) throws IOException {
+            writeString(out, field.name);
+            writeString(out, field.label);
+            out.writeByte(type);
+
+            // Calculate the statistics now so the reader does not need to
+            List<String> keys = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            if (type == DATE) addProperty("date", field, keys, values);
+            if (type != STRING) {
+                addProperty("numeric", field, keys, values);
+                for (String key : NOMINAL_STATS) addProperty(key, field, keys, values);
+                for (String key : NUMERIC_STATS) addProperty(key, field, keys, values);
+            }
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                writeString(out, keys.get(i));
+                Object v = values.get(i);
+                if (v instanceof Boolean) {
+                    out.writeByte(BOOLEAN_PROPERTY);
+                    out.writeByte((Boolean) v ? 1 : 0);
+                } else if (v instanceof Integer) {
+                    out.writeByte(INTEGER_PROPERTY);
+                    out.writeInt((Integer) v);
+                } else {
+                    out.writeByte(DOUBLE_PROPERTY);
+                    out.writeDouble(((Number) v).doubleValue());
+                }
+            }
+
+            out.writeByte(width);
+            out.writeInt(dictionary == null ? field.rowCount() : dictionary.dictionarySize());
+            out.writeLong(offset);
+            out.writeLong(dictionaryLength());
+            out.writeLong(indexLength());
+        }
+
+        void writeBlocks(DataOutputStream out) throws IOException {
+            int n = field.rowCount();
+            if (dictionary == null) {
+                for (int i = 0; i < n; i++) writeValue(out, field.value(i));
+                return;
+            }
+
+            int k = dictionary.dictionarySize();
+            if (type == STRING) {
+                int position = 0;
+                out.writeInt(0);
+                for (byte[] s : strings) out.writeInt(position += s.length);
+                for (byte[] s : strings) out.write(s);
+                pad(out, 4L * (k + 1) + position);
+            } else {
+                for (int i = 0; i < k; i++) writeValue(out, dictionary.dictionaryValue(i));
+            }
+
+            // The dictionary may belong to the field, so map rows through it
+            for (int i = 0; i < n; i++) {
+                int code = dictionary.code(i);
+                if (width == 1) out.writeByte(code);
+                else if (width == 2) out.writeShort(code);
+                else out.writeInt(code);
+            }
+            pad(out, (long) width * n);
+        }
+
+        private void writeValue(DataOutputStream out, Object o) throws IOException {
+            if (type == DATE)
+                out.writeLong(o == null ? MappedColumnProvider.MISSING_TIME : ((Date) o).getTime());
+            else
+                out.writeDouble(o == null ? Double.NaN : Data.asNumeric(o));
+        }
+
+        private static void addProperty(String key, Field field, List<String> keys, List<Object> values) {
+            Object v = field.property(key);
+            if (v instanceof Boolean || v instanceof Integer || v instanceof Double) {
+                keys.add(key);
+                values.add(v);
+            }
+        }
+    }
+}
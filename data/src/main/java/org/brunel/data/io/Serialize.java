@@ -18,9 +18,11 @@ package org.brunel.data.io;
 
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
-import org.brunel.data.Fields;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -48,19 +50,47 @@ public class Serialize {
      * @return an array of bytes representing this data
      */
     public static byte[] serializeDataset(Dataset data) {
-        data = data.removeSpecialFields();
+        return serializeFields(data.removeSpecialFields().fields);
+    }
+
+    /**
+     * Return a serialized version of a dataset made from the given fields.
+     * Unlike serializeDataset, special fields are kept if they are passed in.
+     *
+     * @param fields the fields to serialize, which must all have the same number of rows
+     * @return an array of bytes that deserializes as a dataset
+     */
+    public static byte[] serializeFields(Field[] fields) {
         ByteOutput s = new ByteOutput();
 
         //Add versioning
         s.addByte(VERSION).addNumber(DATASET_VERSION_NUMBER);
 
         // Basics, then each field
-        s.addByte(DATA_SET).addNumber(data.fields.length);
-        for (Field f : data.fields) addFieldToOutput(f, s);
+        s.addByte(DATA_SET).addNumber(fields.length);
+        for (Field f : fields) addFieldToOutput(f, s);
 
         return s.asBytes();
     }
 
+    /**
+     * Test whether a field can be serialized. Dates, numbers and strings can be, but other values
+     * (such as the ranges made by binning) cannot be read back, and nor can list fields
+     *
+     * @param field the field to test
+     * @return true if serializeField would store the field faithfully
+     */
+    @JSTranslation(ignore = true)
+    public static boolean canSerialize(Field field) {
+        if (field.isProperty("list")) return false;
+        Class<?> type = field.isDate() ? Date.class : (field.isNumeric() ? Number.class : String.class);
+        for (int i = 0; i < field.rowCount(); i++) {
+            Object value = field.value(i);
+            if (value != null && !type.isInstance(value)) return false;
+        }
+        return true;
+    }
+
     /**
      * Return a serialized version of a field.
      *
@@ -112,6 +142,21 @@ public class Serialize {
         return readFromByteInput(d);
     }
 
+    /**
+     * Deserialize data that has been written as base64 text, as it is when embedded in a web page
+     *
+     * @param text base64 encoding of serialized bytes
+     * @return the field or dataset that was serialized
+     */
+    @JSTranslation(js = {
+            "var i, s = atob(text), bytes = new Array(s.length);",
+            "for (i = 0; i < s.length; i++) bytes[i] = s.charCodeAt(i);",
+            "return $$CLASS$$.deserialize(bytes);"
+    })
+    public static Object deserializeBase64(String text) {
+        return deserialize(Base64.getDecoder().decode(text));
+    }
+
     private static Object readFromByteInput(ByteInput d)  {
         byte b = d.readByte();
         if (b == FIELD) {
@@ -140,7 +185,8 @@ public class Serialize {
             int len = d.readNumber().intValue();
             int[] indices = new int[len];
             for (int i=0; i<len; i++) indices[i] = d.readNumber().intValue();
-            Field field = Fields.permute(Fields.makeColumnField(name, label, items), indices, false);
+            // The data is already a dictionary and codes into it
+            Field field = new Field(name, label, DictionaryProvider.fromDictionary(items, indices));
 
             if (b == NUMBER || b == DATE) field.setNumeric();
             if (b == DATE) field.set("date", true);
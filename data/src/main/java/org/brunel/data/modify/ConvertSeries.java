@@ -20,6 +20,7 @@ import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.data.values.RowSelection;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -92,6 +93,7 @@ public class ConvertSeries extends DataOperation {
         series.setCategories(yFields);
 
         // All other fields use the valuesIndexing
+        RowSelection selection = new RowSelection(valuesIndexing);
         List<Field> resultFields = new ArrayList<>();
         resultFields.add(series);
         resultFields.add(values);
@@ -99,7 +101,7 @@ public class ConvertSeries extends DataOperation {
             // The special fields have already been added
             if (fieldName.equals("#series") || fieldName.equals("#values")) continue;
             Field f = base.field(fieldName);
-            resultFields.add(Fields.permute(f, valuesIndexing, false));
+            resultFields.add(Fields.select(f, selection, false));
         }
 
         // Assemble result
@@ -21,6 +21,7 @@ import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.util.ItemsList;
+import org.brunel.data.values.RowSelection;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -60,7 +61,7 @@ public class Each extends DataOperation {
         }
 
         // Convert List<Integer> to int[]
-        int[] idx = Data.toPrimitive(rows.toArray(new Integer[rows.size()]));
+        RowSelection selection = new RowSelection(Data.toPrimitive(rows.toArray(new Integer[rows.size()])));
 
         Field[] results = new Field[base.fields.length];
         for (int i = 0; i < results.length; i++) {
@@ -69,7 +70,7 @@ public class Each extends DataOperation {
                 Object[] data = fieldValues.toArray(new Object[fieldValues.size()]);
                 results[i] = Fields.makeColumnField(f.name, f.label, data);
             } else {
-                results[i] = Fields.permute(f, idx, false);
+                results[i] = Fields.select(f, selection, false);
             }
         }
 
@@ -19,9 +19,12 @@ package org.brunel.data.modify;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
+import org.brunel.data.util.Parallel;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * This transform takes data and removes rows based on filter commands
@@ -88,16 +91,50 @@ public class Filter extends DataOperation {
             if (o != null) data.add(o);
         }
         Object[] d = data.toArray(new Object[data.size()]);
-        Data.sort(d);
 
+        // Only the two cut points are needed, so select them rather than sorting everything
         int N = d.length;
         int a = Math.min(Math.max(1, (int) p1), N);
         int b = Math.min(Math.max(1, (int) p2), N);
-        Object high = d[N - a];
-        Object low = d[N - b];
+        Object high = select(d, N - a);
+        Object low = select(d, N - b);
         return new Object[]{low, high};
     }
 
+    /*
+     * Returns the k'th smallest item, partially reordering the data so that smaller items come before it
+     * and larger ones after it. Uses median of three partitioning, so takes linear time on average
+     */
+    private static Object select(Object[] a, int k) {
+        int lo = 0, hi = a.length - 1;
+        while (hi > lo + 1) {
+            swap(a, (lo + hi) >> 1, lo + 1);
+            if (Data.compare(a[lo], a[hi]) > 0) swap(a, lo, hi);
+            if (Data.compare(a[lo + 1], a[hi]) > 0) swap(a, lo + 1, hi);
+            if (Data.compare(a[lo], a[lo + 1]) > 0) swap(a, lo, lo + 1);
+            Object pivot = a[lo + 1];
+            int i = lo + 2, j = hi - 1;
+            while (true) {
+                while (Data.compare(a[i], pivot) < 0) i++;
+                while (Data.compare(a[j], pivot) > 0) j--;
+                if (j < i) break;
+                swap(a, i++, j--);
+            }
+            a[lo + 1] = a[j];
+            a[j] = pivot;
+            if (j >= k) hi = j - 1;
+            if (j <= k) lo = i;
+        }
+        if (hi == lo + 1 && Data.compare(a[hi], a[lo]) < 0) swap(a, lo, hi);
+        return a[k];
+    }
+
+    private static void swap(Object[] a, int i, int j) {
+        Object t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
     private static int getType(String s) {
         // Negated form
         if (s.startsWith("!")) return -getType(s.substring(1).trim());
@@ -119,37 +156,139 @@ public class Filter extends DataOperation {
         return result;
     }
 
+    /*
+     * Each command is prepared once as the most direct test for its field: numeric comparisons for primitive data,
+     * a pass/fail flag for each code of a dictionary, or general comparisons otherwise.
+     * The tests are then run a column at a time, clearing the bits of failing rows
+     */
     private static int[] makeRowsToKeep(Field[] field, int[] type, Object[][] params) {
-        List<Integer> rows = new ArrayList<>();
+        double[][] numericParams = new double[field.length][];
+        boolean[][] codePasses = new boolean[field.length][];
+        for (int i = 0; i < field.length; i++) {
+            numericParams[i] = getNumericParams(field[i], params[i]);
+            if (numericParams[i] == null)
+                codePasses[i] = getCodePasses(field[i], type[i], params[i]);
+            else if (type[i] == 2 || type[i] == -2)
+                Arrays.sort(numericParams[i]);          // So we can search for matches
+        }
+
         int n = field[0].rowCount();
-        for (int row = 0; row < n; row++) {
+        int[] keep = keepRows(field, type, params, numericParams, codePasses, n);
+        return keep.length == n ? null : keep;          // Null means no change needed
+    }
+
+    /* Tests ranges of rows in parallel (in Java), joining the rows kept by each range in order */
+    @JSTranslation(js = "return $$CLASS$$.keepRowsInRange(field, type, params, numericParams, codePasses, 0, n);")
+    private static int[] keepRows(final Field[] field, final int[] type, final Object[][] params,
+                                  final double[][] numericParams, final boolean[][] codePasses, int n) {
+        final int[][] parts = new int[Parallel.partitions(n)][];
+        Parallel.forEachRange(parts.length, n, new Parallel.RangeTask() {
+            public void run(int part, int start, int end) {
+                parts[part] = keepRowsInRange(field, type, params, numericParams, codePasses, start, end);
+            }
+        });
+        return Parallel.concatenate(parts);
+    }
+
+    static int[] keepRowsInRange(Field[] field, int[] type, Object[][] params, double[][] numericParams,
+                                 boolean[][] codePasses, int start, int end) {
+        // One bit for each row in the range; all rows start as kept
+        int[] bits = new int[((end - start) >> 5) + 1];
+        for (int i = 0; i < bits.length; i++) bits[i] = -1;
+
+        for (int i = 0; i < field.length; i++) {
+            if (numericParams[i] != null)
+                testNumbers(field[i], type[i], numericParams[i], bits, start, end);
+            else if (codePasses[i] != null)
+                testCodes(field[i].dictionary(), codePasses[i], bits, start, end);
+            else
+                testValues(field[i], type[i], params[i], bits, start, end);
+        }
+
+        int[] rows = new int[end - start];
+        int count = 0;
+        for (int row = start; row < end; row++)
+            if (isKept(bits, row - start)) rows[count++] = row;
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    private static void testNumbers(Field f, int t, double[] numeric, int[] bits, int start, int end) {
+        for (int row = start; row < end; row++) {
+            if (!isKept(bits, row - start)) continue;
+            double d = f.numericValue(row);
             boolean bad = false;
-            for (int i = 0; i < field.length; i++) {
-                Object v = field[i].value(row);
-                if (v == null) {
-                    // Missing values always fail the test, no matter what
-                    bad = true;
-                    break;
-                }
+            if (t == 2 || t == -2)
+                bad = !containsNumber(numeric, d);
+            else if (t == 3 || t == -3)
+                bad = d < numeric[0] || d > numeric[1];
+            if (t < 0) bad = !bad;
+            // Missing values always fail the test, no matter what
+            if (bad || Double.isNaN(d)) discard(bits, row - start);
+        }
+    }
 
-                int t = type[i];
-                Object[] pars = params[i];
+    private static void testCodes(DictionaryProvider dictionary, boolean[] passes, int[] bits, int start, int end) {
+        for (int row = start; row < end; row++)
+            if (!passes[dictionary.code(row)]) discard(bits, row - start);
+    }
 
-                if (t == 2 || t == -2)
-                    bad = !matchAny(v, pars);
-                else if (t == 3 || t == -3)
-                    bad = Data.compare(v, pars[0]) < 0 || Data.compare(v, pars[1]) > 0;
+    private static void testValues(Field f, int t, Object[] pars, int[] bits, int start, int end) {
+        for (int row = start; row < end; row++)
+            if (isKept(bits, row - start) && !passes(f.value(row), t, pars)) discard(bits, row - start);
+    }
 
-                if (t < 0) bad = !bad;
+    /* For a dictionary field, test each value once; the final code (for missing values) always fails */
+    private static boolean[] getCodePasses(Field field, int t, Object[] pars) {
+        DictionaryProvider dictionary = field.dictionary();
+        if (dictionary == null) return null;
+        int k = dictionary.dictionarySize();
+        boolean[] result = new boolean[k + 1];
+        for (int i = 0; i < k; i++) result[i] = passes(dictionary.dictionaryValue(i), t, pars);
+        result[k] = false;
+        return result;
+    }
 
-                if (bad) break;             // Known to be bad
-            }
-            if (!bad) rows.add(row);
+    private static boolean passes(Object v, int t, Object[] pars) {
+        // Missing values always fail the test, no matter what
+        if (v == null) return false;
+        boolean bad = false;
+        if (t == 2 || t == -2)
+            bad = !matchAny(v, pars);
+        else if (t == 3 || t == -3)
+            bad = Data.compare(v, pars[0]) < 0 || Data.compare(v, pars[1]) > 0;
+        return t < 0 ? bad : !bad;
+    }
+
+    private static boolean isKept(int[] bits, int i) {
+        return (bits[i >> 5] & (1 << (i & 31))) != 0;
+    }
+
+    private static void discard(int[] bits, int i) {
+        bits[i >> 5] &= ~(1 << (i & 31));
+    }
+
+    /* Returns the parameters as numbers if the field can be tested using primitives, otherwise null */
+    private static double[] getNumericParams(Field field, Object[] params) {
+        if (!field.hasPrimitiveData() || field.isDate() || field.preferCategorical()) return null;
+        double[] result = new double[params.length];
+        for (int i = 0; i < params.length; i++) {
+            Double d = Data.asNumeric(params[i]);
+            if (d == null) return null;
+            result[i] = d;
         }
-        if (rows.size() == n) return null;          // No change needed
-        int[] keep = new int[rows.size()];
-        for (int i = 0; i < keep.length; i++) keep[i] = rows.get(i);
-        return keep;
+        return result;
+    }
+
+    /* Binary search in sorted parameters */
+    private static boolean containsNumber(double[] sorted, double v) {
+        int low = 0, high = sorted.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >> 1;
+            if (sorted[mid] < v) low = mid + 1;
+            else if (sorted[mid] > v) high = mid - 1;
+            else return true;
+        }
+        return false;
     }
 
     private static boolean matchAny(Object v, Object[] params) {
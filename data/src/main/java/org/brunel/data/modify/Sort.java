@@ -22,6 +22,7 @@ import org.brunel.data.Field;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.Fields;
 import org.brunel.data.util.MapInt;
+import org.brunel.data.values.RowSelection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -53,10 +54,11 @@ public class Sort extends DataOperation {
             if (f.isBinned() && f.preferCategorical()) rowOrder = moveCatchAllToEnd(rowOrder, f);
         }
 
+        RowSelection selection = new RowSelection(rowOrder);
         Field[] fields = new Field[base.fields.length];
         for (int i = 0; i < fields.length; i++) {
             Field field = base.fields[i];
-            fields[i] = Fields.permute(field, rowOrder, true);
+            fields[i] = Fields.select(field, selection, true);
             if (!field.ordered() && sortCategories) {
                 Object[] newCategoryOrder = makeOrder(field, dimensions, ascending);
                 fields[i].setCategories(newCategoryOrder);
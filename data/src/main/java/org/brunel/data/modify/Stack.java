@@ -21,6 +21,7 @@ import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.summary.FieldRowComparison;
 import org.brunel.data.Fields;
+import org.brunel.data.values.RowSelection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -102,8 +103,8 @@ public class Stack extends DataOperation {
         double lastNegative = 0;
         FieldRowComparison rowComparison = new FieldRowComparison(x, null, false);
         for (int i = 0; i < N; i++) {
-            Double v = Data.asNumeric(y.value(i));
-            if (v == null) {
+            double v = y.numericValue(i);
+            if (Double.isNaN(v)) {
                 // For full data we change missing values to zeroes, so stacking works on the complete data
                 // If we do not need full data, we can just skip it
                 if (full) v = 0.0;
@@ -151,9 +152,10 @@ public class Stack extends DataOperation {
     private static Field[] makeStackOrderedFields(Dataset base, Field[] keyFields, int xFieldCount) {
         Field[] baseFields = orderFields(base, keyFields);
         Integer[] rowOrder = makeStackDataOrder(baseFields, keyFields.length, xFieldCount);
+        RowSelection selection = new RowSelection(Data.toPrimitive(rowOrder));
         Field[] fields = new Field[baseFields.length];
         for (int i = 0; i < baseFields.length; i++)
-            fields[i] = Fields.permute(baseFields[i], Data.toPrimitive(rowOrder), true);
+            fields[i] = Fields.select(baseFields[i], selection, true);
         return fields;
     }
 
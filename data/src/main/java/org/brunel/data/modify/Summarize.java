@@ -16,14 +16,16 @@
 
 package org.brunel.data.modify;
 
-import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.summary.DimensionField;
-import org.brunel.data.summary.FieldRowComparison;
+import org.brunel.data.summary.GroupIndex;
+import org.brunel.data.summary.MeasureAccumulator;
 import org.brunel.data.summary.MeasureField;
 import org.brunel.data.summary.SummaryValues;
+import org.brunel.data.util.Parallel;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -122,58 +124,57 @@ public class Summarize extends DataOperation {
         Field[] percentBaseFields = percentBase.toArray(new Field[percentBase.size()]);
         Field[] measureFields = getFields(measures);
 
-        // The comparators to let us know when rows differ
-        FieldRowComparison dimComparison = new FieldRowComparison(dimensionFields, null, false);
-        FieldRowComparison percentBaseComparison = new FieldRowComparison(percentBaseFields, null, false);
-
-        // group[row] gives the index of the summary group for row 'row'; 'groupCount' is the number of groups
-        int[] group = new int[rowCount];
-        int groupCount = buildGroups(group, dimComparison);
+        // Assign rows to groups; groups are numbered in the sorted order of their dimension values
+        GroupIndex groups = new GroupIndex(dimensionFields, rowCount);
+        int groupCount = groups.groupCount;
 
         // These are just like the summary groups, but only for the percent bases
         // The percent groups nest within each base group: rows with the same group have the same summary group also
         // we do not create these if they are not needed, for efficiency
-        int[] percentGroup = percentNeeded ? new int[rowCount] : null;
-        int percentGroupCount = percentNeeded ? buildGroups(percentGroup, percentBaseComparison) : 0;
-
-        // Create the summary values for each group, and percentage sums
-        SummaryValues[] summaries = new SummaryValues[groupCount];
-        for (int i = 0; i < summaries.length; i++)
-            summaries[i] = new SummaryValues(measureFields, percentBaseFields, dimensionFields);
-        double[][] percentSums = new double[percentGroupCount][measureFields.length];
-
-        // Perform the Aggregation
-        for (int row = 0; row < rowCount; row++) {
-            SummaryValues value = summaries[group[row]];
-            if (percentNeeded) {
-                // If the group has not had percent sums set yet, then set it
-                if (value.percentSums == null) value.percentSums = percentSums[percentGroup[row]];
-                // Then add the values to the percentage count
-                for (int i = 0; i < measureFields.length; i++) {
-                    if (measures.get(i).isPercent()) {
-                        Double v = Data.asNumeric(measureFields[i].value(row));
-                        if (v != null) value.percentSums[i] += v;
-                    }
+        GroupIndex percentGroups = percentNeeded ? new GroupIndex(percentBaseFields, rowCount) : null;
+        double[][] percentSums = percentNeeded ? new double[percentGroups.groupCount][measureFields.length] : null;
+        if (percentNeeded) {
+            for (int i = 0; i < measureFields.length; i++) {
+                if (!measures.get(i).isPercent()) continue;
+                for (int row = 0; row < rowCount; row++) {
+                    double v = measureFields[i].numericValue(row);
+                    if (!Double.isNaN(v)) percentSums[percentGroups.group(row)][i] += v;
                 }
             }
-            // Add the current row to that group, with the relevant 'sums' for percentages
-            value.rows.add(row);
         }
 
+        // Simple measures are accumulated for all groups at once; the rest need each group's values
+        MeasureAccumulator[] accumulators = new MeasureAccumulator[measures.size()];
+        boolean needsGroupValues = false, needsFitGroups = false;
+        for (int i = 0; i < accumulators.length; i++) {
+            MeasureField m = measures.get(i);
+            accumulators[i] = MeasureAccumulator.make(m, groups);
+            if (accumulators[i] == null) needsGroupValues = true;
+            if (m.method.equals("fit") || m.method.equals("smooth")) needsFitGroups = true;
+        }
+
+        // Fits are made for groups of all the dimensions except the percent bases, which are the 'X' values
+        GroupIndex fitGroups = needsFitGroups ? new GroupIndex(getFitGroupFields(dimensionFields), rowCount) : null;
+
         Object[][] dimData = new Object[dimensions.size()][groupCount];
         Object[][] measureData = new Object[measures.size()][groupCount];
 
+        accumulateGroups(accumulators, measureData, groups, percentGroups, percentSums, rowCount);
+
         for (int g = 0; g < groupCount; g++) {
-            SummaryValues values = summaries[g];
-            int originalRow = values.firstRow();
+            int originalRow = groups.firstRow(g);
+            double[] groupPercentSums = percentNeeded ? percentSums[percentGroups.group(originalRow)] : null;
+            SummaryValues values = null;
+            if (needsGroupValues) {
+                values = new SummaryValues(measureFields, percentBaseFields, fitGroups, groups.rows(g));
+                values.percentSums = groupPercentSums;
+            }
             // Set the dimension values
             for (int i = 0; i < dimensions.size(); i++)
                 dimData[i][g] = dimensionFields[i].value(originalRow);
             // Set the measure values
-            for (int i = 0; i < measures.size(); i++) {
-                MeasureField m = measures.get(i);
-                measureData[i][g] = values.get(i, m);
-            }
+            for (int i = 0; i < measures.size(); i++)
+                if (accumulators[i] == null) measureData[i][g] = values.get(i, measures.get(i));
         }
 
         // Assemble fields
@@ -195,6 +196,30 @@ public class Summarize extends DataOperation {
         return fields;
     }
 
+    /* Each group's accumulated values are independent, so in Java ranges of groups are calculated in parallel */
+    @JSTranslation(js = "$$CLASS$$.accumulateRange(accumulators, measureData, groups, percentGroups, percentSums, 0, groups.groupCount);")
+    private static void accumulateGroups(final MeasureAccumulator[] accumulators, final Object[][] measureData,
+                                         final GroupIndex groups, final GroupIndex percentGroups,
+                                         final double[][] percentSums, int rowCount) {
+        int G = groups.groupCount;
+        int parts = Math.max(1, Math.min(Parallel.partitions(rowCount), G));
+        Parallel.forEachRange(parts, G, new Parallel.RangeTask() {
+            public void run(int part, int start, int end) {
+                accumulateRange(accumulators, measureData, groups, percentGroups, percentSums, start, end);
+            }
+        });
+    }
+
+    static void accumulateRange(MeasureAccumulator[] accumulators, Object[][] measureData, GroupIndex groups,
+                                GroupIndex percentGroups, double[][] percentSums, int start, int end) {
+        for (int g = start; g < end; g++) {
+            double[] groupPercentSums = percentSums == null ? null : percentSums[percentGroups.group(groups.firstRow(g))];
+            for (int i = 0; i < accumulators.length; i++)
+                if (accumulators[i] != null)
+                    measureData[i][g] = accumulators[i].get(g, groupPercentSums == null ? 0 : groupPercentSums[i]);
+        }
+    }
+
     private void setProperties(String f, Field to, Field src) {
         // Nothing to set for a list
         if (f.equals("list")) {
@@ -209,23 +234,17 @@ public class Summarize extends DataOperation {
             Fields.copyBaseProperties(src, to);
     }
 
+    private Field[] getFitGroupFields(Field[] dimensionFields) {
+        List<Field> result = new ArrayList<>();
+        for (Field f : dimensionFields)
+            if (!percentBase.contains(f)) result.add(f);
+        return result.toArray(new Field[result.size()]);
+    }
+
     private Field[] getFields(List<? extends DimensionField> list) {
         Field[] result = new Field[list.size()];
         for (int i = 0; i < result.length; i++) result[i] = list.get(i).field;
         return result;
     }
 
-    private int buildGroups(int[] group, FieldRowComparison dimComparison) {
-        if (dimComparison.isEmpty()) return 1;
-        int[] order = dimComparison.makeSortedOrder();
-        int currentGroup = 0;
-        for (int i = 0; i < group.length; i++) {
-            // If the comparison indicates the dimensions are different, move to a new group
-            if (i > 0 && dimComparison.compare(order[i], order[i - 1]) != 0)
-                currentGroup++;
-            group[order[i]] = currentGroup;
-        }
-        return currentGroup + 1;
-    }
-
 }
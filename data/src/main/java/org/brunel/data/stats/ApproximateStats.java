@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.stats;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Calculates order and count statistics from sketches instead of exact passes over the data.
+ * This is opt-in: it is used for a field marked with the "approximate" property (see use(Dataset)), for any field
+ * with at least the threshold number of rows (by default, no field is large enough) or when sketches have been
+ * stored for a field, as when data is loaded in partitions.
+ *
+ * The quantiles (median, q1, q3) are estimated by a QuantileSketch, whose rank error is about 1.7% at worst.
+ * The counts (n, valid, unique) use a DistinctSketch; n and valid are exact, and unique is within about 5%.
+ * Fields stored as dictionaries are always counted exactly, as that is cheap. Asking for the categories or their
+ * counts needs an exact pass, which replaces the approximate unique count with the exact one.
+ */
+@JSTranslation(ignore = true)
+public class ApproximateStats {
+
+    public static final String PROPERTY = "approximate";
+    public static final String QUANTILE_SKETCH = "quantileSketch";
+    public static final String DISTINCT_SKETCH = "distinctSketch";
+
+    private static int rowThreshold = Integer.MAX_VALUE;
+
+    /**
+     * Fields with at least this many rows use approximate statistics
+     *
+     * @param rows number of rows; Integer.MAX_VALUE turns this off
+     */
+    public static void setRowThreshold(int rows) {
+        rowThreshold = rows;
+    }
+
+    /**
+     * Use approximate statistics for all fields of a data set.
+     * Fields derived from these by filtering or sorting keep the setting
+     *
+     * @param data data set to modify
+     */
+    public static void use(Dataset data) {
+        for (Field f : data.fields) f.set(PROPERTY, true);
+    }
+
+    /**
+     * Store sketches for a field, typically made by merging sketches built for each partition of the data.
+     * The sketches must summarize exactly the rows of the field
+     *
+     * @param f         target field
+     * @param quantiles sketch of the numeric values (may be null)
+     * @param distinct  sketch of the values (may be null)
+     */
+    public static void store(Field f, QuantileSketch quantiles, DistinctSketch distinct) {
+        if (quantiles != null) f.set(QUANTILE_SKETCH, quantiles);
+        if (distinct != null) f.set(DISTINCT_SKETCH, distinct);
+    }
+
+    /**
+     * Whether approximate statistics should be used for a field
+     *
+     * @param f field to test
+     * @return true if approximations should be used
+     */
+    public static boolean applies(Field f) {
+        return f.isProperty(PROPERTY) || f.rowCount() >= rowThreshold
+                || f.property(QUANTILE_SKETCH) != null || f.property(DISTINCT_SKETCH) != null;
+    }
+
+    /**
+     * Set the median and quartiles from a quantile sketch, if approximate statistics apply
+     *
+     * @param f field to calculate for
+     * @return true if the statistics were set, false if they should be calculated exactly
+     */
+    public static boolean populateQuantiles(Field f) {
+        if (!applies(f)) return false;
+        QuantileSketch sketch = quantileSketch(f);
+        if (sketch.count() == 0) return true;
+        f.set("median", sketch.quantile(0.5));
+        f.set("q1", sketch.quantile(0.25));
+        f.set("q3", sketch.quantile(0.75));
+        return true;
+    }
+
+    /**
+     * Set the counts from a distinct value sketch, if approximate statistics apply
+     *
+     * @param f field to calculate for
+     * @return true if the statistics were set, false if they should be calculated exactly
+     */
+    public static boolean populateCounts(Field f) {
+        if (f.dictionary() != null || !applies(f)) return false;
+        DistinctSketch sketch = distinctSketch(f);
+        f.set("n", f.rowCount());
+        f.set("valid", (int) sketch.count());
+        f.set("unique", (int) sketch.estimate());
+        return true;
+    }
+
+    /**
+     * The quantile sketch for a field, built and stored if needed
+     *
+     * @param f field to sketch
+     * @return sketch of the numeric values of the field
+     */
+    public static QuantileSketch quantileSketch(Field f) {
+        QuantileSketch sketch = (QuantileSketch) f.property(QUANTILE_SKETCH);
+        if (sketch == null) {
+            sketch = new QuantileSketch();
+            int n = f.rowCount();
+            for (int i = 0; i < n; i++) sketch.add(f.numericValue(i));
+            f.set(QUANTILE_SKETCH, sketch);
+        }
+        return sketch;
+    }
+
+    /**
+     * The distinct value sketch for a field, built and stored if needed
+     *
+     * @param f field to sketch
+     * @return sketch of the values of the field
+     */
+    public static DistinctSketch distinctSketch(Field f) {
+        DistinctSketch sketch = (DistinctSketch) f.property(DISTINCT_SKETCH);
+        if (sketch == null) {
+            sketch = new DistinctSketch();
+            int n = f.rowCount();
+            for (int i = 0; i < n; i++) sketch.add(f.value(i));
+            f.set(DISTINCT_SKETCH, sketch);
+        }
+        return sketch;
+    }
+}
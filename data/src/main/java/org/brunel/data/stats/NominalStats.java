@@ -18,16 +18,25 @@ package org.brunel.data.stats;
 
 import org.brunel.data.Field;
 import org.brunel.data.util.MapInt;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class NominalStats {
 
     public static void populate(Field f) {
-        MapInt counts = new MapInt();
-        int N = f.rowCount();
+        DictionaryProvider dictionary = f.dictionary();
+        if (dictionary != null) {
+            populateFromDictionary(f, dictionary);
+            return;
+        }
 
-        // Create map of counts
-        for (int i = 0; i < N; i++)
-            counts.increment(f.value(i));
+        MapInt counts = f.countValues();
+        int N = f.rowCount();
 
         f.set("n", N);
         f.set("unique", counts.size());
@@ -51,6 +60,75 @@ public class NominalStats {
         f.set("categoryCounts", counts.getCounts(naturalOrder));
     }
 
+    /*
+     * Count the codes directly; the dictionary is sorted, so it is already in natural order
+     */
+    private static void populateFromDictionary(Field f, DictionaryProvider dictionary) {
+        int[] codeCounts = dictionary.countCodes();
+        int k = dictionary.dictionarySize();
+        int N = f.rowCount();
+
+        List<Object> present = new ArrayList<>();
+        List<Integer> presentCounts = new ArrayList<>();
+        int maxCount = 0;
+        for (int i = 0; i < k; i++)
+            if (codeCounts[i] > 0) {
+                present.add(dictionary.dictionaryValue(i));
+                presentCounts.add(codeCounts[i]);
+                maxCount = Math.max(maxCount, codeCounts[i]);
+            }
+
+        // The mode is the middle of the sorted list of modes
+        List<Object> modes = new ArrayList<>();
+        for (int i = 0; i < present.size(); i++)
+            if (presentCounts.get(i) == maxCount) modes.add(present.get(i));
+
+        f.set("n", N);
+        f.set("unique", present.size());
+        f.set("valid", N - codeCounts[k]);
+        f.set("mode", modes.isEmpty() ? null : modes.get((modes.size() - 1) >> 1));
+
+        Object[] naturalOrder;
+        if (f.isProperty("categoriesOrdered")) {
+            naturalOrder = f.categories();
+        } else if (f.name.equals("#selection")) {
+            naturalOrder = new Object[]{Field.VAL_UNSELECTED, Field.VAL_SELECTED};
+            f.set("categories", naturalOrder);
+        } else {
+            naturalOrder = present.toArray(new Object[present.size()]);
+            f.set("categories", naturalOrder);
+            int[] categoryCounts = new int[naturalOrder.length];
+            for (int i = 0; i < categoryCounts.length; i++) categoryCounts[i] = presentCounts.get(i);
+            f.set("categoryCounts", categoryCounts);
+            return;
+        }
+
+        // Categories are defined elsewhere, so look each up in the dictionary
+        Map<Object, Integer> codes = new HashMap<>();
+        for (int i = 0; i < k; i++) codes.put(dictionary.dictionaryValue(i), i);
+        int[] categoryCounts = new int[naturalOrder.length];
+        for (int i = 0; i < categoryCounts.length; i++) {
+            Integer code = codes.get(naturalOrder[i]);
+            categoryCounts[i] = code == null ? 0 : codeCounts[code];
+        }
+        f.set("categoryCounts", categoryCounts);
+    }
+
+    /**
+     * Set just the counts (n, valid, unique) if approximate statistics apply to this field
+     *
+     * @param f field to calculate for
+     * @return true if the counts were set, false if the full statistics are needed
+     */
+    @JSTranslation(js = "return false;")
+    public static boolean populateCounts(Field f) {
+        return ApproximateStats.populateCounts(f);
+    }
+
+    public static boolean createsCount(String key) {
+        return "n".equals(key) || "unique".equals(key) || "valid".equals(key);
+    }
+
     public static boolean creates(String key) {
         return "n".equals(key) || "mode".equals(key) || "unique".equals(key) || "valid".equals(key)
                 || "categories".equals(key) || "categoryCounts".equals(key);
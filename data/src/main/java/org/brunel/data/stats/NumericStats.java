@@ -19,56 +19,81 @@ package org.brunel.data.stats;
 import org.brunel.data.Data;
 import org.brunel.data.Field;
 import org.brunel.data.util.Range;
+import org.brunel.translator.JSTranslation;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
+/**
+ * Numeric statistics are calculated in three tiers, so a field only pays for the statistics that are asked for:
+ * a single pass for the count, range and moments; selection for the median and quartiles; and a sort for the
+ * granularity (the smallest gap between values)
+ */
 public class NumericStats {
 
+    /**
+     * Calculate the count, range and moments in a single pass
+     *
+     * @param f field to calculate for
+     */
     public static void populate(Field f) {
-        int n = f.rowCount();
+        double[] data = f.hasPrimitiveData() ? null : objectData(f);
+        int rows = data == null ? f.rowCount() : data.length;
 
-        // Extract valid numeric data
-        List<Double> valid = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            Object item = f.value(i);
-            if (item != null) {
-                if (item instanceof Range) {
-                    Object low = ((Range) item).low;
-                    Object high = ((Range) item).high;
-                    valid.add(Data.asNumeric(low));
-                    valid.add(Data.asNumeric(high));
-                } else {
-                    Double d = Data.asNumeric(item);
-                    if (d != null) valid.add(d);
-                }
+        // Running central moments, updated one value at a time
+        int n = 0;
+        double mean = 0, s2 = 0, s3 = 0, s4 = 0;
+        double min = 0, max = 0;
+        for (int i = 0; i < rows; i++) {
+            double x = data == null ? f.numericValue(i) : data[i];
+            if (Double.isNaN(x)) continue;
+            if (n == 0) {
+                min = x;
+                max = x;
+            } else {
+                min = Math.min(min, x);
+                max = Math.max(max, x);
             }
+            double n1 = n;
+            n++;
+            double nn = n;
+            double delta = x - mean;
+            double dn = delta / nn;
+            double dn2 = dn * dn;
+            double term = delta * dn * n1;
+            mean += dn;
+            s4 += term * dn2 * (nn * nn - 3 * nn + 3) + 6 * dn2 * s2 - 4 * dn * s3;
+            s3 += term * dn * (nn - 2) - 3 * dn * s2;
+            s2 += term;
         }
-        Double[] data = valid.toArray(new Double[valid.size()]);
 
-        n = data.length;
         f.set("validNumeric", n);
 
         // No numeric data -- give up and go home
         if (n == 0) return;
 
-        // Calculate the moments, used for standard statistics
-        double m1 = moment(data, 0, 1, n);
-        double m2 = moment(data, m1, 2, n - 1);
-        double m3 = moment(data, m1, 3, n - 1);
-        double m4 = moment(data, m1, 4, n - 1);
-        f.set("mean", m1);
+        // Moments about the mean, as used for standard statistics
+        double m2 = n > 1 ? s2 / (n - 1) : Double.NaN;
+        double m3 = n > 1 ? s3 / (n - 1) : Double.NaN;
+        double m4 = n > 1 ? s4 / (n - 1) : Double.NaN;
+        f.set("mean", mean);
         f.set("stddev", Math.sqrt(m2));
         f.set("variance", m2);
         f.set("skew", m3 / m2 / Math.sqrt(m2));
         f.set("kurtosis", m4 / m2 / m2 - 3.0);
-
-        Arrays.sort(data);
-        double min = data[0];
-        double max = data[n - 1];
         f.set("min", min);
         f.set("max", max);
+    }
+
+    /**
+     * Calculate the median and quartiles by selection, without sorting the data
+     *
+     * @param f field to calculate for
+     */
+    public static void populateQuantiles(Field f) {
+        if (approximateQuantiles(f)) return;
+        double[] data = validData(f);
+        int n = data.length;
+        if (n == 0) return;
 
         // Order statistics: using the Tukey hinge definition
         f.set("median", av(data, (n - 1) * 0.5));
@@ -81,40 +106,121 @@ public class NumericStats {
             f.set("q1", av(data, (n - 1) * 0.25));
             f.set("q3", av(data, (n - 1) / 2 + (n - 1) * 0.25));
         }
+    }
+
+    /**
+     * Calculate the granularity; the smallest difference between distinct values. This needs sorted data
+     *
+     * @param f field to calculate for
+     */
+    public static void populateGranularity(Field f) {
+        double[] data = validData(f);
+        int n = data.length;
+        if (n == 0) return;
 
-        double minD = max - min;
+        Arrays.sort(data);
+        double max = data[n - 1];
+        double minD = max - data[0];
         if (minD == 0) minD = Math.abs(max);
-        for (int i = 1; i < data.length; i++) {
+        for (int i = 1; i < n; i++) {
             double d = data[i] - data[i - 1];
             if (d > 0) minD = Math.min(minD, d);
         }
         f.set("granularity", minD);
     }
 
+    @JSTranslation(js = "return false;")
+    private static boolean approximateQuantiles(Field f) {
+        return ApproximateStats.populateQuantiles(f);
+    }
+
+    /* Copy of the valid numeric data, which may be reordered */
+    private static double[] validData(Field f) {
+        return f.hasPrimitiveData() ? primitiveData(f) : objectData(f);
+    }
+
+    /* Extract valid data directly from primitive storage */
+    private static double[] primitiveData(Field f) {
+        int n = f.rowCount();
+        double[] data = new double[n];
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            double d = f.numericValue(i);
+            if (!Double.isNaN(d)) data[valid++] = d;
+        }
+        return valid == n ? data : Arrays.copyOf(data, valid);
+    }
+
+    /* Extract valid numeric data from general objects; ranges contribute both their ends */
+    private static double[] objectData(Field f) {
+        int n = f.rowCount();
+        double[] data = new double[n];
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            Object item = f.value(i);
+            if (item instanceof Range) {
+                if (valid + 2 > data.length) data = Arrays.copyOf(data, data.length * 2);
+                data[valid++] = Data.asNumeric(((Range) item).low);
+                data[valid++] = Data.asNumeric(((Range) item).high);
+            } else if (item != null) {
+                Double d = Data.asNumeric(item);
+                if (d != null) data[valid++] = d;
+            }
+        }
+        return valid == data.length ? data : Arrays.copyOf(data, valid);
+    }
+
+    /* The average of the order statistics either side of a fractional index; selection reorders the data */
+    private static double av(double[] v, double index) {
+        return (select(v, (int) Math.floor(index)) + select(v, (int) Math.ceil(index))) / 2.0;
+    }
+
     /*
-     * Calculates the centralized moment where
-     * c is the center,
-     * p is the power to raise to,
-     * N is the total weight (the amount to divide by)
+     * Returns the k'th smallest value, partially reordering the data so that smaller values come before it
+     * and larger ones after it. Uses median of three partitioning, so takes linear time on average
      */
-    private static double moment(Double[] data, double c, int p, double N) {
-        if (N <= 0) return Double.NaN;
-        double sum = 0.0;
-        for (Double element : data)
-            sum += Math.pow(element - c, p);
-        return sum / N;
+    private static double select(double[] a, int k) {
+        int lo = 0, hi = a.length - 1;
+        while (hi > lo + 1) {
+            swap(a, (lo + hi) >> 1, lo + 1);
+            if (a[lo] > a[hi]) swap(a, lo, hi);
+            if (a[lo + 1] > a[hi]) swap(a, lo + 1, hi);
+            if (a[lo] > a[lo + 1]) swap(a, lo, lo + 1);
+            double pivot = a[lo + 1];
+            int i = lo + 2, j = hi - 1;
+            while (true) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (j < i) break;
+                swap(a, i++, j--);
+            }
+            a[lo + 1] = a[j];
+            a[j] = pivot;
+            if (j >= k) hi = j - 1;
+            if (j <= k) lo = i;
+        }
+        if (hi == lo + 1 && a[hi] < a[lo]) swap(a, lo, hi);
+        return a[k];
     }
 
-    private static double av(Double[] v, double index) {
-        return (v[(int) Math.floor(index)] + v[(int) Math.ceil(index)]) / 2.0;
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
     }
 
     public static boolean creates(String key) {
         return "validNumeric".equals(key) || "mean".equals(key)
                 || "stddev".equals(key) || "variance".equals(key)
                 || "skew".equals(key) || "kurtosis".equals(key)
-                || "min".equals(key) || "max".equals(key)
-                || "q1".equals(key) || "q3".equals(key)
-                || "median".equals(key) || "granularity".equals(key);
+                || "min".equals(key) || "max".equals(key);
+    }
+
+    public static boolean createsQuantile(String key) {
+        return "q1".equals(key) || "q3".equals(key) || "median".equals(key);
+    }
+
+    public static boolean createsGranularity(String key) {
+        return "granularity".equals(key);
     }
 }
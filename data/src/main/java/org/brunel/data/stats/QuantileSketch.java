@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.stats;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A mergeable sketch for approximate quantiles of a stream of numbers (a KLL sketch).
+ * Values are held in levels; an item at level h stands for 2^h of the original values. When a level is full it is
+ * sorted and every other item is promoted to the next level, so memory stays at about 3k items however many values
+ * are added. With the default k = 200 the rank of a returned quantile is within about 1.7% of the requested rank
+ * with 99% confidence, and is usually much closer. The minimum and maximum are kept exactly.
+ * Compaction choices use a fixed seed, so the same values in the same order always give the same sketch.
+ */
+@JSTranslation(ignore = true)
+public class QuantileSketch {
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;     // Lower levels are smaller by this factor
+
+    private final int k;                                        // Capacity of the top level
+    private double[][] levels = new double[1][];                // Items at each level
+    private int[] sizes = new int[1];                           // Number of items used at each level
+    private int retained;                                       // Total items held
+    private int capacity;                                       // Total items allowed before compacting
+    private long count;                                         // Number of values added
+    private double min = Double.NaN, max = Double.NaN;
+    private long seed = 0x2545F4914F6CDD1DL;                     // State for choosing which items to keep
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    /**
+     * @param k accuracy parameter; rank error falls in proportion to 1/k, and memory grows in proportion to k
+     */
+    public QuantileSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("Sketch size must be at least 8");
+        this.k = k;
+        levels[0] = new double[levelCapacity(0)];
+        capacity = totalCapacity();
+    }
+
+    /**
+     * Add a value. NaN values are ignored
+     *
+     * @param value value to add
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+        append(0, value);
+        if (retained >= capacity) compress();
+    }
+
+    /**
+     * Combine another sketch into this one. The result summarizes the values added to both
+     *
+     * @param other sketch to merge in; it is not changed
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+        while (levels.length < other.levels.length) grow();
+        for (int h = 0; h < other.levels.length; h++)
+            for (int i = 0; i < other.sizes[h]; i++) append(h, other.levels[h][i]);
+        while (retained >= capacity) compress();
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Estimate a quantile
+     *
+     * @param fraction the fraction of values that should lie below the result (0 gives the minimum, 1 the maximum)
+     * @return estimated quantile, or NaN if the sketch is empty
+     */
+    public double quantile(double fraction) {
+        if (count == 0) return Double.NaN;
+        if (fraction <= 0) return min;
+        if (fraction >= 1) return max;
+
+        // Gather the items with their weights, and order them by value
+        final double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++)
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(values[a], values[b]);
+            }
+        });
+
+        long total = 0;
+        for (long w : weights) total += w;
+        double target = fraction * total;
+        long cumulative = 0;
+        for (Integer i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) return values[i];
+        }
+        return max;
+    }
+
+    private void append(int h, double value) {
+        if (sizes[h] == levels[h].length) levels[h] = Arrays.copyOf(levels[h], Math.max(4, 2 * sizes[h]));
+        levels[h][sizes[h]++] = value;
+        retained++;
+    }
+
+    /* Compact the lowest level that is over its capacity, promoting half its items to the next level */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < levelCapacity(h)) continue;
+            if (h + 1 == levels.length) grow();
+
+            double[] level = levels[h];
+            int n = sizes[h];
+            Arrays.sort(level, 0, n);
+
+            // An odd item out stays at this level, so no weight is lost
+            int pairs = n / 2;
+            int offset = nextBit();
+            for (int i = 0; i < pairs; i++) append(h + 1, level[2 * i + offset]);
+            retained -= 2 * pairs;
+            if (n % 2 == 1) {
+                level[0] = level[n - 1];
+                sizes[h] = 1;
+            } else {
+                sizes[h] = 0;
+            }
+            return;
+        }
+    }
+
+    private void grow() {
+        int height = levels.length + 1;
+        levels = Arrays.copyOf(levels, height);
+        sizes = Arrays.copyOf(sizes, height);
+        levels[height - 1] = new double[4];
+        capacity = totalCapacity();
+    }
+
+    /* Capacities shrink geometrically from the top level (which has capacity k) down to level 0 */
+    private int levelCapacity(int h) {
+        int depth = levels.length - h - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levels.length; h++) total += levelCapacity(h);
+        return total;
+    }
+
+    /* A pseudo-random bit (xorshift) */
+    private int nextBit() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed & 1);
+    }
+}
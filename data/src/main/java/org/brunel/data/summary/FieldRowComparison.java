@@ -16,10 +16,8 @@
 
 package org.brunel.data.summary;
 
-import org.brunel.data.Data;
 import org.brunel.data.Field;
 
-import java.util.Arrays;
 import java.util.Comparator;
 
 /**
@@ -51,11 +49,32 @@ public class FieldRowComparison implements Comparator<Integer> {
         return fields.length == 0;
     }
 
+    /**
+     * Sort the rows. Each field's values are replaced by their ranks, and the ranks combined into a single
+     * key for each row, so the rows are placed using a counting sort on integer keys, without comparing them.
+     * Rows with equal keys stay in their original order, so the result is the same whether or not rows
+     * break ties
+     *
+     * @return rows in sorted order
+     */
     public int[] makeSortedOrder() {
-        int n = fields[0].rowCount();
-        Integer[] items = new Integer[n];
-        for (int i = 0; i < n; i++) items[i] = i;
-        Arrays.sort(items, this);
-        return Data.toPrimitive(items);
+        int N = fields[0].rowCount();
+        int[] keys = new int[N];
+        int keyCount = N == 0 ? 0 : 1;
+        int[] ranks = new int[N];
+        for (int i = 0; i < n; i++) {
+            int k = GroupIndex.rankRows(fields[i], ranks);
+            if (ascending != null && !ascending[i])
+                for (int row = 0; row < N; row++) ranks[row] = k - 1 - ranks[row];
+            keyCount = GroupIndex.combine(keys, keyCount, ranks, k);
+        }
+
+        // Counting sort, stable so that rows with equal keys stay in row order
+        int[] start = new int[keyCount + 1];
+        for (int row = 0; row < N; row++) start[keys[row] + 1]++;
+        for (int i = 0; i < keyCount; i++) start[i + 1] += start[i];
+        int[] order = new int[N];
+        for (int row = 0; row < N; row++) order[start[keys[row]]++] = row;
+        return order;
     }
 }
@@ -35,7 +35,7 @@ public abstract class Fit {
     protected final double mx, my;                          // mean values
 
 
-    public Fit(Field fy, Field fx, List<Integer> rows) {
+    public Fit(Field fy, Field fx, int[] rows) {
         this.fx = fx;
         this.fy = fy;
 
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Field;
+import org.brunel.data.values.DictionaryProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns rows to groups, where a group is a distinct combination of values for a set of fields.
+ * Groups are numbered in the order FieldRowComparison would sort them, but they are found by hashing
+ * values, so only the distinct values of each field are sorted, never the rows themselves.
+ * The rows of each group are also kept, in ascending order.
+ */
+public class GroupIndex {
+
+    public final int groupCount;                    // Number of groups
+    private final int[] rowGroup;                   // The group for each row
+    private final int[] start;                      // Rows for group g are orderedRows[start[g]] ... orderedRows[start[g+1]-1]
+    private final int[] orderedRows;                // Rows ordered by group
+
+    public GroupIndex(Field[] fields, int rowCount) {
+        // Refine the groups one field at a time
+        int[] ids = new int[rowCount];
+        int count = rowCount == 0 ? 0 : 1;
+        int[] ranks = new int[rowCount];
+        for (Field f : fields) {
+            int k = rankRows(f, ranks);
+            count = combine(ids, count, ranks, k);
+        }
+        this.rowGroup = ids;
+        this.groupCount = count;
+
+        // Place the rows into group order (a counting sort)
+        this.start = new int[count + 1];
+        for (int i = 0; i < rowCount; i++) start[ids[i] + 1]++;
+        for (int g = 0; g < count; g++) start[g + 1] += start[g];
+        int[] next = Arrays.copyOf(start, count);
+        this.orderedRows = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) orderedRows[next[ids[i]]++] = i;
+    }
+
+    /**
+     * The group for a row
+     *
+     * @param row row index
+     * @return group index
+     */
+    public int group(int row) {
+        return rowGroup[row];
+    }
+
+    /**
+     * The number of rows in a group
+     *
+     * @param g group index
+     * @return row count
+     */
+    public int size(int g) {
+        return start[g + 1] - start[g];
+    }
+
+    /**
+     * A row within a group
+     *
+     * @param g     group index
+     * @param index index within the group
+     * @return the row
+     */
+    public int row(int g, int index) {
+        return orderedRows[start[g] + index];
+    }
+
+    public int firstRow(int g) {
+        return orderedRows[start[g]];
+    }
+
+    /**
+     * All the rows in a group
+     *
+     * @param g group index
+     * @return the rows in ascending order
+     */
+    public int[] rows(int g) {
+        int[] result = new int[size(g)];
+        for (int i = 0; i < result.length; i++) result[i] = orderedRows[start[g] + i];
+        return result;
+    }
+
+    /*
+     * Set ranks[row] to the rank of the row's value within the sorted distinct values of the field,
+     * with values that compare as equal sharing a rank. Returns the number of ranks
+     */
+    static int rankRows(Field f, int[] ranks) {
+        if (f.hasPrimitiveData() && !f.preferCategorical()) return rankNumbers(f, ranks);
+        int n = ranks.length;
+        int[] ids = new int[n];
+        List<Integer> representatives = new ArrayList<>();
+        DictionaryProvider dictionary = f.dictionary();
+        if (dictionary != null) {
+            // The codes are already distinct values
+            int[] idForCode = new int[dictionary.dictionarySize() + 1];
+            for (int i = 0; i < idForCode.length; i++) idForCode[i] = -1;
+            for (int i = 0; i < n; i++) {
+                int code = dictionary.code(i);
+                if (idForCode[code] < 0) {
+                    idForCode[code] = representatives.size();
+                    representatives.add(i);
+                }
+                ids[i] = idForCode[code];
+            }
+        } else {
+            Map<Object, Integer> index = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                Object value = f.value(i);
+                Integer id = index.get(value);
+                if (id == null) {
+                    id = representatives.size();
+                    index.put(value, id);
+                    representatives.add(i);
+                }
+                ids[i] = id;
+            }
+        }
+
+        // Sort one row for each distinct value, and rank them
+        Integer[] sorted = representatives.toArray(new Integer[representatives.size()]);
+        FieldRowComparison comparison = new FieldRowComparison(new Field[]{f}, null, false);
+        Arrays.sort(sorted, comparison);
+        int[] rankForId = new int[sorted.length];
+        int rank = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && comparison.compare(sorted[i - 1], sorted[i]) != 0) rank++;
+            rankForId[ids[sorted[i]]] = rank;
+        }
+        for (int i = 0; i < n; i++) ranks[i] = rankForId[ids[i]];
+        return sorted.length == 0 ? 0 : rank + 1;
+    }
+
+    /*
+     * Numbers stored as primitives are ranked by sorting a copy of the valid values; missing values rank last
+     */
+    private static int rankNumbers(Field f, int[] ranks) {
+        int n = ranks.length;
+        double[] values = new double[n];
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            double d = f.numericValue(i);
+            if (!Double.isNaN(d)) values[valid++] = d;
+        }
+        double[] distinct = Arrays.copyOf(values, valid);
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < valid; i++)
+            if (i == 0 || distinct[i] != distinct[count - 1]) distinct[count++] = distinct[i];
+        for (int i = 0; i < n; i++) {
+            double d = f.numericValue(i);
+            ranks[i] = Double.isNaN(d) ? count : findNumber(distinct, count, d);
+        }
+        return valid < n ? count + 1 : count;
+    }
+
+    /*
+     * Refine the groups in 'ids' by the ranks of another field, keeping the groups in sorted order.
+     * Returns the new number of groups
+     */
+    static int combine(int[] ids, int groupCount, int[] ranks, int k) {
+        int n = ids.length;
+        if ((double) groupCount * k <= 4.0 * n + 1024) {
+            // Few enough combinations that we can mark them in a table and number them in order
+            int[] table = new int[groupCount * k];
+            for (int i = 0; i < n; i++) table[ids[i] * k + ranks[i]] = 1;
+            int count = 0;
+            for (int i = 0; i < table.length; i++)
+                if (table[i] != 0) table[i] = ++count;
+            for (int i = 0; i < n; i++) ids[i] = table[ids[i] * k + ranks[i]] - 1;
+            return count;
+        }
+
+        // Otherwise sort the combined keys and find each in the distinct ones
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) keys[i] = (long) ids[i] * k + ranks[i];
+        long[] distinct = Arrays.copyOf(keys, n);
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < n; i++)
+            if (i == 0 || distinct[i] != distinct[count - 1]) distinct[count++] = distinct[i];
+        for (int i = 0; i < n; i++) ids[i] = find(distinct, count, keys[i]);
+        return count;
+    }
+
+    /* Binary search for the key, which must be present in the first 'count' items */
+    private static int find(long[] values, int count, long key) {
+        int low = 0, high = count - 1;
+        while (low < high) {
+            int mid = (low + high) >> 1;
+            if (values[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /* Binary search for the number, which must be present in the first 'count' items */
+    private static int findNumber(double[] values, int count, double key) {
+        int low = 0, high = count - 1;
+        while (low < high) {
+            int mid = (low + high) >> 1;
+            if (values[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
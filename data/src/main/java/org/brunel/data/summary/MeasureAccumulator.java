@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.DateFormat;
+import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calculates a measure for every group in a single pass through the data, keeping running values for each
+ * group in primitive arrays. Order statistics are found by selection within each group's values.
+ * Only the simpler measures are handled; others are calculated by SummaryValues.
+ * The results are the same as the field properties calculated for each group's data.
+ * Once made, the values for different groups may be found concurrently.
+ */
+public class MeasureAccumulator {
+
+    /**
+     * Create an accumulator for the measure, if it can be handled
+     *
+     * @param m      measure to calculate
+     * @param groups the groups to calculate for
+     * @return the accumulator, or null if the measure must be calculated some other way
+     */
+    public static MeasureAccumulator make(MeasureField m, GroupIndex groups) {
+        String method = m.method;
+        if (method.equals("count")) return new MeasureAccumulator(m, groups);
+        if (m.field == null || hasRanges(m.field)) return null;
+        if (method.equals("valid") || method.equals("unique") || method.equals("sum") || method.equals("mean")
+                || method.equals("min") || method.equals("max") || method.equals("range")
+                || method.equals("median") || method.equals("q1") || method.equals("q3")
+                || method.equals("iqr") || method.equals("percent"))
+            return new MeasureAccumulator(m, groups);
+        return null;
+    }
+
+    /* Ranges contribute both ends to numeric statistics, so are left to the general calculation */
+    private static boolean hasRanges(Field f) {
+        if (f.hasPrimitiveData()) return false;
+        DictionaryProvider dictionary = f.dictionary();
+        if (dictionary != null) {
+            for (int i = 0; i < dictionary.dictionarySize(); i++)
+                if (dictionary.dictionaryValue(i) instanceof Range) return true;
+            return false;
+        }
+        for (int i = 0; i < f.rowCount(); i++)
+            if (f.value(i) instanceof Range) return true;
+        return false;
+    }
+
+    private final MeasureField measure;
+    private final GroupIndex groups;
+    private final int[] valid;                  // Count of non-null values per group
+    private final int[] validNumeric;           // Count of numeric values per group
+    private final double[] sum;                 // Sum of numeric values per group
+    private final double[] min;                 // Minimum numeric value per group
+    private final double[] max;                 // Maximum numeric value per group
+    private final int[] unique;                 // Number of distinct values per group
+    private final double[] values;              // Numeric value for each row (NaN when not numeric)
+    private final DateFormat dateFormat;        // Format for ranges of dates
+    private final double overallTotal;          // Total for percentages of the whole data
+
+    private MeasureAccumulator(MeasureField m, GroupIndex groups) {
+        this.measure = m;
+        this.groups = groups;
+        int G = groups.groupCount;
+        if (m.method.equals("count")) {
+            valid = null;
+            validNumeric = null;
+            sum = null;
+            min = null;
+            max = null;
+            unique = null;
+            values = null;
+            dateFormat = null;
+            overallTotal = 0;
+            return;
+        }
+
+        // Looked up now, so that values for groups can be calculated without changing the field
+        dateFormat = m.getDateFormat();
+        Double mean = "percent".equals(m.method) && "overall".equals(m.option) ? m.field.numProperty("mean") : null;
+        overallTotal = mean == null ? 0 : m.field.valid() * mean;
+
+        valid = new int[G];
+        validNumeric = new int[G];
+        sum = new double[G];
+        min = new double[G];
+        max = new double[G];
+
+        Field f = m.field;
+        int n = f.rowCount();
+        values = new double[n];
+        int[] ids = new int[n];
+        DictionaryProvider dictionary = f.dictionary();
+        if (dictionary != null) {
+            // Convert each dictionary value only once
+            int k = dictionary.dictionarySize();
+            double[] numeric = new double[k + 1];
+            for (int i = 0; i < k; i++) numeric[i] = asNumeric(dictionary.dictionaryValue(i));
+            numeric[k] = Double.NaN;
+            for (int i = 0; i < n; i++) {
+                int code = dictionary.code(i);
+                ids[i] = code == k ? -1 : code;
+                values[i] = numeric[code];
+            }
+        } else if (f.hasPrimitiveData()) {
+            for (int i = 0; i < n; i++) {
+                values[i] = f.numericValue(i);
+                ids[i] = Double.isNaN(values[i]) ? -1 : 0;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                Object o = f.value(i);
+                ids[i] = o == null ? -1 : 0;
+                values[i] = asNumeric(o);
+            }
+        }
+
+        // The single pass through the data
+        for (int i = 0; i < n; i++) {
+            int g = groups.group(i);
+            if (ids[i] >= 0) valid[g]++;
+            double v = values[i];
+            if (Double.isNaN(v)) continue;
+            if (validNumeric[g] == 0) {
+                min[g] = v;
+                max[g] = v;
+            } else {
+                min[g] = Math.min(min[g], v);
+                max[g] = Math.max(max[g], v);
+            }
+            validNumeric[g]++;
+            sum[g] += v;
+        }
+
+        unique = m.method.equals("unique") ? countUnique(f, dictionary, ids, groups) : null;
+    }
+
+    /**
+     * The value of the measure for a group
+     *
+     * @param g          group index
+     * @param percentSum total for the percentage base of this group (only used for percentages)
+     * @return the summary value
+     */
+    public Object get(int g, double percentSum) {
+        String method = measure.method;
+        if (method.equals("count")) return groups.size(g);
+        if (method.equals("valid")) return valid[g];
+        if (method.equals("unique")) return unique[g];
+
+        int n = validNumeric[g];
+        if (n == 0) return null;
+        double mean = sum[g] / n;
+        if (method.equals("mean")) return mean;
+        if (method.equals("sum")) return mean * valid[g];
+        if (method.equals("percent")) {
+            double total = "overall".equals(measure.option) ? overallTotal : percentSum;
+            return total > 0 ? 100 * mean * valid[g] / total : null;
+        }
+        if (method.equals("min")) return min[g];
+        if (method.equals("max")) return max[g];
+        if (method.equals("range")) return Range.make(min[g], max[g], dateFormat);
+
+        // Order statistics: using the Tukey hinge definition, as for field statistics
+        double[] data = new double[n];
+        int at = 0;
+        for (int i = 0; i < groups.size(g); i++) {
+            double v = values[groups.row(g, i)];
+            if (!Double.isNaN(v)) data[at++] = v;
+        }
+        if (method.equals("median")) return av(data, (n - 1) * 0.5);
+        double q1, q3;
+        if (n % 2 == 0) {
+            // Even data, include the median in upper and lower
+            q1 = av(data, ((n >> 1) - 1) * 0.5);
+            q3 = av(data, (n >> 1) + ((n >> 1) - 1) * 0.5);
+        } else {
+            // Odd data, do not include the median in upper and lower
+            q1 = av(data, (n - 1) * 0.25);
+            q3 = av(data, ((n - 1) >> 1) + (n - 1) * 0.25);
+        }
+        if (method.equals("q1")) return q1;
+        if (method.equals("q3")) return q3;
+        return Range.make(q1, q3, dateFormat);
+    }
+
+    private static double asNumeric(Object o) {
+        Double d = Data.asNumeric(o);
+        return d == null ? Double.NaN : d;
+    }
+
+    /* Count distinct non-null values within each group */
+    private static int[] countUnique(Field f, DictionaryProvider dictionary, int[] ids, GroupIndex groups) {
+        int n = ids.length;
+        int distinct;
+        if (dictionary != null) {
+            distinct = dictionary.dictionarySize();
+        } else {
+            // Give each distinct value its own id
+            Map<Object, Integer> index = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (ids[i] < 0) continue;
+                Object value = f.value(i);
+                Integer id = index.get(value);
+                if (id == null) {
+                    id = index.size();
+                    index.put(value, id);
+                }
+                ids[i] = id;
+            }
+            distinct = index.size();
+        }
+
+        // Visit each group's rows, marking the values we have seen with the group
+        int[] result = new int[groups.groupCount];
+        int[] seenIn = new int[distinct];
+        for (int i = 0; i < distinct; i++) seenIn[i] = -1;
+        for (int g = 0; g < result.length; g++)
+            for (int i = 0; i < groups.size(g); i++) {
+                int id = ids[groups.row(g, i)];
+                if (id >= 0 && seenIn[id] != g) {
+                    seenIn[id] = g;
+                    result[g]++;
+                }
+            }
+        return result;
+    }
+
+    /* The average of the values at the floor and ceiling of the index, as if the data were sorted */
+    private static double av(double[] data, double index) {
+        int lo = (int) Math.floor(index);
+        int hi = (int) Math.ceil(index);
+        double a = select(data, lo);
+        double b = hi == lo ? a : select(data, hi);
+        return (a + b) / 2.0;
+    }
+
+    /* Find the k-th smallest item by partial partitioning; the data is reordered in place */
+    private static double select(double[] a, int k) {
+        int lo = 0, hi = a.length - 1;
+        while (hi > lo) {
+            double pivot = a[(lo + hi) >> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return a[k];
+        }
+        return a[k];
+    }
+}
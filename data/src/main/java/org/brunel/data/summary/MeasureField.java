@@ -17,10 +17,8 @@
 package org.brunel.data.summary;
 
 import org.brunel.data.Field;
-import org.brunel.data.modify.Transform;
 import org.brunel.translator.JSTranslation;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,7 +26,7 @@ public class MeasureField extends DimensionField {
 
     public final String method;                                // Defines the function
     public String option;                                               // Option for it
-    public final Map<String, Fit> fits = new HashMap<>();    // Per-group fits
+    public final Map<Integer, Fit> fits = new HashMap<>();   // Per-group fits
 
     public MeasureField(Field field, String rename, String measureFunction) {
         super(field, rename == null && field == null ? measureFunction : rename);
@@ -43,23 +41,21 @@ public class MeasureField extends DimensionField {
     /**
      * Find the fit function for the given group
      *
-     * @param groupFields fields used to define g
-     * @param index       the row to find the group fit for
+     * @param group the index of the group the fit is for
      * @return defined fit (or null if none yet created)
      */
-    public Fit getFit(ArrayList<Field> groupFields, int index) {
-        return this.fits.get(Transform.makeKey(groupFields, index));
+    public Fit getFit(int group) {
+        return this.fits.get(group);
     }
 
     /**
      * Define the fit function for the given group
      *
-     * @param groupFields fields used to define g
-     * @param index       the row to find the group fit for
-     * @param fit         the fit to use for this group
+     * @param group the index of the group the fit is for
+     * @param fit   the fit to use for this group
      */
-    public void setFit(ArrayList<Field> groupFields, int index, Fit fit) {
-        this.fits.put(Transform.makeKey(groupFields, index), fit);
+    public void setFit(int group, Fit fit) {
+        this.fits.put(group, fit);
     }
 
     public boolean isPercent() {
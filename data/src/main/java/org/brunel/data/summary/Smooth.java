@@ -19,15 +19,14 @@ package org.brunel.data.summary;
 import org.brunel.data.Field;
 import org.brunel.data.auto.Auto;
 
-import java.util.List;
-
 /**
  * Calculates a smooth fit function
  */
 public class Smooth extends Fit {
     private final double window;                              // Window width for the data
+    private int windowLow, windowHigh;                        // Data indices of the last window used
 
-    public Smooth(Field y, Field x, Double windowPercent, List<Integer> rows) {
+    public Smooth(Field y, Field x, Double windowPercent, int[] rows) {
         super(y, x, rows);
         this.window = getWindowWidth(x, windowPercent);
     }
@@ -58,8 +57,18 @@ public class Smooth extends Fit {
     }
 
     private double eval(double at, double h) {
-        int low = search(at - h, x);                   // low end of window
-        int high = search(at + h, x);                  // high end of window
+        if (x.length == 0) return my;
+
+        // Slide the window from where it was last time; successive values are usually close together
+        int low = windowLow, high = windowHigh;
+        while (low > 0 && x[low - 1] > at - h) low--;                  // first point inside the window
+        while (low < x.length && x[low] <= at - h) low++;
+        while (high < x.length - 1 && x[high + 1] < at + h) high++;    // last point inside the window
+        while (high >= 0 && x[high] >= at + h) high--;
+        if (h == window) {
+            windowLow = low;
+            windowHigh = Math.max(high, 0);
+        }
 
         double sy = 0, sw = 0;
         for (int i = low; i <= high; i++) {
@@ -75,20 +84,4 @@ public class Smooth extends Fit {
         if (sw < 1e-4) return h < window * 10 ? eval(at, h * 2) : my;
         return sy / sw;
     }
-
-    private int search(double at, double[] x) {
-        // Binary search to find close point
-        // constraint: x[p] <= at <= x[q]
-        int p = 0;
-        int q = x.length - 1;
-        while (q - p > 1) {
-            int t = p + q >> 1;
-            if (x[t] <= at) p = t;
-            if (x[t] >= at) q = t;
-        }
-        // make p and q point to the ends of a run of similar values
-        while (p > 0 && x[p - 1] == at) p--;
-        while (q < x.length - 1 && x[q + 1] == at) q++;
-        return (p + q) >> 1;
-    }
 }
@@ -21,31 +21,22 @@ import org.brunel.data.Fields;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.Range;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public final class SummaryValues {
     private final Field[] fields;                                   // the fields we use
     private final Field[] xFields;                                  // the fields to use as 'X' values
-    public final List<Integer> rows = new ArrayList<>();     // Which data rows have been aggregated into this
-    private final ArrayList<Field> groupFields;                     // Fields that group results
+    private final int[] rows;                                       // Which data rows have been aggregated into this
+    private final GroupIndex fitGroups;                             // Groups for fits (all dimensions except 'X')
     public double[] percentSums;
 
-    public SummaryValues(Field[] fields, Field[] xFields, Field[] allDimensions) {
+    public SummaryValues(Field[] fields, Field[] xFields, GroupIndex fitGroups, int[] rows) {
         this.fields = fields;
         this.xFields = xFields;
-
-        // Create an array of fields that group the results
-        this.groupFields = new ArrayList<>();
-        for (Field f : allDimensions) {
-            boolean isGroup = true;
-            for (Field x : xFields) if (x == f) isGroup = false;
-            if (isGroup) groupFields.add(f);
-        }
+        this.fitGroups = fitGroups;
+        this.rows = rows;
     }
 
     public int firstRow() {
-        return rows.get(0);
+        return rows[0];
     }
 
     /**
@@ -57,32 +48,34 @@ public final class SummaryValues {
      */
     public Object get(int fieldIndex, MeasureField m) {
         String summary = m.method;
-        if (summary.equals("count")) return rows.size();
+        if (summary.equals("count")) return rows.length;
         Field x = xFields.length == 0 ? null : xFields[xFields.length - 1];   // Innermost is the one
-        int index = rows.get(0);
+        int index = rows[0];
 
         if (summary.equals("fit")) {
-            Fit fit = m.getFit(groupFields, index);
-            if (fit == null) fit = new Regression(m.field, x, validForGroup(index));
-            m.setFit(groupFields, index, fit);
+            int group = fitGroups.group(index);
+            Fit fit = m.getFit(group);
+            if (fit == null) fit = new Regression(m.field, x, fitGroups.rows(group));
+            m.setFit(group, fit);
             return fit.get(x.value(index));
         }
 
         if (summary.equals("smooth")) {
-            Fit fit = m.getFit(groupFields, index);
+            int group = fitGroups.group(index);
+            Fit fit = m.getFit(group);
             if (fit == null) {
                 Double windowPercent = null;
                 if (m.option != null)
                     windowPercent = Double.parseDouble(m.option);
-                fit = new Smooth(m.field, x, windowPercent, validForGroup(index));
+                fit = new Smooth(m.field, x, windowPercent, fitGroups.rows(group));
             }
-            m.setFit(groupFields, index, fit);
-            return fit.get(x.value(rows.get(0)));
+            m.setFit(group, fit);
+            return fit.get(x.value(index));
         }
 
-        Object[] data = new Object[rows.size()];
+        Object[] data = new Object[rows.length];
         for (int i = 0; i < data.length; i++)
-            data[i] = fields[fieldIndex].value(rows.get(i));
+            data[i] = fields[fieldIndex].value(rows[i]);
 
         Field f = Fields.makeColumnField("temp", null, data);
 
@@ -120,15 +113,4 @@ public final class SummaryValues {
         return Range.make(f.numProperty(a), f.numProperty(b), m.getDateFormat());
     }
 
-    private List<Integer> validForGroup(int index) {
-        ArrayList<Integer> list = new ArrayList<>();
-        int n = fields[0].rowCount();
-        for (int i = 0; i < n; i++) {
-            boolean valid = true;
-            for (Field f : groupFields) if (f.compareRows(index, i) != 0) valid = false;
-            if (valid) list.add(i);
-        }
-        return list;
-    }
-
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.util;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Parses values as dates, giving milliseconds since the epoch (UTC).
+ * A parser made for a column chooses the format that matches most of a sample of the column's values, and tries
+ * that format first for every value, only trying the others in turn for values it does not match.
+ * It also remembers the times for the text it has parsed, as date columns usually repeat values.
+ * The formats a parser uses are its own copies, so each thread (or column) must use its own parser.
+ */
+@JSTranslation(ignore = true)
+public class DateParser {
+
+    public static final long MISSING = Long.MIN_VALUE;          // The time for a value that is not a date
+
+    private static final int SAMPLE_SIZE = 50;                  // Values to examine when choosing a format
+    private static final int MAX_CACHED = 1000;                 // Text values remembered by a column parser
+
+    // The formats we try, in order. Parsing is lenient, and only needs to match the start of the text
+    private static final String[] PATTERNS = {
+            "y-M-d'T'H:m:s.SSS", "y-M-d'T'H:m:s", "y-M-d'T'H:m", "MMM d, yyyy H:m:s", "yyyy-MM-dd HH:mm:ss",
+            "y-MM-dd", "d-MMM-y", "MMM d, yyyy", "M/d/y H:m:s", "d/M/y H:m:s", "M-d-y H:m:s", "M/d/y H:m",
+            "d-M-y H:m:s", "d/M/y H:m", "M-d-y H:m", "d-M-y H:m", "M/d/y", "d/M/y", "MMM-y", "MMM d", "d-M-y",
+            "M/d", "HH:mm:ss.SSS", "H:m:s", "H:m"
+    };
+
+    /**
+     * Make a parser for the values of a column. The format is chosen from an evenly spaced sample of the values;
+     * it is the first of our formats that strictly matches the whole text for the most values in the sample
+     *
+     * @param field column of values to parse
+     * @return parser to use for the column's values
+     */
+    public static DateParser forColumn(Field field) {
+        int n = field.rowCount();
+        int step = Math.max(1, n / SAMPLE_SIZE);
+        String[] sample = new String[Math.min(n, SAMPLE_SIZE)];
+        int sampled = 0;
+        for (int i = 0; i < n && sampled < sample.length; i += step) {
+            Object o = field.value(i);
+            if (o instanceof String && !((String) o).trim().isEmpty()) sample[sampled++] = ((String) o).trim();
+        }
+
+        SimpleDateFormat best = null;
+        int bestCount = 0;
+        for (String pattern : PATTERNS) {
+            SimpleDateFormat format = makeFormat(pattern);
+            format.setLenient(false);
+            int count = 0;
+            for (int i = 0; i < sampled; i++)
+                if (parse(format, sample[i], true) != null) count++;
+            if (count > bestCount) {
+                best = format;
+                bestCount = count;
+            }
+        }
+        return new DateParser(best, new HashMap<String, Long>());
+    }
+
+    private static SimpleDateFormat makeFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    private static Date parse(SimpleDateFormat format, String text, boolean wholeText) {
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(text, position);
+        if (date == null || wholeText && position.getIndex() < text.length()) return null;
+        return date;
+    }
+
+    private final SimpleDateFormat preferred;                   // Strict format for the column (may be null)
+    private final SimpleDateFormat[] formats;                   // All formats, in the order we try them
+    private final Map<String, Long> parsed;                     // Times for text already parsed (may be null)
+
+    /**
+     * Make a parser with no preferred format, which does not remember the values it parses.
+     * Use forColumn() to parse the values of a column
+     */
+    public DateParser() {
+        this(null, null);
+    }
+
+    private DateParser(SimpleDateFormat preferred, Map<String, Long> parsed) {
+        this.preferred = preferred;
+        this.parsed = parsed;
+        formats = new SimpleDateFormat[PATTERNS.length];
+        for (int i = 0; i < formats.length; i++) formats[i] = makeFormat(PATTERNS[i]);
+    }
+
+    /**
+     * Parse all the values of a field
+     *
+     * @param field values to parse
+     * @return the time for each row, with MISSING for values that are not dates
+     */
+    public long[] parseColumn(Field field) {
+        long[] times = new long[field.rowCount()];
+        for (int i = 0; i < times.length; i++) times[i] = parseTime(field.value(i));
+        return times;
+    }
+
+    /**
+     * Parse a value as a date. Numbers are days since the epoch; anything else is parsed as text
+     *
+     * @param value value to parse
+     * @return milliseconds since the epoch, or MISSING
+     */
+    public long parseTime(Object value) {
+        if (value == null) return MISSING;
+        if (value instanceof Date) return ((Date) value).getTime();
+        if (value instanceof Number) return Math.round(((Number) value).doubleValue() * Data.MILLIS_PER_DAY);
+        String text = value.toString().trim();
+        if (text.isEmpty()) return MISSING;
+        if (parsed == null) return parseText(text);
+
+        Long known = parsed.get(text);
+        if (known != null) return known;
+        long time = parseText(text);
+        if (parsed.size() == MAX_CACHED) parsed.clear();
+        parsed.put(text, time);
+        return time;
+    }
+
+    private long parseText(String text) {
+        Date date = preferred == null ? null : parse(preferred, text, true);
+        for (int i = 0; i < formats.length && date == null; i++)
+            date = parse(formats[i], text, false);
+        return date == null ? MISSING : date.getTime();
+    }
+}
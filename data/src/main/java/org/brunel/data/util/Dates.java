@@ -16,101 +16,55 @@
 
 package org.brunel.data.util;
 
-import org.brunel.data.Data;
 import org.brunel.translator.JSTranslation;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.TimeZone;
 
+/**
+ * Parses and formats single dates. The formatters are immutable and each thread has its own parser,
+ * so these methods may be called concurrently. Columns of dates should use DateParser.forColumn()
+ */
 @JSTranslation(ignore = true)
 public class Dates {
 
-    // Keep 100 known mappings
-    private static final Map<String, Date> parsed = new LinkedHashMap<String, Date>() {
-        protected boolean removeEldestEntry(Map.Entry<String, Date> eldest) {
-            return size() > 1000;
-        }
+    // The output patterns, indexed by DateFormat
+    private static final String[] outputPatterns = {
+            "HH:mm:ss",             // seconds
+            "HH:mm",                // hours and minutes
+            "MMM d HH:mm",          // day and hour
+            "MMM d, yyyy",          // full date
+            "MMM yyyy",             // months
+            "yyyy"                  // years
     };
 
-    private static final List<SimpleDateFormat> dateFormats;
-    private static final SimpleDateFormat[] outputFormats;
+    private static final DateTimeFormatter[] outputFormats = new DateTimeFormatter[outputPatterns.length];
+
+    private static final ThreadLocal<DateParser> parser = new ThreadLocal<DateParser>() {
+        protected DateParser initialValue() {
+            return new DateParser();
+        }
+    };
 
     public static Object getPattern(DateFormat dateFormat) {
-        return outputFormats[dateFormat.ordinal()].toPattern();
+        return outputPatterns[dateFormat.ordinal()];
     }
 
     public static String format(Date date, DateFormat dateFormat) {
-        return outputFormats[dateFormat.ordinal()].format(date);
+        return outputFormats[dateFormat.ordinal()].format(Instant.ofEpochMilli(date.getTime()));
     }
 
     public static Date parse(Object c) {
         if (c == null || c instanceof Date) return (Date) c;
-        if (c instanceof Number) return new Date(Math.round(((Number) c).doubleValue() * Data.MILLIS_PER_DAY));
-        String s = c.toString().trim();
-        if (s.isEmpty()) return null;
-        if (parsed.containsKey(s)) return parsed.get(s);
-
-        Date result = null;
-        for (SimpleDateFormat f : dateFormats)
-            try {
-                result = f.parse(s);
-                break;
-            } catch (ParseException ignored) {
-                // Unsuccessful; keep trying
-            }
-        parsed.put(s, result);
-        return result;
+        long time = parser.get().parseTime(c);
+        return time == DateParser.MISSING ? null : new Date(time);
     }
 
     static {
-        outputFormats = new SimpleDateFormat[]{
-                new SimpleDateFormat("HH:mm:ss"),            // seconds
-                new SimpleDateFormat("HH:mm"),                // hours and minutes
-                new SimpleDateFormat("MMM d HH:mm"),        // day and hour
-                new SimpleDateFormat("MMM d, yyyy"),        // full date
-                new SimpleDateFormat("MMM yyyy"),            // months
-                new SimpleDateFormat("yyyy")                // years
-        };
-
-        dateFormats = new LinkedList<>();
-        dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m:s.SSS", Locale.US));
-        dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("y-M-d'T'H:m", Locale.US));
-        dateFormats.add(new SimpleDateFormat("MMM d, yyyy H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US));
-        dateFormats.add(new SimpleDateFormat("y-MM-dd", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d-MMM-y", Locale.US));
-        dateFormats.add(new SimpleDateFormat("MMM d, yyyy", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M/d/y H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d/M/y H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M-d-y H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M/d/y H:m", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d-M-y H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d/M/y H:m", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M-d-y H:m", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d-M-y H:m", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M/d/y", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d/M/y", Locale.US));
-        dateFormats.add(new SimpleDateFormat("MMM-y", Locale.US));
-        dateFormats.add(new SimpleDateFormat("MMM d", Locale.US));
-        dateFormats.add(new SimpleDateFormat("d-M-y", Locale.US));
-        dateFormats.add(new SimpleDateFormat("M/d", Locale.US));
-        dateFormats.add(new SimpleDateFormat("HH:mm:ss.SSS", Locale.US));
-        dateFormats.add(new SimpleDateFormat("H:m:s", Locale.US));
-        dateFormats.add(new SimpleDateFormat("H:m", Locale.US));
-
-        for (SimpleDateFormat df : outputFormats)
-            df.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        for (SimpleDateFormat format : dateFormats)
-            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < outputPatterns.length; i++)
+            outputFormats[i] = DateTimeFormatter.ofPattern(outputPatterns[i]).withZone(ZoneOffset.UTC);
     }
 
 }
@@ -17,24 +17,39 @@
 package org.brunel.data.util;
 
 import org.brunel.data.Data;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.Provider;
+import org.brunel.translator.JSTranslation;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
- * Associates items with integers
+ * Associates items with integers.
+ * Keys and values are held in parallel arrays in the order the keys were added. In Java, keys are found using an
+ * open addressing hash table giving their index in those arrays, so values are never boxed. Each slot also holds
+ * its key's hash, so a probe past a different key compares two ints rather than calling equals(); a matching key
+ * is tested by identity before equality, which is fast for categories that share string instances.
+ * Javascript uses its own map for the lookup.
  */
 public class MapInt {
-    private final Map<Object, Integer> map = new HashMap<>();
+    private Object[] keys = new Object[8];      // Keys, in the order they were added
+    private int[] values = new int[8];          // The value for each key
+    private int count;                          // Number of keys
     private int totalCount;
     private int maxCount;
 
+    @JSTranslation(ignore = true)
+    private Object[] slotKeys = new Object[16]; // Open addressing hash table of keys; null marks an empty slot
+    @JSTranslation(ignore = true)
+    private int[] slotIndex = new int[16];      // For each slot, the index of its key
+    @JSTranslation(ignore = true)
+    private int[] slotHash = new int[16];       // For each slot, the hash of its key
+    @JSTranslation(ignore = true)
+    private int nullIndex = -1;                 // Index of the null key, which the table cannot hold
+
     public int get(Object o) {
-        Integer v = map.get(o);
-        return v == null ? 0 : v;
+        int i = find(o);
+        return i < 0 ? 0 : values[i];
     }
 
     public int[] getCounts(Object[] vals) {
@@ -49,18 +64,33 @@ public class MapInt {
      * @return array of keys
      */
     public Object[] getIndexedKeys() {
-        Object[] results = new Object[size()];
-        for (Object o : map.keySet()) results[map.get(o)] = o;
+        Object[] results = new Object[count];
+        for (int i = 0; i < count; i++) results[values[i]] = keys[i];
         return results;
     }
 
     public void increment(Object o) {
-        if (o != null) {
-            int v = get(o) + 1;
-            map.put(o, v);
-            totalCount++;
-            maxCount = Math.max(maxCount, v);
+        if (o != null) add(o, 1);
+    }
+
+    /**
+     * Count every non-null value of a provider, as if increment() were called for each row.
+     * Values stored in a dictionary are counted using their codes, so each value is looked up only once
+     *
+     * @param provider values to count
+     * @return this map
+     */
+    public MapInt countAll(Provider provider) {
+        if (provider instanceof DictionaryProvider) {
+            DictionaryProvider dictionary = (DictionaryProvider) provider;
+            int[] counts = dictionary.countCodes();
+            for (int i = 0; i < dictionary.dictionarySize(); i++)
+                if (counts[i] > 0) add(dictionary.dictionaryValue(i), counts[i]);
+        } else {
+            int n = provider.count();
+            for (int i = 0; i < n; i++) increment(provider.value(i));
         }
+        return this;
     }
 
     public int getTotalCount() {
@@ -69,14 +99,15 @@ public class MapInt {
 
     public Object mode() {
         if (isEmpty()) return null;
-        List<Object> list = new ArrayList<>();
-        for (Object s : map.keySet())
-            if (map.get(s) == maxCount) list.add(s);
+        Object[] modes = new Object[count];
+        int n = 0;
+        for (int i = 0; i < count; i++)
+            if (values[i] == maxCount) modes[n++] = keys[i];
 
         // Set the mode to be the middle of the sorted list of modes
-        Object[] array = list.toArray(new Object[list.size()]);
+        Object[] array = Arrays.copyOf(modes, n);
         Data.sort(array);
-        return array[(int) Math.floor((array.length - 1) / 2)];
+        return array[(n - 1) >> 1];
     }
 
     /**
@@ -86,24 +117,101 @@ public class MapInt {
      */
     public MapInt index(Object[] keys) {
         for (Object o : keys)
-            if (!map.containsKey(o)) {
-                map.put(o, map.size());
+            if (find(o) < 0) {
+                int i = insert(o);
+                values[i] = i;
             }
         return this;
     }
 
     public boolean isEmpty() {
-        return map.isEmpty();
+        return count == 0;
     }
 
     public int size() {
-        return map.size();
+        return count;
     }
 
     public Object[] sortedKeys() {
-        Set<Object> s = map.keySet();
-        Object[] array = s.toArray(new Object[s.size()]);
+        Object[] array = Arrays.copyOf(keys, count);
         Data.sort(array);
         return array;
     }
+
+    /* Add to the count for a key */
+    private void add(Object key, int n) {
+        int i = find(key);
+        if (i < 0) i = insert(key);
+        values[i] += n;
+        totalCount += n;
+        maxCount = Math.max(maxCount, values[i]);
+    }
+
+    /* The index of the key, or -1 if it is not present */
+    @JSTranslation(js = {
+            "var i = this.lookup ? this.lookup.get(key) : null;",
+            "return i == null ? -1 : i;"
+    })
+    private int find(Object key) {
+        if (key == null) return nullIndex;
+        Object[] table = slotKeys;
+        int[] hashes = slotHash;
+        int mask = table.length - 1;
+        int h = hash(key);
+        for (int s = h & mask; ; s = (s + 1) & mask) {
+            Object k = table[s];
+            if (k == key) return slotIndex[s];          // Categories usually share instances, so test identity first
+            if (k == null) return -1;
+            if (hashes[s] == h && k.equals(key)) return slotIndex[s];
+        }
+    }
+
+    /* Add a key that is not present, with value zero, returning its index */
+    @JSTranslation(js = {
+            "if (!this.lookup) this.lookup = new $.Map();",
+            "this.lookup.put(key, this.count);",
+            "this.keys[this.count] = key;",
+            "this.values[this.count] = 0;",
+            "return this.count++;"
+    })
+    private int insert(Object key) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * count);
+            values = Arrays.copyOf(values, 2 * count);
+        }
+        keys[count] = key;
+        values[count] = 0;
+        count++;
+        if (key == null) nullIndex = count - 1;
+        else if (2 * count > slotKeys.length) rehash(2 * slotKeys.length);
+        else place(count - 1);
+        return count - 1;
+    }
+
+    @JSTranslation(ignore = true)
+    private void rehash(int size) {
+        slotKeys = new Object[size];
+        slotIndex = new int[size];
+        slotHash = new int[size];
+        for (int i = 0; i < count; i++)
+            if (keys[i] != null) place(i);
+    }
+
+    @JSTranslation(ignore = true)
+    private void place(int i) {
+        int mask = slotKeys.length - 1;
+        int h = hash(keys[i]);
+        int s = h & mask;
+        while (slotKeys[s] != null) s = (s + 1) & mask;
+        slotKeys[s] = keys[i];
+        slotIndex[s] = i;
+        slotHash[s] = h;
+    }
+
+    /* Spread the hash code bits, as the table size is a power of two */
+    @JSTranslation(ignore = true)
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
 }
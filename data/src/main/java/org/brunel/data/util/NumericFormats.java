@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.translator.JSTranslation;
+
+import java.text.DecimalFormat;
+
+/**
+ * The formats used by Data.formatNumeric(). DecimalFormat is not thread-safe, so each thread has its own set
+ */
+@JSTranslation(ignore = true)
+public class NumericFormats {
+
+    private static final ThreadLocal<NumericFormats> formats = new ThreadLocal<NumericFormats>() {
+        protected NumericFormats initialValue() {
+            return new NumericFormats();
+        }
+    };
+
+    public final DecimalFormat bigIntegerFormat = new DecimalFormat("0,000");
+    public final DecimalFormat integerFormat = new DecimalFormat("0");
+    public final DecimalFormat[] numericFormatGrouped = new DecimalFormat[]{
+            new DecimalFormat("#,###"),
+            new DecimalFormat("#,###.#"),
+            new DecimalFormat("#,###.##"),
+            new DecimalFormat("#,###.###"),
+            new DecimalFormat("#,###.####"),
+            new DecimalFormat("#,###.#####"),
+            new DecimalFormat("#,###.######"),
+            new DecimalFormat("#,###.#######"),
+    };
+    public final DecimalFormat[] numericFormat = new DecimalFormat[]{
+            new DecimalFormat("#"),
+            new DecimalFormat("#.#"),
+            new DecimalFormat("#.##"),
+            new DecimalFormat("#.###"),
+            new DecimalFormat("#.####"),
+            new DecimalFormat("#.#####"),
+            new DecimalFormat("#.######"),
+            new DecimalFormat("#.#######"),
+    };
+    public final DecimalFormat scientificFormat = new DecimalFormat("0.0##E0");
+
+    private NumericFormats() {
+    }
+
+    /**
+     * The formats for the calling thread
+     *
+     * @return formats only this thread uses
+     */
+    public static NumericFormats get() {
+        return formats.get();
+    }
+}
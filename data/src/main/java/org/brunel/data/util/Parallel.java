@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.util;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs work on ranges of rows in parallel. The rows are split into contiguous partitions, numbered in row order,
+ * so callers that write each partition's results to their own slot and join them in order get exactly the results
+ * of a sequential pass. Tasks should only read shared fields whose data and statistics have already been calculated.
+ * Small inputs are not split, and setting the pool to null turns parallel execution off.
+ * This is only used from Java; the translated Javascript always works sequentially.
+ */
+@JSTranslation(ignore = true)
+public class Parallel {
+
+    /**
+     * Work on one partition of the rows
+     */
+    public interface RangeTask {
+        /**
+         * @param part  partition number, from 0 to partitions(rows) - 1, in row order
+         * @param start first row of the partition
+         * @param end   one past the last row of the partition
+         */
+        void run(int part, int start, int end);
+    }
+
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+    private static volatile int minimumRows = 50000;        // Smallest partition worth running as a task
+
+    /**
+     * Set the pool used for parallel work
+     *
+     * @param p pool to use, or null to do all work on the calling thread
+     */
+    public static void setPool(ForkJoinPool p) {
+        pool = p;
+    }
+
+    /**
+     * Set the smallest number of rows that is worth giving a task of its own
+     *
+     * @param rows minimum partition size
+     */
+    public static void setMinimumRows(int rows) {
+        minimumRows = Math.max(1, rows);
+    }
+
+    /**
+     * The number of partitions that rows will be split into
+     *
+     * @param rows number of rows
+     * @return partition count, 1 when the work will be done sequentially
+     */
+    public static int partitions(int rows) {
+        return partitions(rows, pool);
+    }
+
+    /**
+     * Run the task on each partition of the rows, returning when all have completed.
+     * Any exception thrown by a task is rethrown
+     *
+     * @param parts number of partitions, as given by partitions(rows)
+     * @param rows  number of rows
+     * @param task  work to do
+     */
+    public static void forEachRange(int parts, int rows, final RangeTask task) {
+        ForkJoinPool p = pool;
+        if (parts == 1 || p == null) {
+            for (int i = 0; i < parts; i++) task.run(i, start(i, parts, rows), start(i + 1, parts, rows));
+            return;
+        }
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            final int part = i;
+            final int start = start(i, parts, rows);
+            final int end = start(i + 1, parts, rows);
+            tasks.add(new RecursiveAction() {
+                protected void compute() {
+                    task.run(part, start, end);
+                }
+            });
+        }
+        p.invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Join arrays end to end
+     *
+     * @param parts arrays to join, in order
+     * @return a single array
+     */
+    public static int[] concatenate(int[][] parts) {
+        if (parts.length == 1) return parts[0];
+        int n = 0;
+        for (int[] p : parts) n += p.length;
+        int[] result = new int[n];
+        int at = 0;
+        for (int[] p : parts) {
+            System.arraycopy(p, 0, result, at, p.length);
+            at += p.length;
+        }
+        return result;
+    }
+
+    private static int start(int part, int parts, int rows) {
+        return (int) ((long) rows * part / parts);
+    }
+
+    private static int partitions(int rows, ForkJoinPool p) {
+        if (p == null || p.getParallelism() < 2) return 1;
+        return Math.max(1, Math.min(rows / minimumRows, 4 * p.getParallelism()));
+    }
+}
@@ -18,7 +18,9 @@ package org.brunel.data.values;
 
 import org.brunel.data.Data;
 import org.brunel.data.util.MapInt;
+import org.brunel.translator.JSTranslation;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -32,6 +34,32 @@ public class ColumnProvider implements Provider {
         return new ColumnProvider(data);
     }
 
+    /**
+     * Create the most compact provider for the data. When every non-null value is a Double, or every one
+     * is a Date, the data is stored in primitive form; otherwise a general column is used.
+     * Javascript has no boxing cost, so it always uses a general column
+     *
+     * @param column data to store
+     * @return constructed provider
+     */
+    @JSTranslation(js = "return new $$CLASS$$(column);")
+    public static Provider make(Object[] column) {
+        boolean allDoubles = true, allDates = true, anyValid = false;
+        for (Object o : column) {
+            if (o == null) continue;
+            anyValid = true;
+            if (!(o instanceof Double)) allDoubles = false;
+            if (!(o instanceof Date)) allDates = false;
+            if (!allDoubles && !allDates) break;
+        }
+        if (anyValid && allDoubles) return DoubleColumnProvider.make(column);
+        if (anyValid && allDates) return DateColumnProvider.make(column);
+
+        // Categorical data with plenty of repeats is better stored as codes into a dictionary
+        DictionaryProvider dictionary = DictionaryProvider.make(column, column.length / 2);
+        return dictionary == null ? new ColumnProvider(column) : dictionary;
+    }
+
     private final Object[] column;
 
     public ColumnProvider(Object[] column) {
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Date;
+
+/**
+ * Stores dates as primitive millisecond times, with a bitmap for missing values
+ */
+public class DateColumnProvider extends PrimitiveColumnProvider {
+
+    /**
+     * Create a provider from a column of Date values
+     *
+     * @param column data, which must be a Date or null for each row
+     * @return constructed provider
+     */
+    public static DateColumnProvider make(Object[] column) {
+        int n = column.length;
+        long[] times = new long[n];
+        int[] missing = makeBitmap(n);
+        for (int i = 0; i < n; i++) {
+            Date d = (Date) column[i];
+            if (d == null) {
+                setBit(missing, i);
+                times[i] = 0;                               // Javascript does not initialize long arrays
+            } else {
+                times[i] = d.getTime();
+            }
+        }
+        return new DateColumnProvider(times, missing);
+    }
+
+    /**
+     * Create a provider from times, where a chosen value marks missing rows. The array is used directly, not copied.
+     *
+     * @param times   milliseconds since the epoch for each row
+     * @param missing the time used for missing rows
+     * @return constructed provider
+     */
+    @JSTranslation(ignore = true)
+    public static DateColumnProvider fromTimes(long[] times, long missing) {
+        int[] bitmap = makeBitmap(times.length);
+        for (int i = 0; i < times.length; i++)
+            if (times[i] == missing) {
+                setBit(bitmap, i);
+                times[i] = 0;
+            }
+        return new DateColumnProvider(times, bitmap);
+    }
+
+    private final long[] times;
+
+    /**
+     * Construct from primitive data. The arrays are used directly, not copied.
+     *
+     * @param times   milliseconds since the epoch for each row (ignored where missing)
+     * @param missing bitmap of missing rows, as created by makeBitmap()
+     */
+    public DateColumnProvider(long[] times, int[] missing) {
+        super(missing, times.length);
+        this.times = times;
+    }
+
+    public int expectedSize() {
+        return 40 + 8 * times.length + 4 * missing.length;
+    }
+
+    public double numericValue(int index) {
+        return isMissing(index) ? Double.NaN : times[index] / Data.MILLIS_PER_DAY;
+    }
+
+    public PrimitiveColumnProvider permute(int[] order) {
+        long[] result = new long[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = times[order[i]];
+        return new DateColumnProvider(result, permuteMissing(order));
+    }
+
+    /**
+     * The time for a row, without creating a Date
+     *
+     * @param index row to access
+     * @return milliseconds since the epoch (zero when missing)
+     */
+    public long time(int index) {
+        return times[index];
+    }
+
+    public Object value(int index) {
+        if (isMissing(index)) return null;
+        return new Date(times[index]);
+    }
+}
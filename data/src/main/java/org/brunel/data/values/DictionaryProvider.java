@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.data.util.MapInt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores a column as a dictionary of distinct values, in sorted order, and a code for each row.
+ * The codes are held in the smallest array type that can contain them, so a field with few distinct
+ * values costs a byte per row. Missing values use the code one past the end of the dictionary, so
+ * they sort last when codes are compared directly.
+ */
+public class DictionaryProvider implements Provider {
+
+    /**
+     * Create a dictionary provider for a column of data, unless it has too many distinct values
+     *
+     * @param column    data to store
+     * @param maxUnique the largest number of distinct values to allow
+     * @return constructed provider, or null if there are more than maxUnique distinct values
+     */
+    public static DictionaryProvider make(Object[] column, int maxUnique) {
+        Map<Object, Integer> index = new HashMap<>();
+        List<Object> values = new ArrayList<>();
+        int[] codes = new int[column.length];
+        for (int i = 0; i < column.length; i++) {
+            Object o = column[i];
+            if (o == null) {
+                codes[i] = -1;
+                continue;
+            }
+            Integer code = index.get(o);
+            if (code == null) {
+                if (values.size() == maxUnique) return null;
+                code = values.size();
+                index.put(o, code);
+                values.add(o);
+            }
+            codes[i] = code;
+        }
+        return fromDictionary(values.toArray(new Object[values.size()]), codes);
+    }
+
+    /**
+     * Create a provider from a dictionary in any order and codes into it.
+     * This is the form used by serialization.
+     *
+     * @param dictionary distinct values (may include null)
+     * @param codes      index into the dictionary for each row; a negative code means a missing value
+     * @return constructed provider
+     */
+    public static DictionaryProvider fromDictionary(Object[] dictionary, int[] codes) {
+        // Sort the non-null values and find where each original code now lives
+        int[] validIndex = new int[dictionary.length];
+        List<Object> valid = new ArrayList<>();
+        for (int i = 0; i < dictionary.length; i++) {
+            if (dictionary[i] == null) {
+                validIndex[i] = -1;
+            } else {
+                validIndex[i] = valid.size();
+                valid.add(dictionary[i]);
+            }
+        }
+        Object[] sorted = valid.toArray(new Object[valid.size()]);
+        Integer[] order = Data.order(sorted, true);
+
+        Object[] values = new Object[sorted.length];
+        int[] position = new int[sorted.length];
+        for (int i = 0; i < order.length; i++) {
+            values[i] = sorted[order[i]];
+            position[order[i]] = i;
+        }
+
+        int[] remap = new int[dictionary.length];
+        for (int i = 0; i < remap.length; i++)
+            remap[i] = validIndex[i] < 0 ? values.length : position[validIndex[i]];
+
+        int[] mapped = new int[codes.length];
+        for (int i = 0; i < codes.length; i++)
+            mapped[i] = codes[i] < 0 ? values.length : remap[codes[i]];
+        return new DictionaryProvider(values, mapped, mapped.length);
+    }
+
+    private final Object[] values;                          // Distinct values, sorted
+    private final boolean distinctOrder;                    // True if no two values compare as equal
+    private final int len;                                  // Number of rows
+    private final byte[] byteCodes;                         // Only one of these three arrays is used ...
+    private final short[] shortCodes;                       // ... depending on how many codes we need
+    private final int[] intCodes;
+    private Object[] orderCache;                            // [category order, ranks]; one reference so is atomic
+
+    /*
+     * Codes may be null for a subclass that overrides code() to read them from elsewhere
+     */
+    DictionaryProvider(Object[] values, int[] codes, int len) {
+        this.values = values;
+        this.len = len;
+
+        boolean distinct = true;
+        for (int i = 1; i < values.length; i++)
+            if (Data.compare(values[i - 1], values[i]) == 0) distinct = false;
+        this.distinctOrder = distinct;
+
+        // We need one more code than the values for missing data
+        if (codes == null) {
+            byteCodes = null;
+            shortCodes = null;
+            intCodes = null;
+        } else if (values.length < 256) {
+            byteCodes = new byte[len];
+            for (int i = 0; i < len; i++) byteCodes[i] = (byte) codes[i];
+            shortCodes = null;
+            intCodes = null;
+        } else if (values.length < 256 * 256) {
+            shortCodes = new short[len];
+            for (int i = 0; i < len; i++) shortCodes[i] = (short) codes[i];
+            byteCodes = null;
+            intCodes = null;
+        } else {
+            intCodes = codes;
+            byteCodes = null;
+            shortCodes = null;
+        }
+    }
+
+    /**
+     * The code for the given row
+     *
+     * @param index row to access
+     * @return index into the dictionary, or dictionarySize() if the value is missing
+     */
+    public int code(int index) {
+        if (byteCodes != null) return byteCodes[index] & 0xFF;
+        if (shortCodes != null) return shortCodes[index] & 0xFFFF;
+        return intCodes[index];
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        int p = code(a);
+        int q = code(b);
+        if (p == q) return 0;
+        if (p == values.length) return 1;
+        if (q == values.length) return -1;
+        if (categoryOrder.isEmpty()) {
+            // The dictionary is in natural order, so codes can be compared directly
+            return distinctOrder ? p - q : Data.compare(values[p], values[q]);
+        }
+        int[] ranks = ranksFor(categoryOrder);
+        return ranks == null ? p - q : ranks[p] - ranks[q];
+    }
+
+    /**
+     * Count the number of times each code is used
+     *
+     * @return array of counts, one per dictionary value, with a final entry counting missing values
+     */
+    public int[] countCodes() {
+        int[] counts = new int[values.length + 1];
+        for (int i = 0; i < len; i++) counts[code(i)]++;
+        return counts;
+    }
+
+    public int count() {
+        return len;
+    }
+
+    /**
+     * The value for a code
+     *
+     * @param code index into the dictionary
+     * @return dictionary value
+     */
+    public Object dictionaryValue(int code) {
+        return values[code];
+    }
+
+    /**
+     * The number of distinct values in the dictionary. Not all may be used if the rows have been permuted
+     *
+     * @return dictionary size
+     */
+    public int dictionarySize() {
+        return values.length;
+    }
+
+    public int expectedSize() {
+        int total = 48 + 4 * values.length;
+        if (byteCodes != null) total += len;
+        else if (shortCodes != null) total += 2 * len;
+        else total += 4 * len;
+        for (Object c : values) {
+            if (c instanceof String)
+                total += (42 + ((String) c).length() * 2);
+            else
+                total += 16;
+        }
+        return total;
+    }
+
+    /**
+     * Create a new provider sharing this dictionary, with rows taken in the given order
+     *
+     * @param order rows of this provider to use (may omit or repeat rows)
+     * @return new provider
+     */
+    public DictionaryProvider permute(int[] order) {
+        int[] codes = new int[order.length];
+        for (int i = 0; i < codes.length; i++) codes[i] = code(order[i]);
+        return new DictionaryProvider(values, codes, codes.length);
+    }
+
+    public Provider setValue(Object o, int index) {
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        int code = code(index);
+        return code == values.length ? null : values[code];
+    }
+
+    /*
+     * Rank each code according to the category order.
+     * Returns null when the order matches the dictionary order, so codes can be compared directly
+     */
+    private int[] ranksFor(MapInt categoryOrder) {
+        Object[] cache = orderCache;
+        if (cache != null && cache[0] == categoryOrder) return (int[]) cache[1];
+        int[] ranks = new int[values.length];
+        boolean increasing = true;
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = categoryOrder.get(values[i]);
+            if (i > 0 && ranks[i] <= ranks[i - 1]) increasing = false;
+        }
+        if (increasing) ranks = null;
+        orderCache = new Object[]{categoryOrder, ranks};
+        return ranks;
+    }
+}
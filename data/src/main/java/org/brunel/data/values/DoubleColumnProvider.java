@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Stores numeric data in a primitive array, with a bitmap for missing values.
+ * As in Data.asNumeric(), NaN is not a value: a NaN is stored as a missing row, and so reads back as null
+ */
+public class DoubleColumnProvider extends PrimitiveColumnProvider {
+
+    /**
+     * Create a provider from a column of Double values
+     *
+     * @param column data, which must be Double or null for each row; NaN is treated as null
+     * @return constructed provider
+     */
+    public static DoubleColumnProvider make(Object[] column) {
+        int n = column.length;
+        double[] data = new double[n];
+        int[] missing = makeBitmap(n);
+        for (int i = 0; i < n; i++) {
+            Double d = (Double) column[i];
+            if (d == null || Double.isNaN(d)) setBit(missing, i);
+            else data[i] = d;
+        }
+        return new DoubleColumnProvider(data, missing);
+    }
+
+    /**
+     * Create a provider from primitive values, where NaN marks a missing row. The array is used directly, not copied.
+     *
+     * @param data numeric data for each row
+     * @return constructed provider
+     */
+    @JSTranslation(ignore = true)
+    public static DoubleColumnProvider fromValues(double[] data) {
+        int[] missing = makeBitmap(data.length);
+        for (int i = 0; i < data.length; i++)
+            if (Double.isNaN(data[i])) setBit(missing, i);
+        return new DoubleColumnProvider(data, missing);
+    }
+
+    private final double[] data;
+
+    /**
+     * Construct from primitive data. The arrays are used directly, not copied.
+     *
+     * @param data    numeric data for each row (ignored where missing)
+     * @param missing bitmap of missing rows, as created by makeBitmap()
+     */
+    public DoubleColumnProvider(double[] data, int[] missing) {
+        super(missing, data.length);
+        this.data = data;
+    }
+
+    public int expectedSize() {
+        return 40 + 8 * data.length + 4 * missing.length;
+    }
+
+    public double numericValue(int index) {
+        return isMissing(index) ? Double.NaN : data[index];
+    }
+
+    public PrimitiveColumnProvider permute(int[] order) {
+        double[] result = new double[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = data[order[i]];
+        return new DoubleColumnProvider(result, permuteMissing(order));
+    }
+
+    public Object value(int index) {
+        if (isMissing(index)) return null;
+        return data[index];
+    }
+}
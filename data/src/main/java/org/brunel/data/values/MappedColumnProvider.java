@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.translator.JSTranslation;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Reads numeric or date data directly from buffers, typically memory-mapped from a file.
+ * Values are eight bytes each: doubles for numbers, or millisecond times for dates.
+ * They are either stored one per row, or as a table of distinct values with a 1, 2 or 4 byte code per row.
+ * Missing values are NaN (numbers), MISSING_TIME (dates), or a code one past the end of the table.
+ */
+@JSTranslation(ignore = true)
+public class MappedColumnProvider extends PrimitiveColumnProvider {
+
+    public static final long MISSING_TIME = Long.MIN_VALUE;
+
+    private final ByteBuffer values;                        // Eight byte values, read with absolute gets only
+    private final ByteBuffer index;                         // Codes into values, or null if values has one per row
+    private final int width;                                // Bytes per code, or zero when there is no index
+    private final int size;                                 // Number of values stored
+    private final boolean dates;                            // True if the values are times
+
+    /**
+     * Construct the provider
+     *
+     * @param values buffer holding the values, starting at position zero
+     * @param index  buffer holding the codes, or null if there is one value per row
+     * @param width  bytes per code: 1, 2 or 4 (ignored when there is no index)
+     * @param len    number of rows
+     * @param dates  true if the values are millisecond times, false for doubles
+     */
+    public MappedColumnProvider(ByteBuffer values, ByteBuffer index, int width, int len, boolean dates) {
+        super(null, len);
+        this.values = values;
+        this.index = index;
+        this.width = index == null ? 0 : width;
+        this.size = values.capacity() / 8;
+        this.dates = dates;
+    }
+
+    public int expectedSize() {
+        return 64;                                          // The data itself is not on the heap
+    }
+
+    public boolean isMissing(int index) {
+        int code = code(index);
+        if (code == size) return true;
+        if (dates) return values.getLong(8 * code) == MISSING_TIME;
+        return Double.isNaN(values.getDouble(8 * code));
+    }
+
+    public double numericValue(int index) {
+        int code = code(index);
+        if (code == size) return Double.NaN;
+        if (!dates) return values.getDouble(8 * code);
+        long t = values.getLong(8 * code);
+        return t == MISSING_TIME ? Double.NaN : t / Data.MILLIS_PER_DAY;
+    }
+
+    public PrimitiveColumnProvider permute(int[] order) {
+        // The result is an ordinary in-memory provider
+        int[] missing = permuteMissing(order);
+        if (dates) {
+            long[] times = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                long t = time(order[i]);
+                times[i] = t == MISSING_TIME ? 0 : t;
+            }
+            return new DateColumnProvider(times, missing);
+        }
+        double[] data = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            double d = numericValue(order[i]);
+            data[i] = Double.isNaN(d) ? 0 : d;
+        }
+        return new DoubleColumnProvider(data, missing);
+    }
+
+    public Object value(int index) {
+        if (dates) {
+            long t = time(index);
+            return t == MISSING_TIME ? null : new Date(t);
+        }
+        double d = numericValue(index);
+        return Double.isNaN(d) ? null : d;
+    }
+
+    private int code(int row) {
+        if (width == 0) return row;
+        if (width == 1) return index.get(row) & 0xFF;
+        if (width == 2) return index.getShort(2 * row) & 0xFFFF;
+        return index.getInt(4 * row);
+    }
+
+    private long time(int row) {
+        int code = code(row);
+        return code == size ? MISSING_TIME : values.getLong(8 * code);
+    }
+}
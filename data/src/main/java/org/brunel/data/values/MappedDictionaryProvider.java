@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.translator.JSTranslation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A dictionary provider whose codes are read directly from a buffer, typically a memory-mapped file.
+ * Each code is stored in 1, 2 or 4 bytes; only the dictionary itself is held on the heap.
+ */
+@JSTranslation(ignore = true)
+public class MappedDictionaryProvider extends DictionaryProvider {
+
+    private final ByteBuffer index;                         // Codes, read with absolute gets only
+    private final int width;                                // Bytes per code
+
+    /**
+     * Construct the provider. The dictionary must be in the sorted order that DictionaryProvider uses
+     *
+     * @param values distinct values, sorted
+     * @param index  buffer holding the codes, starting at position zero
+     * @param width  bytes per code: 1, 2 or 4
+     * @param len    number of rows
+     */
+    public MappedDictionaryProvider(Object[] values, ByteBuffer index, int width, int len) {
+        super(values, null, len);
+        this.index = index;
+        this.width = width;
+    }
+
+    public int code(int row) {
+        if (width == 1) return index.get(row) & 0xFF;
+        if (width == 2) return index.getShort(2 * row) & 0xFFFF;
+        return index.getInt(4 * row);
+    }
+
+    public int expectedSize() {
+        // The codes are not on the heap, so we only count the dictionary
+        int total = 64 + 4 * dictionarySize();
+        for (int i = 0; i < dictionarySize(); i++) {
+            Object c = dictionaryValue(i);
+            if (c instanceof String)
+                total += (42 + ((String) c).length() * 2);
+            else
+                total += 16;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.util.MapInt;
+
+/**
+ * Base class for providers that store a column of data in primitive arrays.
+ * Missing values are kept in a bitmap, so no object is needed per row, and the numeric value of a row
+ * can be read without boxing using numericValue()
+ */
+public abstract class PrimitiveColumnProvider implements Provider {
+
+    /**
+     * Create a bitmap able to hold the given number of bits, all initially clear
+     *
+     * @param len number of bits needed
+     * @return bitmap array
+     */
+    static int[] makeBitmap(int len) {
+        return new int[(len + 31) >> 5];                    // Shift, not divide, so Javascript gets an integer
+    }
+
+    static void setBit(int[] bitmap, int index) {
+        bitmap[index >> 5] |= 1 << (index & 31);
+    }
+
+    static boolean isBitSet(int[] bitmap, int index) {
+        return (bitmap[index >> 5] & (1 << (index & 31))) != 0;
+    }
+
+    final int[] missing;                                    // A set bit means the row has no value
+    final int len;                                          // Number of rows
+
+    PrimitiveColumnProvider(int[] missing, int len) {
+        this.missing = missing;
+        this.len = len;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        boolean p = isMissing(a), q = isMissing(b);
+        if (p) return q ? 0 : 1;
+        if (q) return -1;
+        // Use the defined order if given
+        if (!categoryOrder.isEmpty())
+            return categoryOrder.get(value(a)) - categoryOrder.get(value(b));
+        double x = numericValue(a), y = numericValue(b);
+        return x < y ? -1 : (x > y ? 1 : 0);
+    }
+
+    public int count() {
+        return len;
+    }
+
+    /**
+     * Returns true if the row has no value
+     *
+     * @param index row to check
+     * @return true when missing
+     */
+    public boolean isMissing(int index) {
+        return isBitSet(missing, index);
+    }
+
+    /**
+     * The value at the given row as a primitive. For dates this is the number of days since the epoch,
+     * the same value that Data.asNumeric() would give for the object value
+     *
+     * @param index row to access
+     * @return numeric value, or NaN if the row has no value (NaN is never stored as a value)
+     */
+    public abstract double numericValue(int index);
+
+    /**
+     * Create a new provider of the same type with rows taken from this one in the given order
+     *
+     * @param order rows of this provider to use (may omit or repeat rows)
+     * @return new provider with the values copied
+     */
+    public abstract PrimitiveColumnProvider permute(int[] order);
+
+    public Provider setValue(Object o, int index) {
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    /* Permutes the missing values bitmap */
+    int[] permuteMissing(int[] order) {
+        int[] result = makeBitmap(order.length);
+        for (int i = 0; i < order.length; i++)
+            if (isMissing(order[i])) setBit(result, i);
+        return result;
+    }
+}
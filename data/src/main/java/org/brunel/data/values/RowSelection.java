@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+/**
+ * Maps the rows of a derived data set to rows of the data it came from.
+ * All the fields changed by one operation share a selection, so when a later operation selects rows again,
+ * the two mappings are composed once for all of those fields
+ */
+public class RowSelection {
+
+    public final int[] rows;                                // Source row for each row
+    private Object[] composed;                              // [next selection, result]; one reference so is atomic
+
+    public RowSelection(int[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Combine this selection with a selection of its rows
+     *
+     * @param next rows of this selection to use
+     * @return selection mapping directly to the source rows
+     */
+    public RowSelection compose(RowSelection next) {
+        Object[] cache = composed;
+        if (cache != null && cache[0] == next) return (RowSelection) cache[1];
+        int[] result = new int[next.rows.length];
+        for (int i = 0; i < result.length; i++) result[i] = rows[next.rows[i]];
+        RowSelection selection = new RowSelection(result);
+        composed = new Object[]{next, selection};
+        return selection;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.values;
+
+import org.brunel.data.util.MapInt;
+
+/**
+ * Provides a selection of rows from another provider without copying anything.
+ * A Field holding one of these replaces it with materialize() when its data is first needed,
+ * so fields that are never read are never copied
+ */
+public class SelectionProvider implements Provider {
+
+    private final Provider base;
+    private final RowSelection selection;
+    private volatile Provider materialized;         // Made once, so every field sharing this shares the copy
+
+    public SelectionProvider(Provider base, RowSelection selection) {
+        this.base = base;
+        this.selection = selection;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        return base.compareRows(selection.rows[a], selection.rows[b], categoryOrder);
+    }
+
+    public int count() {
+        return selection.rows.length;
+    }
+
+    // The base provider belongs to the data this was selected from, so only the selection is counted
+    public int expectedSize() {
+        return 24 + selection.rows.length * 4;
+    }
+
+    /**
+     * Create a provider holding the selected rows in the same form as the base provider.
+     * Primitive data and dictionary codes are copied, so the result keeps their compact storage.
+     * The rows are copied only once; later calls return the same provider
+     *
+     * @return provider with the same values as this one
+     */
+    public Provider materialize() {
+        Provider p = materialized;
+        if (p == null) materialized = p = makeMaterialized();
+        return p;
+    }
+
+    private Provider makeMaterialized() {
+        if (base instanceof PrimitiveColumnProvider)
+            return ((PrimitiveColumnProvider) base).permute(selection.rows);
+        if (base instanceof DictionaryProvider)
+            return ((DictionaryProvider) base).permute(selection.rows);
+        return new ReorderedProvider(base, selection.rows);
+    }
+
+    public Provider sourceProvider() {
+        return base;
+    }
+
+    public RowSelection rowSelection() {
+        return selection;
+    }
+
+    public Provider setValue(Object o, int index) {
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        return base.value(selection.rows[index]);
+    }
+}
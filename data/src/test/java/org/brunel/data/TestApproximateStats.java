@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data;
+
+import org.brunel.data.stats.ApproximateStats;
+import org.brunel.data.stats.DistinctSketch;
+import org.brunel.data.stats.QuantileSketch;
+import org.brunel.data.values.DoubleColumnProvider;
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@JSTranslation(ignore = true)
+public class TestApproximateStats {
+
+    @Test
+    public void testQuantiles() {
+        // A shuffled permutation of 0 .. N-1, so the true q-quantile is q*N
+        int N = 1000000;
+        double[] values = shuffled(N, 1);
+        QuantileSketch sketch = new QuantileSketch();
+        for (double v : values) sketch.add(v);
+
+        assertEquals(N, sketch.count());
+        assertEquals(0, sketch.min(), 0);
+        assertEquals(N - 1, sketch.max(), 0);
+        for (double q = 0.05; q < 1; q += 0.05)
+            assertEquals(q * N, sketch.quantile(q), 0.02 * N);
+    }
+
+    @Test
+    public void testMergedQuantiles() {
+        int N = 200000;
+        double[] values = shuffled(N, 2);
+        QuantileSketch[] parts = new QuantileSketch[4];
+        for (int p = 0; p < 4; p++) {
+            parts[p] = new QuantileSketch();
+            for (int i = p; i < N; i += 4) parts[p].add(values[i]);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        for (QuantileSketch p : parts) merged.merge(p);
+
+        assertEquals(N, merged.count());
+        assertEquals(N * 0.25, merged.quantile(0.25), 0.02 * N);
+        assertEquals(N * 0.5, merged.quantile(0.5), 0.02 * N);
+        assertEquals(N * 0.75, merged.quantile(0.75), 0.02 * N);
+    }
+
+    @Test
+    public void testDistinct() {
+        DistinctSketch sketch = new DistinctSketch();
+        for (int i = 0; i < 100; i++) sketch.add("item" + (i % 10));
+        sketch.add(null);
+        assertEquals(100, sketch.count());
+        assertEquals(10, sketch.estimate());
+
+        // Two overlapping halves of 100,000 distinct values
+        DistinctSketch a = new DistinctSketch(), b = new DistinctSketch();
+        for (int i = 0; i < 60000; i++) a.add("v" + i);
+        for (int i = 40000; i < 100000; i++) b.add("v" + i);
+        a.merge(b);
+        assertEquals(120000, a.count());
+        assertEquals(100000, a.estimate(), 5000);
+    }
+
+    @Test
+    public void testFieldStatistics() {
+        int N = 100000;
+        double[] values = shuffled(N, 3);
+        Field exact = numericField(values);
+        Field approx = numericField(values);
+        ApproximateStats.use(Dataset.make(new Field[]{approx}));
+
+        assertEquals(exact.numProperty("median"), approx.numProperty("median"), 0.02 * N);
+        assertEquals(exact.numProperty("q1"), approx.numProperty("q1"), 0.02 * N);
+        assertEquals(exact.numProperty("q3"), approx.numProperty("q3"), 0.02 * N);
+        assertEquals(N, approx.numProperty("valid"), 0);
+        assertEquals(N, approx.numProperty("unique"), 0.05 * N);
+        assertTrue(approx.property(ApproximateStats.QUANTILE_SKETCH) != null);
+
+        // Exact statistics are unaffected
+        assertEquals(N, exact.numProperty("unique"), 0);
+        assertTrue(exact.property(ApproximateStats.QUANTILE_SKETCH) == null);
+
+        // Asking for the categories makes the counts exact
+        approx.categories();
+        assertEquals(N, approx.numProperty("unique"), 0);
+    }
+
+    @Test
+    public void testStoredSketches() {
+        // Sketches for partitions are merged and stored; the field then uses them instead of its data
+        QuantileSketch quantiles = new QuantileSketch();
+        DistinctSketch distinct = new DistinctSketch();
+        for (int p = 0; p < 3; p++) {
+            QuantileSketch q = new QuantileSketch();
+            DistinctSketch d = new DistinctSketch();
+            for (int i = 0; i < 100; i++) {
+                q.add(p * 100 + i);
+                d.add((double) (p * 100 + i));
+            }
+            quantiles.merge(q);
+            distinct.merge(d);
+        }
+
+        Field f = numericField(new double[]{1, 2, 3});
+        ApproximateStats.store(f, quantiles, distinct);
+        assertEquals(150, f.numProperty("median"), 2);
+        assertEquals(300, f.numProperty("unique"), 0);
+    }
+
+    private static Field numericField(double[] values) {
+        Object[] column = new Object[values.length];
+        for (int i = 0; i < values.length; i++) column[i] = values[i];
+        Field f = new Field("x", null, DoubleColumnProvider.make(column));
+        f.setNumeric();
+        return f;
+    }
+
+    private static double[] shuffled(int n, long seed) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        Random random = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+        return values;
+    }
+}
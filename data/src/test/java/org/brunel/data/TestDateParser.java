@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data;
+
+import org.brunel.data.util.DateParser;
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@JSTranslation(ignore = true)
+public class TestDateParser {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void testColumnFormatIsInferred() {
+        // Day first -- the 25th cannot be a month, so the whole column is read day first
+        Field f = Fields.makeColumnField("a", null, new Object[]{"1/2/1970", "25/12/1970", "3/1/1970"});
+        long[] times = DateParser.forColumn(f).parseColumn(f);
+        assertEquals(31 * DAY, times[0]);
+        assertEquals(358 * DAY, times[1]);
+        assertEquals(2 * DAY, times[2]);
+
+        // Month first is the default when values do not decide it
+        f = Fields.makeColumnField("a", null, new Object[]{"1/2/1970", "3/1/1970"});
+        assertEquals(DAY, DateParser.forColumn(f).parseColumn(f)[0]);
+    }
+
+    @Test
+    public void testSingleValuesParseAsBefore() {
+        // Without a column to infer from, values are read month first and leniently, as they always were
+        assertEquals(DAY, Data.asDate("1/2/1970").getTime());
+        assertEquals(741 * DAY, Data.asDate("25/12/1970").getTime());          // Month 25 rolls on to 1972
+        assertEquals(741 * DAY, new DateParser().parseTime("25/12/1970"));
+    }
+
+    @Test
+    public void testMismatchedValuesUseOtherFormats() {
+        Field f = Fields.makeColumnField("a", null, new Object[]{"1970-01-02", "1970-01-03", "Jan 5, 1970", null, "junk"});
+        long[] times = DateParser.forColumn(f).parseColumn(f);
+        assertEquals(DAY, times[0]);
+        assertEquals(2 * DAY, times[1]);
+        assertEquals(4 * DAY, times[2]);
+        assertEquals(DateParser.MISSING, times[3]);
+        assertEquals(DateParser.MISSING, times[4]);
+    }
+
+    @Test
+    public void testToDateMakesTimes() {
+        Field f = Data.toDate(Fields.makeColumnField("a", null, new Object[]{"1970-01-02", "", "1970-01-03"}));
+        assertTrue(f.isDate());
+        assertEquals(Data.asDate("1970-01-02"), f.value(0));
+        assertEquals(null, f.value(1));
+        assertEquals(2.0, f.numericValue(2), 1e-9);
+    }
+
+    @Test
+    public void testConcurrentParsing() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int day = 1; day <= 28; day++) {
+                            int d = 1 + (day + offset) % 28;
+                            String text = "1970-02-" + (d < 10 ? "0" + d : "" + d);
+                            if (Data.asDate(text).getTime() != (30 + d) * DAY) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) assertTrue(result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
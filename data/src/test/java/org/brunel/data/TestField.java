@@ -238,6 +238,32 @@ public class TestField {
 
     }
 
+    @Test
+    public void testStatsOnUnorderedData() {
+        // Each field holds a permutation of 0 ... n-1, so selection must find the order statistics itself
+        Object[] odd = new Object[101];
+        for (int i = 0; i < odd.length; i++) odd[i] = (i * 7) % 101;
+        Object[] even = new Object[100];
+        for (int i = 0; i < even.length; i++) even[i] = (i * 7) % 100;
+        Field a = Fields.makeColumnField("a", "label", odd);
+        Field b = Fields.makeColumnField("b", "label", even);
+
+        assertEquals(50, a.numProperty("median"), 1e-9);
+        assertEquals(25, a.numProperty("q1"), 1e-9);
+        assertEquals(75, a.numProperty("q3"), 1e-9);
+        assertEquals(49.5, b.numProperty("median"), 1e-9);
+        assertEquals(24.5, b.numProperty("q1"), 1e-9);
+        assertEquals(74.5, b.numProperty("q3"), 1e-9);
+        assertEquals(0, b.min(), 1e-9);
+        assertEquals(99, b.max(), 1e-9);
+
+        // Moments are found in one pass, which must not lose precision for large values
+        Field c = Fields.makeColumnField("c", "label", new Object[]{1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16});
+        assertEquals(1e9 + 10, c.numProperty("mean"), 1e-6);
+        assertEquals(30, c.numProperty("variance"), 1e-6);
+        assertEquals(0, c.numProperty("skew"), 1e-6);
+    }
+
     @Test
     public void testOrderFieldStats() {
         Field uniform = Fields.makeColumnField("a", "label", new Object[]{100, 200, 300, 400, 500, 600});
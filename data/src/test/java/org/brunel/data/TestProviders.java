@@ -16,9 +16,19 @@
 
 package org.brunel.data;
 
+import org.brunel.data.values.DateColumnProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.DoubleColumnProvider;
+import org.brunel.data.values.RowSelection;
+import org.brunel.data.values.SelectionProvider;
+import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.util.Date;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TestProviders {
 
@@ -68,4 +78,170 @@ public class TestProviders {
         assertEquals("1, 2, 3, 4", Data.join(a.categories()));
     }
 
+    @Test
+    public void testLazySelection() {
+        Field a = new Field("a", "b", DoubleColumnProvider.make(new Object[]{3.0, null, 1.0, 2.0, null, 2.5}));
+        Field c = Fields.makeColumnField("c", "d", new Object[]{"x", "y", "x", "z", "y", "x"});
+        RowSelection first = new RowSelection(new int[]{5, 4, 3, 2, 1, 0});
+        RowSelection second = new RowSelection(new int[]{0, 2, 3});
+
+        // Nothing is copied, and the composed selection is shared
+        Field a1 = Fields.select(Fields.select(a, first, true), second, false);
+        Field c1 = Fields.select(Fields.select(c, first, true), second, false);
+        assertTrue(a1.provider instanceof SelectionProvider);
+        assertTrue(((SelectionProvider) a1.provider).rowSelection() == ((SelectionProvider) c1.provider).rowSelection());
+        assertEquals("5, 3, 2", Data.join(((SelectionProvider) a1.provider).rowSelection().rows));
+        assertEquals(24 + 3 * 4, a1.provider.expectedSize());            // The base data is not counted
+
+        // Reading the field copies its rows
+        assertEquals(3, a1.rowCount());
+        assertEquals(2.5, a1.value(0));
+        assertEquals(2.0, a1.value(1));
+        assertEquals(1.0, a1.value(2));
+        assertTrue(!(a1.provider instanceof SelectionProvider));
+        assertEquals("x, z, x", c1.value(0) + ", " + c1.value(1) + ", " + c1.value(2));
+    }
+
+    @Test
+    public void testNaNIsMissing() {
+        Field a = new Field("a", "b", DoubleColumnProvider.make(new Object[]{3.0, Double.NaN, 1.0}));
+        a.setNumeric();
+        assertEquals(2, a.numProperty("valid"), 0.001);
+        assertEquals(2, a.numProperty("validNumeric"), 0.001);
+        assertTrue(a.value(1) == null);
+        assertTrue(Double.isNaN(a.numericValue(1)));
+    }
+
+    @Test
+    public void testDoubleColumn() {
+        Field a = new Field("a", "b", DoubleColumnProvider.make(new Object[]{3.0, null, 1.0, 2.0, null, 2.5}));
+        a.setNumeric();
+        assertEquals(6, a.rowCount());
+        assertEquals(4, a.numProperty("valid"), 0.001);
+        assertEquals(4, a.numProperty("validNumeric"), 0.001);
+        assertEquals(2.125, a.numProperty("mean"), 0.001);
+        assertEquals(1.0, a.min(), 0.001);
+        assertEquals(3.0, a.max(), 0.001);
+        assertEquals(3.0, a.value(0));
+        assertEquals(null, a.value(1));
+        assertEquals(2.0, a.numericValue(3), 0.001);
+        assertTrue(Double.isNaN(a.numericValue(4)));
+
+        // Nulls sort last
+        assertTrue(a.compareRows(2, 0) < 0);
+        assertTrue(a.compareRows(1, 0) > 0);
+        assertEquals(0, a.compareRows(1, 4));
+
+        Field b = Fields.permute(a, new int[]{4, 5, 2}, false);
+        assertEquals(3, b.rowCount());
+        assertEquals(null, b.value(0));
+        assertEquals(2.5, b.value(1));
+        assertEquals(1.0, b.value(2));
+        assertEquals(1.75, b.numProperty("mean"), 0.001);
+    }
+
+    @Test
+    public void testDateColumn() {
+        long day = 24 * 60 * 60 * 1000;
+        Field a = new Field("a", "b", DateColumnProvider.make(new Object[]{new Date(3 * day), null, new Date(day)}));
+        a.setNumeric();
+        a.set("date", true);
+        assertEquals(3, a.rowCount());
+        assertEquals(2, a.numProperty("valid"), 0.001);
+        assertEquals(1.0, a.min(), 0.001);
+        assertEquals(3.0, a.max(), 0.001);
+        assertEquals(3.0, a.numericValue(0), 0.001);
+        assertEquals(null, a.value(1));
+        assertEquals(Data.asNumeric(new Date(day)), Data.asNumeric(a.value(2)), 0.001);
+        assertTrue(a.compareRows(2, 0) < 0);
+        assertTrue(a.compareRows(1, 2) > 0);
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testColumnFieldStorage() {
+        // Only all-double or all-date columns are stored as primitives
+        assertTrue(Fields.makeColumnField("a", null, new Object[]{1.0, null, 2.0}).hasPrimitiveData());
+        assertTrue(Fields.makeColumnField("a", null, new Object[]{new Date(), null}).hasPrimitiveData());
+        assertFalse(Fields.makeColumnField("a", null, new Object[]{1.0, "x"}).hasPrimitiveData());
+        assertFalse(Fields.makeColumnField("a", null, new Object[]{1, 2}).hasPrimitiveData());
+        assertFalse(Fields.makeColumnField("a", null, new Object[]{null, null}).hasPrimitiveData());
+
+        // Conversion creates primitive storage
+        Field text = Fields.makeColumnField("a", null, new Object[]{"1", "2.5", null, "4"});
+        Field numeric = Data.toNumeric(text);
+        assertTrue(numeric.hasPrimitiveData());
+        assertEquals(2.5, numeric.value(1));
+        Field dates = Data.toDate(Fields.makeColumnField("a", null, new Object[]{"2016-01-01", null}));
+        assertTrue(dates.hasPrimitiveData());
+        assertEquals(Data.asDate("2016-01-01"), dates.value(0));
+    }
+
+    @Test
+    public void testDictionary() {
+        DictionaryProvider p = DictionaryProvider.fromDictionary(new Object[]{"c", null, "a", "b"},
+                new int[]{0, 2, 1, 3, 0, -1, 2});
+        assertEquals(7, p.count());
+        assertEquals(3, p.dictionarySize());
+        assertEquals("a", p.dictionaryValue(0));
+        assertEquals("c", p.value(0));
+        assertEquals("a", p.value(1));
+        assertEquals(null, p.value(2));
+        assertEquals(null, p.value(5));
+        assertEquals(3, p.code(5));
+        assertEquals("2, 1, 2, 2", Data.join(p.countCodes()));
+
+        Field a = new Field("a", "b", p);
+        assertEquals(5, a.numProperty("valid"), 0.001);
+        assertEquals(3, a.numProperty("unique"), 0.001);
+        assertEquals("a, b, c", Data.join(a.categories()));
+        assertEquals("a", a.property("mode"));
+        assertTrue(a.compareRows(1, 0) < 0);
+        assertTrue(a.compareRows(2, 0) > 0);
+        assertEquals(0, a.compareRows(1, 6));
+
+        // Permuting keeps the dictionary; unused values are not categories
+        Field b = Fields.permute(a, new int[]{0, 3, 4}, false);
+        assertEquals("c", b.value(0));
+        assertEquals("b", b.value(1));
+        assertEquals("b, c", Data.join(b.categories()));
+        assertEquals("c", b.property("mode"));
+
+        // Defined category orders are respected
+        Field c = Fields.permute(a, new int[]{0, 1, 2, 3}, false);
+        c.set("categoriesOrdered", true);
+        c.set("categories", new Object[]{"c", "b", "a"});
+        assertTrue(c.compareRows(0, 1) < 0);
+        assertTrue(c.compareRows(3, 1) < 0);
+        assertTrue(c.compareRows(2, 0) > 0);
+        assertEquals("1, 1, 1", Data.join((int[]) c.property("categoryCounts")));
+    }
+
+    @Test
+    public void testDictionaryManyValues() {
+        // More than 256 values needs wider codes
+        int[] codes = new int[1000];
+        Object[] values = new Object[300];
+        for (int i = 0; i < values.length; i++) values[i] = 1000 + i;
+        for (int i = 0; i < codes.length; i++) codes[i] = i % 300;
+        DictionaryProvider p = DictionaryProvider.fromDictionary(values, codes);
+        assertEquals(1099, p.value(999));
+        assertEquals(99, p.code(999));
+        assertEquals(4, p.countCodes()[0]);
+        assertEquals(0, p.countCodes()[300]);
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testDictionaryStorage() {
+        // Repeated categories are stored as a dictionary
+        Field a = Fields.makeColumnField("a", null, new Object[]{"x", "y", "x", null, "y", "x"});
+        assertTrue(a.dictionary() != null);
+        assertEquals("x, y", Data.join(a.categories()));
+        assertEquals("3, 2, 1", Data.join(a.dictionary().countCodes()));
+
+        // Mostly distinct values are not
+        assertTrue(Fields.makeColumnField("a", null, new Object[]{"x", "y", "z"}).dictionary() == null);
+    }
+
 }
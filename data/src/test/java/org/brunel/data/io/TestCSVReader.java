@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.CannedData;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@JSTranslation(ignore = true)
+public class TestCSVReader {
+
+    private static final String NASTY =
+            ",B,B\n" +
+                    "1,hello,I'm happy\n\r" +
+                    "\"\"\"yes\"\"\",,yes\r\n" +
+                    "\"a\nb\",\"no\",\"\"\"\"\"\"\n" +
+                    ",\"\",";
+
+    @Test
+    public void testSameAsStringParsing() throws IOException {
+        assertSame(CannedData.bank);
+        assertSame(CannedData.movies);
+        assertSame(CannedData.whiskey);
+        assertSame(NASTY);
+        assertSame("a\tb\tc\n1\ta\tb\n2\tc\td");
+        assertSame("a,b\n1,2\n\nignored,after blank line");
+        assertSame("a,b\n1,\"unterminated");
+        assertSame("a,b\n1,2\"\"");
+        assertSame("a");
+    }
+
+    @Test
+    public void testMultiByteAcrossBuffers() throws IOException {
+        // Long enough to need several buffers, with characters that take several bytes in UTF-8
+        StringBuilder b = new StringBuilder("name,value\n");
+        for (int i = 0; i < 20000; i++) b.append("café ☃ ").append(i % 7).append(',').append(i).append('\n');
+        assertSame(b.toString());
+    }
+
+    @Test
+    public void testMismatchedLine() throws IOException {
+        try {
+            CSVReader.read(stream("a,b\n1,2\n3,4,5\n6,7"));
+            fail("Expected an error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 3 had 3 entries; expected 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDataset() throws IOException {
+        Dataset a = CSVReader.readDataset(stream(CannedData.bank));
+        Dataset b = Dataset.make(CSV.read(CannedData.bank));
+        assertEquals(CannedData.dump(b), CannedData.dump(a));
+        for (int i = 0; i < a.fields.length; i++) {
+            assertEquals(b.fields[i].isNumeric(), a.fields[i].isNumeric());
+            assertEquals(b.fields[i].isDate(), a.fields[i].isDate());
+        }
+    }
+
+    private void assertSame(String text) throws IOException {
+        Field[] expected = CSV.read(text);
+        Field[] actual = CSVReader.read(stream(text));
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].name, actual[i].name);
+            assertEquals(expected[i].label, actual[i].label);
+            assertEquals(expected[i].rowCount(), actual[i].rowCount());
+            for (int j = 0; j < expected[i].rowCount(); j++)
+                assertEquals(expected[i].value(j), actual[i].value(j));
+        }
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
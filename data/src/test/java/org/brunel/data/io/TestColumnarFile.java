@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.io;
+
+import org.brunel.data.CannedData;
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@JSTranslation(ignore = true)
+public class TestColumnarFile {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertRoundTrip(Dataset.make(CSV.read(CannedData.bank)));
+        assertRoundTrip(Dataset.make(CSV.read(CannedData.movies)));
+        assertRoundTrip(Dataset.make(CSV.read(CannedData.whiskey)));
+    }
+
+    @Test
+    public void testTransforms() throws IOException {
+        Dataset a = Dataset.make(CSV.read(CannedData.bank));
+        Dataset b = roundTrip(a);
+        String command = "salary=salary:mean; jobcat=jobcat:base; gender=gender";
+        assertEquals(CannedData.dump(a.summarize(command)), CannedData.dump(b.summarize(command)));
+        assertEquals(CannedData.dump(a.sort("bdate")), CannedData.dump(b.sort("bdate")));
+    }
+
+    @Test
+    public void testStatsAreStored() throws IOException {
+        Dataset a = Dataset.make(CSV.read(CannedData.whiskey));
+        Dataset b = roundTrip(a);
+        Field price = b.field("Price");
+        assertTrue(price.hasPrimitiveData());
+        assertTrue(price.isNumeric());
+        for (String key : new String[]{"n", "valid", "unique", "mean", "min", "max", "median", "q1", "q3"})
+            assertEquals(key, a.field("Price").property(key), price.property(key));
+        assertArrayEquals(a.field("Country").categories(), b.field("Country").categories());
+    }
+
+    @Test
+    public void testManyUniqueValuesAndMissing() throws IOException {
+        // Numbers with mostly unique values are stored one per row; dates and strings with missing values
+        int n = 1000;
+        Object[] numbers = new Object[n], dates = new Object[n], strings = new Object[n];
+        for (int i = 0; i < n; i++) {
+            numbers[i] = i % 10 == 0 ? null : i * 1.5;
+            dates[i] = i % 7 == 0 ? null : new Date(i * 86400000L);
+            strings[i] = i % 3 == 0 ? null : "s" + (i % 300);
+        }
+        Field a = Fields.makeColumnField("a", "A", numbers);
+        a.setNumeric();
+        Field b = Data.toDate(Fields.makeColumnField("b", "B", dates));
+        Field c = Fields.makeColumnField("c", null, strings);
+        Dataset data = Dataset.make(new Field[]{a, b, c}, false);
+        data.set("name", "test");
+
+        Dataset result = roundTrip(data);
+        assertEquals("test", result.name());
+        assertEquals(data.field("c").label, result.field("c").label);
+        assertTrue(result.field("b").isDate());
+        for (int i = 0; i < n; i++) {
+            assertEquals(data.field("a").value(i), result.field("a").value(i));
+            assertEquals(data.field("b").value(i), result.field("b").value(i));
+            assertEquals(data.field("c").value(i), result.field("c").value(i));
+        }
+
+        // Sorting and filtering use the mapped providers, then copy rows into memory
+        assertEquals(CannedData.dump(data.sort("c; b:descending").filter("a in 100, 600")),
+                CannedData.dump(result.sort("c; b:descending").filter("a in 100, 600")));
+    }
+
+    @Test
+    public void testUnsupportedValues() throws IOException {
+        Field mixed = Fields.makeColumnField("a", "A", new Object[]{"x", 1.0, null});
+        Dataset data = Dataset.make(new Field[]{mixed}, false);
+        assertFalse(ColumnarFile.canWrite(data));
+        File file = File.createTempFile("brunel", ".columns");
+        try {
+            ColumnarFile.write(data, file);
+            fail("Expected an error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field 'a' has values that cannot be stored", e.getMessage());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNotColumnarFile() throws IOException {
+        File file = File.createTempFile("brunel", ".columns");
+        try {
+            try {
+                ColumnarFile.read(file);
+                fail("Expected an error");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Not a columnar data file"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertRoundTrip(Dataset data) throws IOException {
+        assertTrue(ColumnarFile.canWrite(data));
+        Dataset result = roundTrip(data);
+        assertEquals(CannedData.dump(data), CannedData.dump(result));
+        for (int i = 0; i < data.fields.length; i++) {
+            assertEquals(data.fields[i].isNumeric(), result.fields[i].isNumeric());
+            assertEquals(data.fields[i].isDate(), result.fields[i].isDate());
+        }
+    }
+
+    private static Dataset roundTrip(Dataset data) throws IOException {
+        File file = File.createTempFile("brunel", ".columns");
+        try {
+            ColumnarFile.write(data, file);
+            return ColumnarFile.read(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
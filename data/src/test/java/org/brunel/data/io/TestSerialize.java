@@ -21,6 +21,7 @@ import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
+import org.brunel.data.util.Range;
 import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
@@ -30,6 +31,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 import java.util.Date;
 
 import static junit.framework.TestCase.assertEquals;
@@ -104,6 +106,50 @@ public class TestSerialize {
         assertEquals(12, b.max() - b.min(), 1e-6);
     }
 
+    @Test
+    public void testSerializeDateTimesExactly() {
+        // Days since 1970 with a time of day need more digits than the short numeric format gives
+        Date date1 = new Date(1457620245123L);
+        Date date2 = new Date(date1.getTime() + 3600000 * 5 + 17);
+        Field a = Data.toDate(Fields.makeColumnField("a", "b", new Object[]{date1, date2}));
+
+        Field b = (Field) Serialize.deserialize(Serialize.serializeField(a));
+        assertEquals(a.min(), b.min());
+        assertEquals(a.max(), b.max());
+    }
+
+    @Test
+    public void testSerializeFieldsKeepsSpecialFields() {
+        Dataset dataset = Dataset.make(CSV.read(CannedData.whiskey));
+        Field[] fields = new Field[]{dataset.field("Name"), dataset.field("#count")};
+        Dataset d = (Dataset) Serialize.deserialize(Serialize.serializeFields(fields));
+        assertEquals(dataset.rowCount(), d.rowCount());
+        assertEquals("Name", d.field("Name").label);
+        assertEquals(dataset.field("#count").numProperty("mean"), d.field("#count").numProperty("mean"), 1e-9);
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testBase64() {
+        Dataset dataset = Dataset.make(CSV.read(CannedData.bank));
+        byte[] bytes = Serialize.serializeDataset(dataset);
+        Dataset d = (Dataset) Serialize.deserializeBase64(Base64.getEncoder().encodeToString(bytes));
+        assertEquals(dataset.rowCount(), d.rowCount());
+        assertEquals(dataset.fields.length, d.fields.length);
+        assertEquals(dataset.field("salary").numProperty("mean"), d.field("salary").numProperty("mean"), 1e-6);
+    }
+
+    @JSTranslation(ignore = true)
+    @Test
+    public void testCanSerialize() {
+        Dataset dataset = Dataset.make(CSV.read(CannedData.whiskey));
+        for (Field f : dataset.fields) assertTrue(Serialize.canSerialize(f));
+
+        Field ranges = Fields.makeColumnField("a", "b", new Object[]{Range.make(1.0, 2.0), null});
+        assertTrue(!Serialize.canSerialize(ranges));
+        assertTrue(!Serialize.canSerialize(Data.toList(dataset.field("Brand"))));
+    }
+
     @Test
     public void testWhiskeyDataset() {
         Dataset dataset = Dataset.make(CSV.read(CannedData.whiskey));
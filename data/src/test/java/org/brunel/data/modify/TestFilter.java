@@ -118,4 +118,23 @@ public class TestFilter {
         assertEquals("A|B|C|D|#count|#row -- b|x|2|3|1|2 -- c|y|1|2|1|3", CannedData.dump(a));
     }
 
+    @Test
+    public void testFilterRepeatedValues() {
+        // Few distinct values, so categories are stored as dictionary codes in Java
+        Dataset data = Dataset.make(CSV.read(Data.join(new String[]{
+                "A,B",
+                "a,5", "b,3", "a,8", ",1", "c,9", "b,2", "a,7", "c,4", "b,6", "a,10"
+        }, "\n")));
+
+        assertEquals("1, 3, 7, 10", Data.join(data.filter("A is a").field("#row").categories()));
+        assertEquals("2, 5, 6, 8, 9", Data.join(data.filter("A !is a").field("#row").categories()));
+        assertEquals("2, 5, 6, 8, 9", Data.join(data.filter("A in b,c").field("#row").categories()));
+        assertEquals("1, 3, 7", Data.join(data.filter("A is a; B in 4,9").field("#row").categories()));
+        assertEquals("2, 4, 6, 9", Data.join(data.filter("B is 6, 3, 1, 2").field("#row").categories()));
+
+        // The top three values of B, and all but the top two
+        assertEquals("3, 5, 10", Data.join(data.filter("B ranked 1,3").field("#row").categories()));
+        assertEquals("1, 2, 3, 4, 6, 7, 8, 9", Data.join(data.filter("B !ranked 1,2").field("#row").categories()));
+    }
+
 }
@@ -54,5 +54,13 @@ public class TestFit {
         Assert.assertEquals("C|X|Y|#count|#row -- a|1|1|1|1 -- a|2|2|1|2 -- b|1|3|1|3 -- b|2|3|1|4 -- b|3|3|1|5", CannedData.dump(a));
     }
 
+    @Test
+    public void testSmoothIncludesEnds() {
+        // The window is half the range, so the last point contributes to the smooth at the previous point
+        Dataset data = Dataset.make(CSV.read("X,Y\n1,0\n2,0\n3,0\n4,8"));
+        Dataset a = data.summarize("Y=Y:smooth:100; X=X:base");
+        Assert.assertEquals("X|Y|#count|#row -- 1|0|1|1 -- 2|0|1|2 -- 3|2.1052632|1|3 -- 4|5.1428571|1|4", CannedData.dump(a));
+    }
+
 
 }
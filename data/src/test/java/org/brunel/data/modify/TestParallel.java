@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.modify;
+
+import org.brunel.data.CannedData;
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.brunel.data.io.CSVReader;
+import org.brunel.data.util.Parallel;
+import org.brunel.translator.JSTranslation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@JSTranslation(ignore = true)
+public class TestParallel {
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        // Use many small partitions so that even the canned data is split up
+        pool = new ForkJoinPool(4);
+        Parallel.setMinimumRows(3);
+    }
+
+    @After
+    public void tearDown() {
+        Parallel.setPool(ForkJoinPool.commonPool());
+        Parallel.setMinimumRows(50000);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testPartitions() {
+        Parallel.setPool(pool);
+        assertEquals(1, Parallel.partitions(5));
+        assertEquals(16, Parallel.partitions(10000));
+        assertEquals(10, Parallel.concatenate(new int[][]{{1, 2}, {}, {3, 4, 5, 6, 7, 8, 9, 10}}).length);
+        Parallel.setPool(null);
+        assertEquals(1, Parallel.partitions(10000));
+    }
+
+    @Test
+    public void testFilter() {
+        assertSameInParallel("filter", "Production_Budget in 10000000, 50000000; MPAA_Rating !is R");
+        assertSameInParallel("filter", "IMDB_Rating valid");
+    }
+
+    @Test
+    public void testBin() {
+        assertSameInParallel("transform", "US_Gross=bin; Release_Date=bin:20");
+    }
+
+    @Test
+    public void testSummarize() {
+        assertSameInParallel("summarize", "MPAA_Rating=MPAA_Rating; Major_Genre=Major_Genre:base; " +
+                "a=US_Gross:mean; b=US_Gross:median; c=IMDB_Rating:iqr; d=Production_Budget:percent; " +
+                "e=Release_Date:range; f=Director:unique");
+    }
+
+    @Test
+    public void testReadCSV() {
+        assertSameInParallel("read", "");
+    }
+
+    @Test
+    public void testFormatNumeric() {
+        // Every thread formats with its own formats, so the results do not depend on what other threads do
+        final double[] values = new double[20000];
+        for (int i = 0; i < values.length; i++) values[i] = (i - 10000) * 1234.5678 / (i % 97 + 1);
+        final String[] expected = new String[values.length], actual = new String[values.length];
+        for (int i = 0; i < values.length; i++) expected[i] = Data.formatNumeric(values[i], i % 2 == 0);
+        Parallel.setPool(pool);
+        Parallel.forEachRange(16, values.length, new Parallel.RangeTask() {
+            public void run(int part, int start, int end) {
+                for (int i = start; i < end; i++) actual[i] = Data.formatNumeric(values[i], i % 2 == 0);
+            }
+        });
+        for (int i = 0; i < values.length; i++) assertEquals(expected[i], actual[i]);
+    }
+
+    private void assertSameInParallel(String operation, String command) {
+        Parallel.setPool(null);
+        Dataset sequential = run(operation, command);
+        Parallel.setPool(pool);
+        Dataset parallel = run(operation, command);
+
+        assertTrue(sequential.rowCount() > 0);
+        assertEquals(sequential.rowCount(), parallel.rowCount());
+        assertEquals(sequential.fields.length, parallel.fields.length);
+        for (int i = 0; i < sequential.fields.length; i++) {
+            Field a = sequential.fields[i], b = parallel.fields[i];
+            assertEquals(a.name, b.name);
+            assertEquals(a.isNumeric(), b.isNumeric());
+            assertEquals(a.isDate(), b.isDate());
+            for (int r = 0; r < a.rowCount(); r++)
+                assertEquals(a.name + "[" + r + "]", 0, Data.compare(a.value(r), b.value(r)));
+        }
+    }
+
+    private Dataset run(String operation, String command) {
+        // Read freshly each time, so no statistics are shared between runs
+        if (operation.equals("read")) return CSVReader.readDataset(CannedData.movies);
+        Dataset data = Dataset.make(CSV.read(CannedData.movies));
+        if (operation.equals("filter")) return Filter.transform(data, command);
+        if (operation.equals("transform")) return Transform.transform(data, command);
+        return Summarize.transform(data, command);
+    }
+}
@@ -128,6 +128,15 @@ public class TestSummary {
                 CannedData.dump(a));
     }
 
+    @Test
+    public void testOrderStats() {
+        // Odd and even sized groups use different hinge definitions
+        Dataset a = Summarize.transform(data, "jobcat=jobcat; a=salary:q1; b=salary:median; c=salary:q3; d=educ:sum");
+        assertEquals("jobcat|a|b|c|d|#count|#row -- " +
+                "Clerical|22,950|27,900|37,425|307|23|2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, \u2026 -- " +
+                "Manager|57,000|80,375|103,750|31|2|1, 18", CannedData.dump(a));
+    }
+
     @Test
     public void testSimpleStatsNonNumeric() {
         String spec = "gender = gender; a = jobcat: mean; b = jobcat:min;  d = jobcat: valid; e = jobcat:median; f = jobcat:stddev; g = jobcat:unique ; h = jobcat:mode";
@@ -32,4 +32,26 @@ public class TestFieldComparison {
         int[] order = compare.makeSortedOrder();
         assertEquals("0, 5, 2, 1, 3, 4", Data.join(order));
     }
+
+    @Test
+    public void testSortDescendingWithMissing() {
+        Field a = Fields.makeColumnField("A", null, new Object[]{"x", "y", null, "x", "y", "x"});
+
+        // Doubles are stored as primitives, integers as objects; both must sort the same way
+        Field b = Fields.makeColumnField("B", null, new Object[]{3.0, 1.0, 2.0, null, 5.0, -0.0});
+        Field c = Fields.makeColumnField("C", null, new Object[]{3, 1, 2, null, 5, 0});
+        b.setNumeric();
+        c.setNumeric();
+
+        // Missing values sort last ascending, so come first when descending
+        boolean[] ascending = new boolean[]{true, false};
+        assertEquals("3, 0, 5, 4, 1, 2", Data.join(new FieldRowComparison(new Field[]{a, b}, ascending, true).makeSortedOrder()));
+        assertEquals("3, 0, 5, 4, 1, 2", Data.join(new FieldRowComparison(new Field[]{a, c}, ascending, false).makeSortedOrder()));
+        assertEquals("5, 1, 2, 0, 4, 3", Data.join(new FieldRowComparison(new Field[]{b}, null, true).makeSortedOrder()));
+
+        // Ties keep the row order
+        Field d = Fields.makeColumnField("D", null, new Object[]{2.0, 1.0, 2.0, 1.0, 2.0, 1.0});
+        d.setNumeric();
+        assertEquals("0, 2, 4, 1, 3, 5", Data.join(new FieldRowComparison(new Field[]{d}, new boolean[]{false}, false).makeSortedOrder()));
+    }
 }
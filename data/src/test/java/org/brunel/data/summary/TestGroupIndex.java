@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestGroupIndex {
+
+    @Test
+    public void testSingleField() {
+        Field a = Fields.makeColumnField("A", null, new Object[]{"b", "a", null, "b", "c", "a"});
+        GroupIndex groups = new GroupIndex(new Field[]{a}, 6);
+        assertEquals(4, groups.groupCount);
+        assertEquals("1, 5", Data.join(groups.rows(0)));
+        assertEquals("0, 3", Data.join(groups.rows(1)));
+        assertEquals("4", Data.join(groups.rows(2)));
+        assertEquals("2", Data.join(groups.rows(3)));
+        assertEquals(1, groups.group(3));
+        assertEquals(2, groups.size(1));
+        assertEquals(3, groups.row(1, 1));
+    }
+
+    @Test
+    public void testMultipleFields() {
+        Field a = Fields.makeColumnField("A", null, new Object[]{2.0, 1.0, 2.0, 1.0, 2.0});
+        Field b = Fields.makeColumnField("B", null, new Object[]{"x", "y", "x", "x", "w"});
+        GroupIndex groups = new GroupIndex(new Field[]{a, b}, 5);
+        assertEquals(4, groups.groupCount);
+        assertEquals("3", Data.join(groups.rows(0)));
+        assertEquals("1", Data.join(groups.rows(1)));
+        assertEquals("4", Data.join(groups.rows(2)));
+        assertEquals("0, 2", Data.join(groups.rows(3)));
+        assertEquals(0, groups.firstRow(3));
+    }
+
+    @Test
+    public void testNoFields() {
+        GroupIndex groups = new GroupIndex(new Field[0], 3);
+        assertEquals(1, groups.groupCount);
+        assertEquals("0, 1, 2", Data.join(groups.rows(0)));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.data.util;
+
+import org.brunel.data.Data;
+import org.brunel.data.values.ColumnProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.translator.JSTranslation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Java hash table in MapInt; Javascript uses its own map
+ */
+@JSTranslation(ignore = true)
+public class TestMapInt {
+
+    @Test
+    public void testGrowth() {
+        // Enough keys to grow the arrays and rehash the table several times
+        MapInt map = new MapInt();
+        for (int i = 0; i < 1000; i++)
+            for (int j = 0; j <= i % 3; j++) map.increment("k" + i);
+        assertEquals(1000, map.size());
+        assertEquals(334 + 333 * 2 + 333 * 3, map.getTotalCount());
+        for (int i = 0; i < 1000; i++) assertEquals(i % 3 + 1, map.get("k" + i));
+        assertEquals(0, map.get("k1000"));
+        assertEquals(0, map.get(null));
+    }
+
+    @Test
+    public void testNullKeys() {
+        // Index keeps a place for null, which the table cannot hold; counting ignores it
+        MapInt map = new MapInt().index(new Object[]{"a", null, "b", null, "a"});
+        assertEquals(3, map.size());
+        assertEquals(0, map.get("a"));
+        assertEquals(1, map.get(null));
+        assertEquals(2, map.get("b"));
+        assertEquals("a, ?, b", Data.join(map.getIndexedKeys()));
+
+        map.increment(null);
+        assertEquals(1, map.get(null));
+        assertEquals(0, map.getTotalCount());
+    }
+
+    @Test
+    public void testEqualKeys() {
+        // Keys equal to one added, but different instances, find the same entry
+        String a = "category";
+        String b = new String(a);
+        assertNotSame(a, b);
+        MapInt map = new MapInt();
+        map.increment(a);
+        map.increment(b);
+        map.increment(1.5);
+        map.increment(new Double(1.5));
+        assertEquals(2, map.size());
+        assertEquals(2, map.get(new String(a)));
+        assertEquals(2, map.get(1.5));
+    }
+
+    @Test
+    public void testCountAll() {
+        // Counting a dictionary by its codes gives the same counts as counting each row
+        Object[] column = new Object[]{"x", "y", null, "x", "z", "x", null, "y"};
+        DictionaryProvider dictionary = DictionaryProvider.make(column, column.length);
+        MapInt byCodes = new MapInt().countAll(dictionary);
+        MapInt byRows = new MapInt().countAll(new ColumnProvider(column));
+        assertEquals(3, byCodes.size());
+        assertEquals(6, byCodes.getTotalCount());
+        assertEquals(byRows.getTotalCount(), byCodes.getTotalCount());
+        assertEquals(Data.join(byRows.sortedKeys()), Data.join(byCodes.sortedKeys()));
+        for (Object key : byRows.sortedKeys()) assertEquals(byRows.get(key), byCodes.get(key));
+        assertEquals(3, byCodes.get("x"));
+        assertEquals("x", byCodes.mode());
+    }
+
+    @Test
+    public void testIndexedKeysOrder() {
+        // Keys keep the index they were first given, in the order they were given it
+        MapInt map = new MapInt().index(new Object[]{"c", "a", "b"});
+        map.index(new Object[]{"a", "d", "c", "e"});
+        assertEquals("c, a, b, d, e", Data.join(map.getIndexedKeys()));
+        assertEquals(3, map.get("d"));
+        assertEquals("a, b, c, d, e", Data.join(map.sortedKeys()));
+        assertTrue(map.getIndexedKeys().length == map.size());
+    }
+}
@@ -44,20 +44,56 @@ lib_dir = os.path.join(os.path.dirname(os.path.abspath(inspect.getfile(inspect.c
 
 def display(brunel, data, width=800, height=600, output='d3'):
 
-    csv = None
-    if data is not None:
-        csv = to_csv(data)
-
     # unique identifier for HTML tags
     visid = "visid" + str(uuid.uuid1())
 
     # D3 is currently the only supported renderer
     if output == 'd3':
-        result = brunel_jpype_call(csv, brunel, width, height, visid)
+        if data is None:
+            result = brunel_jpype_call(None, brunel, width, height, visid)
+        else:
+            result = brunel_jpype_columns_call(to_columns(data), brunel, width, height, visid)
         return d3_output(result, visid, width, height)
     else:
         raise ValueError("Valid Output Choices Are:   d3")
 
+# Convert a DataFrame to typed Java columns, without going through text.
+# Numbers are passed as doubles (NaN is missing), dates as epoch milliseconds (NaT is missing)
+# and anything else as a dictionary of strings with a code per row (-1 is missing).
+def to_columns(df):
+    import numpy as np
+    import pandas as pd
+
+    #If user has done something to cause a named Index, preserve it
+    if df.index.name is not None:
+        df = df.reset_index()
+
+    text = unicode if sys.version_info < (3,0) else str
+    names, types, columns, codes = [], [], [], []
+    for name in df.columns:
+        series = df[name]
+        kind = series.dtype.kind
+        names.append(text(name))
+        if kind in 'iuf':
+            types.append("numeric")
+            columns.append(jpype.JArray(jpype.JDouble, 1)(np.ascontiguousarray(series.values, dtype=np.float64)))
+            codes.append(None)
+        elif kind == 'M':
+            times = np.ascontiguousarray(series.values.astype('datetime64[ms]').astype(np.int64))
+            types.append("date")
+            columns.append(jpype.JArray(jpype.JLong, 1)(times))
+            codes.append(None)
+        else:
+            # Factorize the text, so values that print the same share one dictionary entry. Nulls and empty
+            # strings are missing values (code -1), as they were when data was sent as CSV
+            strings = series.astype(text)
+            indices, uniques = pd.factorize(strings.where(series.notnull() & (strings != "")))
+            types.append("string")
+            columns.append(jpype.JArray(jpype.JString, 1)([text(u) for u in uniques]))
+            codes.append(jpype.JArray(jpype.JInt, 1)(np.ascontiguousarray(indices, dtype=np.int32)))
+    return (jpype.JArray(jpype.JString, 1)(names), jpype.JArray(jpype.JString, 1)(types),
+            jpype.JArray(jpype.JObject, 1)(columns), jpype.JArray(jpype.JObject, 1)(codes))
+
 def to_csv(df):
 
         #If user has done something to cause a named Index, preserve it
@@ -87,12 +123,27 @@ def brunel_jpype_call(data, brunel_src, width, height, visid):
         raise ValueError(exception.message())
 
 
+# As above, but passing the data as typed columns
+def brunel_jpype_columns_call(columns, brunel_src, width, height, visid):
+    names, types, data, codes = columns
+    try:
+        return brunel_util_java.D3Integration.createBrunelJSONFromColumns(names, types, data, codes, brunel_src,
+                                                                         int(width), int(height), visid, None)
+    except jpype.JavaException as exception:
+        raise ValueError(exception.message())
+
 def get_dataset_names(brunel_src):
     return brunel_util_java.D3Integration.getDatasetNames(brunel_src)
 
 def cacheData(data_key, data):
     brunel_util_java.D3Integration.cacheData(data_key, data)
 
+# Cache a DataFrame, passing it as typed columns
+def cacheDataFrame(data_key, df):
+    names, types, data, codes = to_columns(df)
+    dataset = brunel_util_java.D3Integration.makeDataset(names, types, data, codes)
+    brunel_util_java.D3Integration.cacheData(data_key, dataset)
+
 # D3 response should contain the D3 JS and D3 CSS
 def d3_output(response, visid, width, height):
     results = json.loads(response)
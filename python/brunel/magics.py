@@ -65,7 +65,7 @@ class BrunelMagics(Magics):
         for data_name in datasets_in_brunel:
             try:
                 data = dataframes[data_name]
-                brunel.cacheData(data_name, brunel.to_csv(data))
+                brunel.cacheDataFrame(data_name, data)
             except:
                 pass
 
@@ -41,11 +41,11 @@ object Brunel {
 
   /**
    * Create Brunel notebook output from a Spark DataFrame using the provided Brunel source.  This output is currently
-   * a D3 visualization.
+   * a D3 visualization.  The DataFrame is reduced by Spark to the data the visualization needs before it is collected.
    *
    */
   def create(df:DataFrame, brunelSrc: String, width: Int, height: Int, visId: String, controlsId: String): BrunelOutput = {
-    val dataset = makeDataset(df)
+    val dataset = makeDataset(SparkPushdown.reduce(df, brunelSrc))
     val builder = D3Integration.makeD3(dataset, brunelSrc, width, height, visId, controlsId)
     new BrunelOutput(builder.getVisualization.toString, builder.getStyleOverrides, builder.getControls)
   }
@@ -73,9 +73,10 @@ object Brunel {
     val fields = new Array[Field](cols.length)
 
     for (i <- 0 to cols.length - 1) {
-      val name = CSV.identifier(cols(i).trim)   //Brunel-friendly field name from spark column name
-      val label = CSV.identifier(cols(i).trim)  //Brunel-friendly label
-      val provider = makeProvider(dtypes(i)._2, i, rows)
+      val counts = cols(i) == "#count"          //Group sizes from data summarized by Spark
+      val name = if (counts) "#count" else CSV.identifier(cols(i).trim)   //Brunel-friendly field name from spark column name
+      val label = if (counts) "Count" else CSV.identifier(cols(i).trim)  //Brunel-friendly label
+      val provider = SparkDataProvider.make(dtypes(i)._2, i, rows)
       fields(i) = new Field(name, label, provider)
       addTypeInfo(fields(i), dtypes(i)._2)
     }
@@ -84,20 +85,13 @@ object Brunel {
 
   }
 
-  //Creates a SparkDataProvider that will return the appropriate data value type needed by Brunel
-  def makeProvider(colType: String, index: Int, rows: Array[Row]): SparkDataProvider[Any] = {
-
-    if (numericTypes.contains(colType)) {
-      return new SparkDataProvider[Double](index, rows)
-    } else if (dateTypes.contains(colType)) {
-      return new SparkDataProvider[java.sql.Date](index, rows)
-    } else return new SparkDataProvider[String](index, rows);
-  }
+  //True for numeric types, including decimal types, which are written with their precision and scale
+  def isNumericType(colType: String): Boolean = numericTypes.exists(t => colType.startsWith(t))
 
   //Adds field type information to a Field based on the types defined in the Spark DataFrame
   def addTypeInfo(field: Field, colType: String) {
 
-    if (numericTypes.contains(colType)) {
+    if (isNumericType(colType)) {
       field.set("numeric", true)
     }
 
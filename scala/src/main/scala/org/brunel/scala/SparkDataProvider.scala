@@ -16,51 +16,58 @@
 
 package org.brunel.scala
 
+import java.util.TimeZone
+
 import org.apache.spark.sql.Row
-import org.brunel.data.util.MapInt
 
+import org.brunel.data.util.DateParser
+import org.brunel.data.values.DateColumnProvider
+import org.brunel.data.values.DictionaryProvider
+import org.brunel.data.values.DoubleColumnProvider
 import org.brunel.data.values.Provider
-import org.brunel.data.values.ColumnProvider
-import org.brunel.data.Data
-
-import java.util.HashMap
 
-//Brunel Provider implementation for Spark DataFrames typed to the expected data value types needed by Brunel.
-class SparkDataProvider[+T] (colIndex:Int, rows:Array[Row]) extends Provider {
+//Converts a column of collected Spark rows into a Brunel provider, so the rows need not be kept once all columns
+//are converted.  Numbers are stored as primitive doubles and dates as primitive times.  Anything else is stored as
+//strings coded into a dictionary, so each distinct value is held once.
+object SparkDataProvider {
 
-  //Column structure created on-demand when needed to estimate memory
-  //Note:  Missing data values are removed because of this issue in scala 2.10:  https://issues.scala-lang.org/browse/SI-6908
-  lazy val column : List[T]  = List.tabulate(rows.length) (x => rows(x).getAs[T](colIndex) ).filter(p => p != null)
+  //Creates a provider that will return the appropriate data value type needed by Brunel
+  def make(colType: String, colIndex: Int, rows: Array[Row]): Provider = {
+    if (Brunel.isNumericType(colType)) numeric(colIndex, rows)
+    else if (Brunel.dateTypes.contains(colType)) dates(colIndex, rows)
+    else strings(colIndex, rows)
+  }
 
-  def compareRows(a: Int, b: Int, categoryOrder: MapInt): Int = {
-    val p = rows(a).getAs[T](colIndex)
-    val q = rows(b).getAs[T](colIndex)
-    if (p == q) return 0
-    if (p == null) return 1
-    if (categoryOrder.isEmpty()) {
-      return Data.compare(p,q)
-    }
-    else {
-      return categoryOrder.get(p) - categoryOrder.get(q)
+  def numeric(colIndex: Int, rows: Array[Row]): Provider = {
+    val data = new Array[Double](rows.length)
+    for (i <- 0 until rows.length) {
+      val row = rows(i)
+      data(i) = if (row.isNullAt(colIndex)) Double.NaN else row.get(colIndex).asInstanceOf[Number].doubleValue
     }
+    DoubleColumnProvider.fromValues(data)
   }
 
-  def count(): Int = rows.length
-  def expectedSize(): Int = {
-
-    val unique = column.distinct
-    var total = 24 + 4 * column.length
-    if (column(0).isInstanceOf[String]) {
-      for (item <- unique) total += (42 + item.asInstanceOf[String].length() * 2)
+  //Spark dates and timestamps are in the local time zone, but Brunel reads dates as UTC; keep the local clock time
+  def dates(colIndex: Int, rows: Array[Row]): Provider = {
+    val zone = TimeZone.getDefault
+    val times = new Array[Long](rows.length)
+    for (i <- 0 until rows.length) {
+      val row = rows(i)
+      if (row.isNullAt(colIndex)) times(i) = DateParser.MISSING
+      else {
+        val time = row.get(colIndex).asInstanceOf[java.util.Date].getTime
+        times(i) = time + zone.getOffset(time)
+      }
     }
-    else {
-      total += (16*unique.length)
-    }
-
-    return total
-
+    DateColumnProvider.fromTimes(times, DateParser.MISSING)
   }
 
-  def setValue(o: Any,index: Int): Provider = ColumnProvider.copy(this).setValue(o, index);
-  def value(index: Int): Object = rows(index).getAs(colIndex)
+  def strings(colIndex: Int, rows: Array[Row]): Provider = {
+    val data = new Array[Object](rows.length)
+    for (i <- 0 until rows.length) {
+      val row = rows(i)
+      if (!row.isNullAt(colIndex)) data(i) = row.get(colIndex).toString
+    }
+    DictionaryProvider.make(data, Integer.MAX_VALUE)
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.scala
+
+import org.apache.spark.sql.Column
+import org.apache.spark.sql.DataFrame
+import org.apache.spark.sql.functions._
+
+import org.brunel.action.Action
+import org.brunel.data.io.CSV
+import org.brunel.model.VisItem
+import org.brunel.model.VisSingle
+import org.brunel.model.VisTypes.Interaction
+
+import scala.collection.JavaConversions._
+
+/**
+ * Reduces a Spark DataFrame to the data a Brunel visualization needs, before it is collected to the driver.
+ * Only the columns the visualization uses are kept.  When the visualization is a single element that summarizes
+ * its data using only sums, means, minimums, maximums and counts, the grouping is done by Spark.  Brunel then
+ * summarizes one row per group, which gives the same results.  Charts that show the rows without summarizing
+ * them are sampled down to at most maxRows rows.
+ */
+object SparkPushdown {
+
+  //Summaries that give the same result when applied again to a single row per group
+  val pushedSummaries = Set("sum", "mean", "min", "max")
+
+  //The most rows collected for charts that show rows without summarizing them
+  var maxRows = 100000
+
+  //Seed for the sample used when there are too many rows
+  var sampleSeed = 1234L
+
+  //Rows collected to resolve the field names used in the Brunel
+  val schemaRows = 100
+
+  /**
+   * Reduce a DataFrame for the given Brunel.  The DataFrame is returned unchanged when the Brunel cannot be
+   * analyzed (the error will be reported when the visualization is built) or reads its data from the cache.
+   */
+  def reduce(df: DataFrame, brunelSrc: String): DataFrame = {
+    if (df == null || brunelSrc == null) return df
+    val singles = try {
+      elements(Action.parse(brunelSrc).apply(Brunel.makeDataset(df.limit(schemaRows))))
+    } catch {
+      case e: Exception => return df
+    }
+    if (singles.exists(_.fData != null)) return df
+
+    //Brunel field names for each DataFrame column
+    val columns = df.columns.map(c => CSV.identifier(c.trim) -> c).toMap
+
+    val pruned = prune(df, singles.flatMap(_.usedFields(true)).toSet)
+    if (singles.length == 1) {
+      val summarized = summarize(pruned, singles.head, columns)
+      if (summarized != null) return summarized
+    }
+
+    //Sampling would change the results of anything Brunel calculates from the rows
+    if (singles.exists(s => summarizes(s) || !s.fTransform.isEmpty)) pruned else sample(pruned)
+  }
+
+  //All the single elements of a visualization
+  def elements(item: VisItem): Seq[VisSingle] = {
+    if (item.children() == null) Seq(item.getSingle) else item.children().toSeq.flatMap(elements)
+  }
+
+  //Select only the columns that are used
+  def prune(df: DataFrame, used: Set[String]): DataFrame = {
+    if (used.contains("#all")) return df
+    val kept = df.columns.filter(c => used.contains(CSV.identifier(c.trim)))
+    if (kept.isEmpty) df else df.select(kept.map(df(_)): _*)
+  }
+
+  //True if Brunel will summarize the data for this element
+  def summarizes(vis: VisSingle): Boolean = !vis.fSummarize.isEmpty || vis.usedFields(false).contains("#count")
+
+  /**
+   * Group and summarize the data in Spark, giving one row per group with the summaries in the columns of the
+   * fields they summarize, and a '#count' column.  Returns null if Brunel needs the original rows.
+   */
+  def summarize(df: DataFrame, vis: VisSingle, columns: Map[String, String]): DataFrame = {
+    if (!summarizes(vis)) return null
+
+    //Filters and controls work on the original rows, as do bins and ranks
+    if (!vis.fFilter.isEmpty || !vis.fTransform.isEmpty || vis.tInteraction.containsKey(Interaction.filter)) return null
+    if (vis.fSummarize.keySet.exists(_.hasModifiers)) return null
+
+    val measures = vis.fSummarize.toMap.map { case (p, method) => (p.asField, method) }
+    for ((field, method) <- measures)
+      if (!pushedSummaries.contains(method) || !columns.contains(field) || !isNumeric(df, columns(field))) return null
+
+    //All other fields are dimensions; special fields such as #row refer to the original rows
+    val dimensions = vis.usedFields(false).toSet -- measures.keySet -- Set("#count", "#series", "#values")
+    if (dimensions.exists(_.startsWith("#"))) return null
+
+    //Brunel removes rows with missing positions before summarizing
+    var data = df
+    for (p <- vis.positionFields() if columns.contains(p)) data = data.filter(data(columns(p)).isNotNull)
+
+    val groups = dimensions.toSeq.filter(columns.contains).map(d => data(columns(d)))
+    val aggregates = measures.toSeq.map { case (field, method) =>
+      aggregate(method, data(columns(field))).as(columns(field))
+    } :+ count(lit(1)).as("#count")
+    data.groupBy(groups: _*).agg(aggregates.head, aggregates.tail: _*)
+  }
+
+  //The Spark aggregate for a Brunel summary method
+  def aggregate(method: String, column: Column): Column = method match {
+    case "sum" => sum(column)
+    case "mean" => avg(column)
+    case "min" => min(column)
+    case "max" => max(column)
+  }
+
+  def isNumeric(df: DataFrame, column: String): Boolean = Brunel.isNumericType(df.schema(column).dataType.toString)
+
+  //Sample the rows down to maxRows if there are more.  The limited count stops reading once it has passed maxRows,
+  //and a limit on a random ordering is planned as a single top-k pass, so the total is never counted
+  def sample(df: DataFrame): DataFrame = {
+    if (df.limit(maxRows + 1).count() <= maxRows) return df
+    df.orderBy(rand(sampleSeed)).limit(maxRows)
+  }
+
+}
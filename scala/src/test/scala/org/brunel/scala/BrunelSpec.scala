@@ -23,6 +23,14 @@ import org.apache.spark._
 import org.apache.spark.sql.DataFrame
 import org.apache.spark.sql.SQLContext
 import org.apache.spark.sql.types.DoubleType
+import org.apache.spark.sql.types.IntegerType
+import org.brunel.action.Action
+import org.brunel.build.data.DataBuilder
+import org.brunel.data.Dataset
+import org.brunel.data.io.CSV
+import org.brunel.data.values.DateColumnProvider
+import org.brunel.data.values.DictionaryProvider
+import org.brunel.data.values.DoubleColumnProvider
 
 @RunWith(classOf[JUnitRunner])
 class BrunelSpec extends UnitSpec {
@@ -45,19 +53,49 @@ class BrunelSpec extends UnitSpec {
   val rows = df.collect()
 
   "The SparkDataProvider columns" should "have proper length and expected memory size" in {
-    val dp0: SparkDataProvider[Int] = new SparkDataProvider[Int](0, rows)
-    val dp1: SparkDataProvider[Double] = new SparkDataProvider[Double](1, rows)
-    val dp3: SparkDataProvider[String] = new SparkDataProvider[String](3, rows)
+    val dp0 = SparkDataProvider.make("IntegerType", 0, rows)
+    val dp1 = SparkDataProvider.make("DoubleType", 1, rows)
+    val dp2 = SparkDataProvider.make("DateType", 2, rows)
+    val dp3 = SparkDataProvider.make("StringType", 3, rows)
 
     assert(dp0.count() == 4)
     assert(dp1.count() == 4)
-    assert(dp0.expectedSize() == 88)
+    assert(dp0.isInstanceOf[DoubleColumnProvider])
+    assert(dp0.expectedSize() == 76)        //Eight bytes a row, and a word of missing value flags
     assert(dp0.value(3) == 187)
     assert(dp1.value(3) == null)
-    assert(dp3.expectedSize() == 248)
+    assert(dp2.isInstanceOf[DateColumnProvider])
+    assert(dp3.isInstanceOf[DictionaryProvider])
     assert(dp3.value(3) == "Porsche")
   }
 
+  it should "not need the rows once made" in {
+    val copy = df.collect()
+    val provider = SparkDataProvider.make("StringType", 3, copy)
+    for (i <- 0 until copy.length) copy(i) = null
+    assert(provider.value(1) == "Chevy")
+  }
+
+  it should "hold the same values as CSV.read of the same data" in {
+    val text = "mpg,horsepower,date,name\n123,234.2,2007-12-12,Ford\n123,247.5,2007-12-12,Chevy\n" +
+      "189,254,2007-12-13,Audi\n187,,2007-12-12,Porsche\n,97,,"
+    val lines = text.split("\n").tail.map(_.split(",", -1).map(s => if (s.isEmpty) null else s))
+    val strings = spark.makeRDD(lines.map(a => (a(0), a(1), a(2), a(3)))).toDF("mpg", "horsepower", "date", "name")
+    val collected = Brunel.makeDataset(strings.select(strings("mpg").cast(IntegerType).as("mpg"),
+      strings("horsepower").cast(DoubleType).as("horsepower"), to_date(strings("date")).as("date"), strings("name")))
+    val read = Dataset.make(CSV.read(text))
+
+    for (name <- Seq("mpg", "horsepower", "date", "name")) {
+      val (a, b) = (collected.field(name), read.field(name))
+      assert(a.isNumeric() == b.isNumeric(), name)
+      assert(a.isDate() == b.isDate(), name)
+      assert(a.rowCount() == b.rowCount(), name)
+      for (i <- 0 until a.rowCount()) assert(a.value(i) == b.value(i), name + " row " + i)
+      assert(a.valid() == b.valid(), name)
+      assert(a.categories().toSeq == b.categories().toSeq, name)
+      if (a.isNumeric()) assert(a.min() == b.min() && a.max() == b.max(), name)
+    }
+  }
 
   "The Dataset" should "contain numeric, date and String fields" in {
     val dataset = Brunel.makeDataset(df)
@@ -73,6 +111,52 @@ class BrunelSpec extends UnitSpec {
 
   }
 
+  "A summarized chart" should "be grouped by Spark before collecting" in {
+    val reduced = SparkPushdown.reduce(df, "bar x(date) y(mpg) sum(mpg)")
+    assert(reduced.columns.toSet == Set("date", "mpg", "#count"))
+    assert(reduced.count() == 2)
+
+    val dataset = Brunel.makeDataset(reduced)
+    assert(dataset.field("#count").max() == 3)
+    assert(dataset.field("mpg").max() == 433)
+  }
+
+  it should "give the same summaries as Brunel does on all the rows" in {
+    for (brunel <- Seq("bar x(date) y(mpg) sum(mpg)", "bar x(name) y(horsepower) mean(horsepower)",
+      "point x(date) y(horsepower) max(horsepower) size(#count)", "bar x(mpg) y(#count)")) {
+      val reduced = SparkPushdown.reduce(df, brunel)
+      assert(reduced.columns.contains("#count"), brunel)
+      assert(summarized(reduced, brunel) == summarized(df, brunel), brunel)
+    }
+  }
+
+  //The rows of the data Brunel builds for a chart, in a fixed order
+  def summarized(frame: DataFrame, brunel: String): Seq[String] = {
+    val vis = Action.parse(brunel).apply(Brunel.makeDataset(frame)).getSingle
+    val data = DataBuilder.getTransformedData(vis)
+    val names = vis.usedFields(false).toSeq
+    (0 until data.rowCount()).map(i => names.map(n => data.field(n).value(i)).mkString(",")).sorted
+  }
+
+  "A chart of rows" should "only collect the columns it uses" in {
+    val reduced = SparkPushdown.reduce(df, "point x(mpg) y(horsepower)")
+    assert(reduced.columns.toSeq == Seq("mpg", "horsepower"))
+    assert(reduced.count() == 4)
+  }
+
+  it should "be sampled when there are too many rows" in {
+    val saved = SparkPushdown.maxRows
+    SparkPushdown.maxRows = 2
+    try {
+      val sampled = SparkPushdown.reduce(df, "point x(mpg) y(horsepower)")
+      assert(sampled.count() == 2)
+      assert(sampled.collect().toSet.subsetOf(df.select("mpg", "horsepower").collect().toSet))
+      assert(SparkPushdown.reduce(df, "bar x(name) y(horsepower) mean(horsepower) filter(mpg)").count() == 4)
+    } finally {
+      SparkPushdown.maxRows = saved
+    }
+  }
+
   "A BrunelOutput" should "contain javascript and css" in {
 
     Brunel.cacheData("a", df)
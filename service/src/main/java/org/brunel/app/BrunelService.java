@@ -17,32 +17,38 @@
 package org.brunel.app;
 
 import org.brunel.action.Action;
-import org.brunel.build.d3.D3Builder;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataEncoding;
 import org.brunel.build.util.ContentReader;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
 import org.brunel.match.BestMatch;
 import org.brunel.util.BrunelD3Result;
 import org.brunel.util.D3Integration;
-import org.brunel.util.WebDisplay;
+import org.brunel.util.OutputCache;
 
 import com.google.gson.Gson;
 
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.Callable;
 
 /**
  * Sample JAX-RS web application that produces Brunel visualizations.  Currently only d3 output is supported.
@@ -54,6 +60,11 @@ import java.net.URI;
  * POST /brunel/interpret/d3?src={brunel}&amp;width=..&amp;height=..
  *
  * Payload is expected to be CSV as TEXT/PLAIN.
+ *
+ * The methods that read data or build charts respond asynchronously, using a bounded pool of workers (see
+ * ServiceExecutor). Identical requests made while one is being built share its result.
+ * Built output is cached (see D3Integration.createCachedResult) and sent with an ETag; the HTML page answers
+ * "304 Not Modified" to a request whose If-None-Match header has the current tag.
  */
 
 @ApplicationPath("brunel")
@@ -62,6 +73,14 @@ public class BrunelService extends Application {
 
 	private static final Gson gson = new Gson();
 
+	// Builds run here rather than on the container threads. Override the defaults with the system properties
+	// "brunel.service.threads" (the most builds at once), "brunel.service.queue" (the most builds waiting to run)
+	// and "brunel.service.timeout" (milliseconds per request)
+	private static final ServiceExecutor EXECUTOR = new ServiceExecutor(
+			Integer.getInteger("brunel.service.threads", 4 * Runtime.getRuntime().availableProcessors()),
+			Integer.getInteger("brunel.service.queue", 100),
+			Long.getLong("brunel.service.timeout", 60000L));
+
 	private static final String ERROR_TEMPLATE = "<link rel='stylesheet' href='https://maxcdn.bootstrapcdn.com/bootstrap/3.3.5/css/bootstrap.min.css'>\n" +
 			"<link rel='stylesheet' href='https://maxcdn.bootstrapcdn.com/bootstrap/3.3.5/css/bootstrap-theme.min.css'>\n" +
 			"<script src='//ajax.googleapis.com/ajax/libs/jquery/1.11.3/jquery.min.js' charset='utf-8'></script>\n" +
@@ -81,29 +100,38 @@ public class BrunelService extends Application {
      * @param controlsId an identifier to use for HTML tag that will contain the interactive controls.
      *          If null, then resulting JS will not contain code for the vis controls and the client is responsible for creating any UIs for vis controls using the returned JSON.
      * @param prefix (optional) The prefix used to uniquely identify data for a given user session when adding data to the cache.
-     * @return a JSON object containing the css, js, and an object describing interactive controls that require a separate UI
+     * @param dataEncoding (optional) "binary" to embed data tables as base64 serialized data, or "rows" (the default)
+     * @param response resumed with a JSON object containing the css, js, and an object describing interactive controls that require a separate UI
      */
     @POST
     @Path("d3")
     @Consumes(MediaType.TEXT_PLAIN)        //A CSV file is the payload
     @Produces(MediaType.APPLICATION_JSON)  //JSON object with "js" and "css" entries
-    public Response createAsD3(String data, @QueryParam("src") String brunelSrc,
+    public void createAsD3(String data, @QueryParam("src") String brunelSrc,
                                @QueryParam("width") int width,
                                @QueryParam("height") int height,
                                @QueryParam("visid") String visId,
                                @QueryParam("controlsid") String controlsId,
-                               @QueryParam("data_prefix") String prefix
+                               @QueryParam("data_prefix") String prefix,
+                               @QueryParam("data_encoding") String dataEncoding,
+                               @Suspended AsyncResponse response
                                ) {
 
-    	try {
-    		if (prefix != null) brunelSrc = D3Integration.prefixAllDataStatements(brunelSrc, prefix);
-    		BrunelD3Result result = D3Integration.createBrunelResult(data, brunelSrc, width, height, visId, controlsId);
-    		return Response.ok(result).header("Access-Control-Allow-Origin", "*").build();
-    	}
-    	catch (Exception ex) {
-    		ex.printStackTrace();
-    		throw makeException(ex.getMessage(), ex, Status.BAD_REQUEST.getStatusCode(), false);
-    	}
+    	// Keyed on a digest so that pending requests do not hold on to their data
+    	Object key = OutputCache.digest("d3", data, brunelSrc, width, height, visId, controlsId, prefix, dataEncoding);
+    	EXECUTOR.run(key, response, new Callable<OutputCache.Output<BrunelD3Result>>() {
+    		public OutputCache.Output<BrunelD3Result> call() {
+    			try {
+    				String src = prefix != null ? D3Integration.prefixAllDataStatements(brunelSrc, prefix) : brunelSrc;
+    				return D3Integration.createCachedResult(data, src, width, height,
+    						makeOptions(visId, controlsId, dataEncoding));
+    			}
+    			catch (Exception ex) {
+    				ex.printStackTrace();
+    				throw makeException(ex.getMessage(), ex, Status.BAD_REQUEST.getStatusCode(), false);
+    			}
+    		}
+    	});
     }
 
     /**
@@ -118,12 +146,14 @@ public class BrunelService extends Application {
      *  function, then this will be used instead
      * @param filesLoc (optional) an alternate location for the main Brunel javascript
      * @param prefix (optional) The prefix used to uniquely identify data for a given user session when adding data to the cache.
-     * @return a full HTML page with all JS/CSS and interactive controls for a given visualization.
+     * @param dataEncoding (optional) "binary" to embed data tables as base64 serialized data, or "rows" (the default)
+     * @param ifNoneMatch (optional) entity tags of pages the client has; if the page has one of them, "304 Not Modified" is returned
+     * @param response resumed with a full HTML page with all JS/CSS and interactive controls for a given visualization.
      */
     @GET
     @Path("d3")
     @Produces(MediaType.TEXT_HTML)
-    public Response createAsD3Html(@QueryParam("brunel_src") String brunelSrc,
+    public void createAsD3Html(@QueryParam("brunel_src") String brunelSrc,
     							 @QueryParam("brunel_url") String brunelUrl,
                                  @QueryParam("width") int width,
                                  @QueryParam("height") int height,
@@ -132,31 +162,36 @@ public class BrunelService extends Application {
                                  @QueryParam("show_brunel") String showBrunel,
                                  @QueryParam("data") String dataUrl,
                                  @QueryParam("files") String filesLoc,
-                                 @QueryParam("data_prefix") String prefix
+                                 @QueryParam("data_prefix") String prefix,
+                                 @QueryParam("data_encoding") String dataEncoding,
+                                 @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                                 @Suspended AsyncResponse response
     ) {
 
-    	try {
-
-    		if (title == null) title = "";
-    		if (description == null) description = "";
-    		String brunelStr = new Boolean(showBrunel) ? brunelSrc : "";
-    		if (prefix != null && brunelSrc != null) brunelSrc = D3Integration.prefixAllDataStatements(brunelSrc, prefix);
-
-
-    		String[] titles = new String[] {title, description};
-	    	String src = brunelSrc != null ? brunelSrc : ContentReader.readContentFromUrl(URI.create(brunelUrl));
-	        D3Builder builder = D3Integration.makeD3(readBrunelData(dataUrl, true), src, width, height, "visualization", "controls");
-	        String response = WebDisplay.writeHtml(builder, width, height, brunelStr, titles);
-    		return Response.ok(response).header("Access-Control-Allow-Origin", "*").build();
-    	}
-    	catch (IOException ex) {
-    		 throw makeException("Could not read brunel from: " + brunelUrl, ex, Status.BAD_REQUEST.getStatusCode(), true);
-    	}
-    	catch (Exception ex) {
-   		 	 throw makeException(ex.getMessage(), ex, Status.BAD_REQUEST.getStatusCode(), true);
-
-    	}
-
+    	Object key = OutputCache.digest("html", brunelSrc, brunelUrl, width, height, title, description, showBrunel,
+    			dataUrl, filesLoc, prefix, dataEncoding);
+    	EXECUTOR.run(key, response, ifNoneMatch, new Callable<OutputCache.Output<String>>() {
+    		public OutputCache.Output<String> call() {
+    			try {
+    				String[] titles = new String[] {title == null ? "" : title, description == null ? "" : description};
+    				String brunelStr = new Boolean(showBrunel) ? brunelSrc : "";
+    				String src = brunelSrc;
+    				if (prefix != null && src != null) src = D3Integration.prefixAllDataStatements(src, prefix);
+    				if (src == null) src = ContentReader.readContentFromUrl(URI.create(brunelUrl));
+    				return D3Integration.createCachedHtml(readBrunelData(dataUrl, true), src, width, height,
+    						makeOptions("visualization", "controls", dataEncoding), brunelStr, titles);
+    			}
+    			catch (WebApplicationException ex) {
+    				throw ex;
+    			}
+    			catch (IOException ex) {
+    				throw makeException("Could not read brunel from: " + brunelUrl, ex, Status.BAD_REQUEST.getStatusCode(), true);
+    			}
+    			catch (Exception ex) {
+    				throw makeException(ex.getMessage(), ex, Status.BAD_REQUEST.getStatusCode(), true);
+    			}
+    		}
+    	});
     }
 
 
@@ -165,35 +200,41 @@ public class BrunelService extends Application {
 	 * @param originalData the original data (as URL or cache identifier)
 	 * @param newData the new data (as URL or cache identifier)
 	 * @param brunelSrc the Brunel syntax that produced the original visualization
-	 * @return Brunel syntax using the new data
+	 * @param response resumed with Brunel syntax using the new data
 	 */
     @GET
     @Path("match")
     @Produces(MediaType.TEXT_PLAIN)
 
-    public String actionFromExisting(@QueryParam("original_data") String originalData,
-                                     @QueryParam("new_data") String newData,
-                                     @QueryParam("src") String brunelSrc) {
-        try {
-        	if (originalData != null) {
-	            Dataset origDS = DataCache.get(originalData);
-	            Dataset newDS = DataCache.get(newData);
-	            return BestMatch.match(origDS, newDS, Action.parse(brunelSrc)).toString();
-        	}
-        	else {
-        		return BestMatch.match(brunelSrc, newData).toString();
-        	}
-        } catch (IOException e) {
-            // You would have to be really unlucky to get this -- the cache would have to be flushed and then the
-            // the remote file fail to be read.
-            throw makeException("Could not read data for match: " + e.getMessage(), e, Status.BAD_REQUEST.getStatusCode(), false);
-        }
-
-        catch (Exception e) {
-        	e.printStackTrace();
-            throw makeException("Error matching to new data: " + e.getMessage(), e,  Status.BAD_REQUEST.getStatusCode(), false);
-
-        }
+    public void actionFromExisting(@QueryParam("original_data") String originalData,
+                                   @QueryParam("new_data") String newData,
+                                   @QueryParam("src") String brunelSrc,
+                                   @Suspended AsyncResponse response) {
+        Object key = OutputCache.digest("match", originalData, newData, brunelSrc);
+        EXECUTOR.run(key, response, new Callable<String>() {
+            public String call() {
+                try {
+                	if (originalData != null) {
+        	            Dataset origDS = DataCache.get(originalData);
+        	            Dataset newDS = DataCache.get(newData);
+        	            return BestMatch.match(origDS, newDS, Action.parse(brunelSrc)).toString();
+                	}
+                	else {
+                		return BestMatch.match(brunelSrc, newData).toString();
+                	}
+                } catch (IOException e) {
+                    // You would have to be really unlucky to get this -- the cache would have to be flushed and then the
+                    // the remote file fail to be read.
+                    throw makeException("Could not read data for match: " + e.getMessage(), e, Status.BAD_REQUEST.getStatusCode(), false);
+                }
+
+                catch (Exception e) {
+                	e.printStackTrace();
+                    throw makeException("Error matching to new data: " + e.getMessage(), e,  Status.BAD_REQUEST.getStatusCode(), false);
+
+                }
+            }
+        });
     }
 
     /**
@@ -247,6 +288,13 @@ public class BrunelService extends Application {
     }
 
 
+    //Builder options for the identifiers, with the data encoding ("rows" or "binary") if one is given
+    private static BuilderOptions makeOptions(String visId, String controlsId, String dataEncoding) {
+        BuilderOptions options = D3Integration.makeOptions(visId, controlsId);
+        if (dataEncoding != null) options.dataEncoding = DataEncoding.valueOf(dataEncoding.toLowerCase());
+        return options;
+    }
+
     //Simple web exception handling.  A bootstrap HTML formatted message is returned for <iframe> requests.
     private WebApplicationException makeException(String message, Exception thrown, int code, boolean formatted) {
 
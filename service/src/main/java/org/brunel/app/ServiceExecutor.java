@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.app;
+
+import org.brunel.util.OutputCache;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs service requests away from the container threads.  Tasks run on virtual threads when the JVM supports them
+ * and on a fixed pool of daemon threads otherwise; either way no more than a fixed number run at once, and only a
+ * fixed number more may wait to run -- any beyond that are refused straight away as "503 Service Unavailable".
+ * Requests with the same key that arrive while a task for that key is pending share its result rather than
+ * repeating the work.  Each request is resumed with an error if it is not answered within the timeout, and a task
+ * whose requests have all timed out is cancelled.  A task that has already started is never interrupted, as it may
+ * be loading data that other requests are waiting for; it runs to the end and its result is dropped.
+ */
+public class ServiceExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore admitted;                     // Bounds the tasks running or waiting to run
+    private final Semaphore running;                      // Bounds the tasks running at once
+    private final long timeoutMillis;
+    private final Map<Object, Task> pending = new HashMap<>();
+
+    /**
+     * Create the executor
+     *
+     * @param maxConcurrent the most tasks that may run at once
+     * @param maxQueued     the most tasks that may wait to run; requests for further tasks are refused
+     * @param timeoutMillis how long a request waits for its result before it fails
+     */
+    public ServiceExecutor(int maxConcurrent, int maxQueued, long timeoutMillis) {
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.running = new Semaphore(maxConcurrent);
+        this.timeoutMillis = timeoutMillis;
+        ExecutorService virtual = makeVirtualThreadExecutor();
+        this.executor = virtual != null ? virtual : new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueued)), new DaemonThreads());
+    }
+
+    /**
+     * Run a task and resume the response with its result.
+     * The task should throw a WebApplicationException to send a specific error response.
+     *
+     * @param key      identifies the work the task does; pending tasks with equal keys are shared
+     * @param response the suspended response to resume
+     * @param task     creates the response entity
+     */
+    public void run(Object key, AsyncResponse response, Callable<?> task) {
+        run(key, response, null, task);
+    }
+
+    /**
+     * Run a task and resume the response with its result.
+     * If the result is a cached output, the response carries its entity tag, and is "304 Not Modified" when the
+     * request shows the client already has it.
+     *
+     * @param key         identifies the work the task does; pending tasks with equal keys are shared
+     * @param response    the suspended response to resume
+     * @param ifNoneMatch the If-None-Match header of a GET request; null if none, or for other requests
+     * @param task        creates the response entity
+     */
+    public void run(Object key, final AsyncResponse response, final String ifNoneMatch, Callable<?> task) {
+        final Task shared = join(key, task);
+        response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        response.setTimeoutHandler(new TimeoutHandler() {
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                leave(shared);
+                asyncResponse.resume(error(Status.SERVICE_UNAVAILABLE, "Timed out after " + timeoutMillis + "ms"));
+            }
+        });
+        shared.result.whenComplete(new BiConsumer<Object, Throwable>() {
+            public void accept(Object entity, Throwable thrown) {
+                if (thrown == null)
+                    response.resume(respond(entity, ifNoneMatch));
+                else
+                    response.resume(thrown instanceof CompletionException ? thrown.getCause() : thrown);
+            }
+        });
+    }
+
+    /**
+     * Wait for the task with the given key, starting it if no such task is pending.
+     * Each call should be matched by a call to {@link #leave(Task)} if the caller stops waiting for the result.
+     *
+     * @param key  identifies the work the task does
+     * @param task creates the result
+     * @return the shared task; its result is completed exceptionally if the task fails or cannot be scheduled
+     */
+    Task join(Object key, Callable<?> task) {
+        Task shared;
+        synchronized (pending) {
+            shared = pending.get(key);
+            if (shared != null) {
+                shared.waiters++;
+                return shared;
+            }
+            shared = new Task(key, task);
+            if (!admitted.tryAcquire()) {
+                shared.result.completeExceptionally(error(Status.SERVICE_UNAVAILABLE, "Service is too busy"));
+                return shared;
+            }
+            pending.put(key, shared);
+        }
+        try {
+            executor.execute(shared);
+        } catch (RejectedExecutionException e) {
+            shared.result.completeExceptionally(error(Status.SERVICE_UNAVAILABLE, "Service is too busy"));
+            shared.cancel(false);
+        }
+        return shared;
+    }
+
+    /**
+     * Stop waiting for a task; when nothing else is waiting for it, it is cancelled.
+     * A task that has not started never runs; one that has started is left to finish, but no one gets its result
+     *
+     * @param shared the task returned by {@link #join(Object, Callable)}
+     */
+    void leave(Task shared) {
+        synchronized (pending) {
+            // Tasks that were refused, or have already finished, are no longer pending
+            if (--shared.waiters > 0 || pending.get(shared.key) != shared) return;
+            pending.remove(shared.key);
+        }
+        shared.cancel(false);
+        // A cancelled task would otherwise keep its place in the pool's queue until a thread reaches it
+        if (executor instanceof ThreadPoolExecutor) ((ThreadPoolExecutor) executor).remove(shared);
+    }
+
+    /**
+     * A pending task and the future for its result.
+     * Only one task runs for each key; the number of requests waiting for it is guarded by the pending map.
+     * A task keeps its admission until it stops running, even if it was cancelled while it ran
+     */
+    final class Task extends FutureTask<Object> {
+        final Object key;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        int waiters = 1;
+        private volatile boolean started;                         // Set once the work itself has begun
+        private final AtomicBoolean admission = new AtomicBoolean(true);
+
+        private Task(Object key, final Callable<?> task) {
+            super(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return task.call();
+                }
+            });
+            this.key = key;
+        }
+
+        public void run() {
+            try {
+                running.acquire();
+            } catch (InterruptedException e) {
+                setException(e);
+                return;
+            }
+            try {
+                if (isDone()) return;                               // Cancelled while waiting for a place to run
+                started = true;
+                super.run();
+            } finally {
+                running.release();
+                releaseAdmission();
+            }
+        }
+
+        private void releaseAdmission() {
+            if (admission.compareAndSet(true, false)) admitted.release();
+        }
+
+        // Called once the task has completed or been cancelled, including when cancelled before it starts
+        protected void done() {
+            // A task cancelled while it runs gives up its admission in run() when it finishes
+            if (!started || !isCancelled()) releaseAdmission();
+            // Stop sharing before completing, so a request that sees the result can start a fresh task
+            synchronized (pending) {
+                if (pending.get(key) == this) pending.remove(key);
+            }
+            try {
+                result.complete(get());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (CancellationException e) {
+                result.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static Response respond(Object entity, String ifNoneMatch) {
+        if (!(entity instanceof OutputCache.Output))
+            return Response.ok(entity).header("Access-Control-Allow-Origin", "*").build();
+        OutputCache.Output<?> output = (OutputCache.Output<?>) entity;
+        ResponseBuilder builder = output.matches(ifNoneMatch) ? Response.status(Status.NOT_MODIFIED) : Response.ok(output.value);
+        // Clients may keep the output, but must check it is still current before using it
+        return builder.header("Access-Control-Allow-Origin", "*").header("ETag", output.etag)
+                .header("Cache-Control", "no-cache").build();
+    }
+
+    private static WebApplicationException error(Status status, String message) {
+        return new WebApplicationException(Response.status(status).header("Access-Control-Allow-Origin", "*")
+                .entity(message).type(MediaType.TEXT_PLAIN).build());
+    }
+
+    // Virtual threads are only available from Java 21, so we look for them reflectively
+    private static ExecutorService makeVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Daemon threads so the pool does not keep the container from shutting down
+    private static class DaemonThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "brunel-service-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
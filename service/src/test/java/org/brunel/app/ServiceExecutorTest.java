@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.app;
+
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServiceExecutorTest {
+
+    private final ServiceExecutor executor = new ServiceExecutor(2, 1, 10000);
+
+    @Test
+    public void testSameKeyShared() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return "built";
+            }
+        };
+
+        CompletableFuture<Object> a = executor.join("key", task).result;
+        CompletableFuture<Object> b = executor.join("key", task).result;
+        CompletableFuture<Object> c = executor.join("other", task).result;
+        assertSame(a, b);
+        assertNotSame(a, c);
+
+        release.countDown();
+        assertEquals("built", a.get(5, TimeUnit.SECONDS));
+        assertEquals("built", c.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFinishedTaskNotShared() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> task = new Callable<Integer>() {
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(1, executor.join("key", task).result.get(5, TimeUnit.SECONDS));
+        // The first has completed, so this runs again
+        assertEquals(2, executor.join("key", task).result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        CompletableFuture<Object> result = executor.join("key", new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("failed");
+            }
+        }).result;
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expected the task to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testTooBusy() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                release.await();
+                return "built";
+            }
+        };
+
+        // Two may run and one wait; the next is refused at once
+        CompletableFuture<Object> a = executor.join("a", task).result;
+        CompletableFuture<Object> b = executor.join("b", task).result;
+        CompletableFuture<Object> c = executor.join("c", task).result;
+        CompletableFuture<Object> d = executor.join("d", task).result;
+        try {
+            d.get(5, TimeUnit.SECONDS);
+            fail("Expected the task to be refused");
+        } catch (ExecutionException e) {
+            assertEquals(503, ((WebApplicationException) e.getCause()).getResponse().getStatus());
+        }
+
+        // Sharing a pending task is not refused
+        assertSame(a, executor.join("a", task).result);
+
+        release.countDown();
+        assertEquals("built", a.get(5, TimeUnit.SECONDS));
+        assertEquals("built", b.get(5, TimeUnit.SECONDS));
+        assertEquals("built", c.get(5, TimeUnit.SECONDS));
+        assertEquals("built", executor.join("d", task).result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelledWhenAllLeave() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger interrupted = new AtomicInteger();
+        Callable<String> task = new Callable<String>() {
+            public String call() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+                finished.countDown();
+                return "built";
+            }
+        };
+
+        ServiceExecutor.Task first = executor.join("key", task);
+        ServiceExecutor.Task second = executor.join("key", task);
+        assertSame(first, second);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Someone is still waiting, so it keeps running
+        executor.leave(first);
+        assertFalse(first.result.isDone());
+
+        // No one is waiting now, but it has started, so it may be loading data others share: it is not interrupted
+        executor.leave(second);
+        assertTrue(first.result.isCompletedExceptionally());
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, interrupted.get());
+
+        // Its place is free for a fresh task
+        ServiceExecutor.Task fresh = executor.join("key", task);
+        assertNotSame(first, fresh);
+        assertEquals("built", fresh.result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitingTaskNeverRuns() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                release.await();
+                return "built";
+            }
+        };
+
+        // Two run; the third waits for a place, and is cancelled before it gets one
+        CompletableFuture<Object> a = executor.join("a", task).result;
+        CompletableFuture<Object> b = executor.join("b", task).result;
+        ServiceExecutor.Task waiting = executor.join("c", task);
+        executor.leave(waiting);
+        assertTrue(waiting.result.isCompletedExceptionally());
+
+        release.countDown();
+        assertEquals("built", a.get(5, TimeUnit.SECONDS));
+        assertEquals("built", b.get(5, TimeUnit.SECONDS));
+        assertEquals("built", executor.join("c", task).result.get(5, TimeUnit.SECONDS));
+        assertEquals(3, runs.get());
+    }
+}